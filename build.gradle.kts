@@ -5,6 +5,7 @@ plugins {
     java
     id("com.diffplug.spotless") version "5.10.2"
     id("org.sonarqube") version "3.1"
+    id("me.champeau.gradle.jmh") version "0.5.3"
     jacoco
 }
 buildscript {
@@ -36,6 +37,7 @@ dependencies {
     implementation("org.slf4j:slf4j-api:1.7.32")
     testImplementation("junit:junit:4.13.2")
     testImplementation("org.assertj:assertj-core:3.15.0")
+    jmh("org.slf4j:slf4j-simple:1.7.32")
 }
 
 val javaSourceLevel: String by project
@@ -48,6 +50,16 @@ java {
     withSourcesJar()
 }
 
+// Benchmarks of the hot paths on simulated CSMs: "./gradlew jmh [-PjmhInclude=<regex>]"
+jmh {
+    jmhVersion = "1.36"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    findProperty("jmhInclude")?.let { include = listOf(it.toString()) }
+}
+
 ///////////////////////////////////////////////////////////////////////////////
 //  TASKS CONFIGURATION
 ///////////////////////////////////////////////////////////////////////////////
@@ -75,6 +87,21 @@ tasks {
             html.isEnabled = true
         }
     }
+    named<JavaCompile>("compileJmhJava") {
+        // benchmarks are not shipped, JMH requires a more recent language level than the library
+        sourceCompatibility = "1.8"
+        targetCompatibility = "1.8"
+    }
+    // Replay of a captured workload:
+    // "./gradlew replayWorkload -PworkloadFile=<file> [-PspeedUp=<factor>] [-PsimulatedCsms=<count>:<channelsTotal>:<latencyMicros>]"
+    register<JavaExec>("replayWorkload") {
+        classpath = sourceSets["jmh"].runtimeClasspath
+        main = "org.calypsonet.keyple.plugin.legacyhsm.WorkloadReplay"
+        args = listOfNotNull(
+            findProperty("workloadFile")?.toString(),
+            findProperty("speedUp")?.toString() ?: "1",
+            findProperty("simulatedCsms")?.toString())
+    }
     sonarqube {
         properties {
             property("sonar.projectKey", "eclipse_" + project.name)
@@ -0,0 +1,91 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.TimeUnit;
+import org.eclipse.keyple.core.plugin.PluginIOException;
+import org.eclipse.keyple.core.plugin.spi.reader.PoolReaderSpi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Throughput of a reader allocation immediately followed by its release, with and without channel
+ * pooling, for an increasing number of concurrent callers sharing a single key group.
+ *
+ * @since 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AllocationBenchmark {
+
+  private static final int MAX_THREADS = 16;
+  private static final int CHANNELS_TOTAL = 2 * MAX_THREADS;
+
+  /** Simulated latency of the channel opening (microseconds). */
+  @Param({"0", "100"})
+  public int latencyMicros;
+
+  @Param({"true", "false"})
+  public boolean channelPooling;
+
+  private LegacyHsmPluginAdapter plugin;
+
+  @Setup
+  public void setUp() {
+    LegacyHsmPluginFactoryBuilder.Builder builder =
+        LegacyHsmPluginFactoryBuilder.builder()
+            .useSimulatedCsm(CHANNELS_TOTAL, latencyMicros, BenchmarkSupport.KEY_GROUP)
+            .useAllocationTimeout(1000);
+    if (channelPooling) {
+      builder.useChannelPool(MAX_THREADS, CHANNELS_TOTAL);
+    }
+    plugin = BenchmarkSupport.createPlugin(builder);
+  }
+
+  @TearDown
+  public void tearDown() {
+    plugin.onUnregister();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public PoolReaderSpi allocateRelease1Thread() throws PluginIOException {
+    return allocateRelease();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public PoolReaderSpi allocateRelease4Threads() throws PluginIOException {
+    return allocateRelease();
+  }
+
+  @Benchmark
+  @Threads(MAX_THREADS)
+  public PoolReaderSpi allocateRelease16Threads() throws PluginIOException {
+    return allocateRelease();
+  }
+
+  private PoolReaderSpi allocateRelease() throws PluginIOException {
+    PoolReaderSpi reader = plugin.allocateReader(BenchmarkSupport.KEY_GROUP_REFERENCE);
+    plugin.releaseReader(reader);
+    return reader;
+  }
+}
@@ -0,0 +1,51 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * @since 1.1.0
+ */
+final class BenchmarkSupport {
+
+  /** Key group held by all the simulated CSMs. */
+  static final int KEY_GROUP = 1;
+
+  /** Reader group reference of {@link #KEY_GROUP}. */
+  static final String KEY_GROUP_REFERENCE = Integer.toString(KEY_GROUP);
+
+  /** Constructor. */
+  private BenchmarkSupport() {}
+
+  /**
+   * Creates the plugin configured by the provided builder, as the smart card service would do.
+   *
+   * @param builder The builder.
+   * @return A new instance, to be unregistered after use.
+   * @since 1.1.0
+   */
+  static LegacyHsmPluginAdapter createPlugin(LegacyHsmPluginFactoryBuilder.Builder builder) {
+    return createPlugin((LegacyHsmPluginFactoryAdapter) builder.build());
+  }
+
+  /**
+   * Creates the plugin of the provided factory, as the smart card service would do.
+   *
+   * @param factory The factory.
+   * @return A new instance, to be unregistered after use.
+   * @since 1.1.0
+   */
+  static LegacyHsmPluginAdapter createPlugin(LegacyHsmPluginFactoryAdapter factory) {
+    return (LegacyHsmPluginAdapter) factory.getPoolPlugin();
+  }
+}
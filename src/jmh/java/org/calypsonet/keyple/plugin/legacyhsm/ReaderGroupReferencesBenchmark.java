@@ -0,0 +1,67 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of listing the reader group references, for an increasing number of key groups spread over 4
+ * CSMs.
+ *
+ * @since 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReaderGroupReferencesBenchmark {
+
+  private static final int CSM_COUNT = 4;
+
+  @Param({"16", "256"})
+  public int keyGroupCount;
+
+  private LegacyHsmPluginAdapter plugin;
+
+  @Setup
+  public void setUp() {
+    LegacyHsmPluginFactoryBuilder.Builder builder = LegacyHsmPluginFactoryBuilder.builder();
+    for (int csm = 0; csm < CSM_COUNT; csm++) {
+      // each CSM holds half of the key groups, each key group is held by 2 CSMs
+      int[] keyGroupReferences = new int[keyGroupCount / 2];
+      for (int i = 0; i < keyGroupReferences.length; i++) {
+        keyGroupReferences[i] = 1 + (csm * keyGroupCount / CSM_COUNT + i) % keyGroupCount;
+      }
+      builder.useSimulatedCsm(1, 0, keyGroupReferences);
+    }
+    plugin = BenchmarkSupport.createPlugin(builder);
+  }
+
+  @TearDown
+  public void tearDown() {
+    plugin.onUnregister();
+  }
+
+  @Benchmark
+  public SortedSet<String> getReaderGroupReferences() {
+    return plugin.getReaderGroupReferences();
+  }
+}
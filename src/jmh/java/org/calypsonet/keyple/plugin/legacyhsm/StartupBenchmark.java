@@ -0,0 +1,86 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Duration of the plugin startup (HSM initialization, CSM and key group discovery, pre-opening of
+ * the channel pools), for an increasing number of simulated CSMs.
+ *
+ * @since 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+public class StartupBenchmark {
+
+  private static final int KEY_GROUP_COUNT = 32;
+  private static final int CHANNELS_TOTAL = 16;
+
+  /** Simulated latency of each channel opening (microseconds). */
+  private static final int LATENCY_MICROS = 200;
+
+  @Param({"1", "8"})
+  public int csmCount;
+
+  /** Idle channels pre-opened for each key group (0 disables the pooling). */
+  @Param({"0", "2"})
+  public int channelPoolMinIdle;
+
+  private LegacyHsmPluginFactoryAdapter factory;
+  private LegacyHsmPluginAdapter plugin;
+
+  @Setup
+  public void setUp() {
+    int[] keyGroupReferences = new int[KEY_GROUP_COUNT];
+    for (int i = 0; i < KEY_GROUP_COUNT; i++) {
+      keyGroupReferences[i] = i + 1;
+    }
+    LegacyHsmPluginFactoryBuilder.Builder builder = LegacyHsmPluginFactoryBuilder.builder();
+    for (int i = 0; i < csmCount; i++) {
+      builder.useSimulatedCsm(CHANNELS_TOTAL, LATENCY_MICROS, keyGroupReferences);
+    }
+    if (channelPoolMinIdle > 0) {
+      builder.useChannelPool(channelPoolMinIdle, CHANNELS_TOTAL);
+    }
+    factory = (LegacyHsmPluginFactoryAdapter) builder.build();
+  }
+
+  @TearDown(Level.Invocation)
+  public void unregisterPlugin() {
+    if (plugin != null) {
+      plugin.onUnregister();
+      plugin = null;
+    }
+  }
+
+  @Benchmark
+  public LegacyHsmPluginAdapter startPlugin() {
+    plugin = BenchmarkSupport.createPlugin(factory);
+    return plugin;
+  }
+}
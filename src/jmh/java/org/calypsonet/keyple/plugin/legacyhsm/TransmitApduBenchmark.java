@@ -0,0 +1,95 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.keyple.core.plugin.CardIOException;
+import org.eclipse.keyple.core.plugin.PluginIOException;
+import org.eclipse.keyple.core.plugin.ReaderIOException;
+import org.eclipse.keyple.core.plugin.spi.reader.PoolReaderSpi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latency distribution of an APDU exchange on an allocated reader, with the trace logging disabled
+ * and enabled, the response being returned in a new array or written into a reused buffer.
+ *
+ * <p>The simulated CSM adds no latency so that only the overhead of the plugin is measured. When
+ * enabled, the traces are written to a temporary file.
+ *
+ * @since 1.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransmitApduBenchmark {
+
+  /** Get Challenge command of a SAM C1. */
+  private static final byte[] GET_CHALLENGE = {(byte) 0x80, (byte) 0x84, 0x00, 0x00, 0x08};
+
+  private static final String LOG_LEVEL_PROPERTY =
+      "org.slf4j.simpleLogger.log.org.calypsonet.keyple.plugin.legacyhsm";
+  private static final String LOG_FILE_PROPERTY = "org.slf4j.simpleLogger.logFile";
+
+  @Param({"false", "true"})
+  public boolean traceLogging;
+
+  private LegacyHsmPluginAdapter plugin;
+  private PoolReaderSpi reader;
+
+  /** Buffer large enough for any short APDU response. */
+  private final byte[] response = new byte[258];
+
+  @Setup
+  public void setUp() throws IOException, PluginIOException, ReaderIOException, CardIOException {
+    // each set of parameters runs in its own JVM, the loggers are not created yet
+    if (traceLogging) {
+      File logFile = File.createTempFile("legacyhsm-trace", ".log");
+      logFile.deleteOnExit();
+      System.setProperty(LOG_FILE_PROPERTY, logFile.getPath());
+      System.setProperty(LOG_LEVEL_PROPERTY, "trace");
+    } else {
+      System.setProperty(LOG_LEVEL_PROPERTY, "info");
+    }
+    plugin =
+        BenchmarkSupport.createPlugin(
+            LegacyHsmPluginFactoryBuilder.builder()
+                .useSimulatedCsm(1, 0, BenchmarkSupport.KEY_GROUP));
+    reader = plugin.allocateReader(BenchmarkSupport.KEY_GROUP_REFERENCE);
+    reader.openPhysicalChannel();
+  }
+
+  @TearDown
+  public void tearDown() throws PluginIOException {
+    plugin.releaseReader(reader);
+    plugin.onUnregister();
+  }
+
+  @Benchmark
+  public byte[] transmitApdu() throws ReaderIOException, CardIOException {
+    return reader.transmitApdu(GET_CHALLENGE);
+  }
+
+  @Benchmark
+  public int transmitApduIntoBuffer() throws ReaderIOException {
+    return ((LegacyHsmReader) reader).transmitApdu(GET_CHALLENGE, response, 0);
+  }
+}
@@ -0,0 +1,337 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.eclipse.keyple.core.plugin.CardIOException;
+import org.eclipse.keyple.core.plugin.PluginIOException;
+import org.eclipse.keyple.core.plugin.ReaderIOException;
+import org.eclipse.keyple.core.plugin.spi.reader.PoolReaderSpi;
+
+/**
+ * Replays a workload captured with {@link
+ * LegacyHsmPluginFactoryBuilder.Builder#useWorkloadCapture(String, int)}, at a configurable
+ * speed-up, against simulated CSMs or the HSM library.
+ *
+ * <p>Each captured session allocates a reader of its key group, exchanges its commands and releases
+ * the reader, at the captured times divided by the speed-up: a speed-up of 2 replays the traffic
+ * mix at twice the captured rate. The schedule lag measures how late the exchanges were sent
+ * compared to the captured timing; it grows when the plugin or the CSMs cannot sustain the replayed
+ * rate.
+ *
+ * <p>Usage: {@code ./gradlew replayWorkload -PworkloadFile=<file> [-PspeedUp=<factor>]
+ * [-PsimulatedCsms=<count>:<channelsTotal>:<latencyMicros>]}. Without simulated CSMs, the HSM
+ * library is used: the replayed commands must then be accepted by the real SAMs.
+ *
+ * @since 1.1.0
+ */
+public final class WorkloadReplay {
+
+  /** Maximum time an allocation waits for a channel, the replayed sessions being concurrent. */
+  private static final int ALLOCATION_TIMEOUT_MILLIS = 10000;
+
+  private final Map<Integer, Session> sessions = new LinkedHashMap<Integer, Session>();
+  private final SortedSet<Integer> keyGroups = new TreeSet<Integer>();
+  private long capturedDurationNanos;
+
+  private final LatencyRecorder scheduleLags = new LatencyRecorder();
+  private final AtomicLong failedSessions = new AtomicLong();
+  private final AtomicLong exchangedApdus = new AtomicLong();
+  private final AtomicLong failedApdus = new AtomicLong();
+  private final AtomicLong changedStatusWords = new AtomicLong();
+
+  /** Constructor. */
+  private WorkloadReplay() {}
+
+  /**
+   * Replays a capture file.
+   *
+   * @param args The capture file, the optional speed-up factor (1 by default) and the optional
+   *     simulated CSMs as {@code <count>:<channelsTotal>:<latencyMicros>}.
+   * @throws IOException If the capture file cannot be read.
+   * @throws InterruptedException If interrupted while replaying.
+   * @since 1.1.0
+   */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 1 || args.length > 3) {
+      System.err.println(
+          "Usage: WorkloadReplay <file> [<speedUp>] [<count>:<channelsTotal>:<latencyMicros>]");
+      System.exit(2);
+    }
+    double speedUp = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+    if (!(speedUp > 0)) {
+      throw new IllegalArgumentException("The speed-up must be positive: " + args[1]);
+    }
+    WorkloadReplay workloadReplay = new WorkloadReplay();
+    workloadReplay.read(new File(args[0]));
+    if (workloadReplay.sessions.isEmpty()) {
+      System.out.println("No session captured in " + args[0] + ".");
+      return;
+    }
+
+    LegacyHsmPluginFactoryBuilder.Builder builder =
+        LegacyHsmPluginFactoryBuilder.builder().useAllocationTimeout(ALLOCATION_TIMEOUT_MILLIS);
+    if (args.length > 2) {
+      String[] spec = args[2].split(":");
+      if (spec.length != 3) {
+        throw new IllegalArgumentException("Bad simulated CSMs: " + args[2]);
+      }
+      int[] keyGroupReferences = new int[workloadReplay.keyGroups.size()];
+      int i = 0;
+      for (Integer keyGroup : workloadReplay.keyGroups) {
+        keyGroupReferences[i++] = keyGroup;
+      }
+      for (int csm = Integer.parseInt(spec[0]); csm > 0; csm--) {
+        builder.useSimulatedCsm(
+            Integer.parseInt(spec[1]), Integer.parseInt(spec[2]), keyGroupReferences);
+      }
+    }
+    LegacyHsmPluginAdapter plugin = BenchmarkSupport.createPlugin(builder);
+    try {
+      long startTime = System.nanoTime();
+      workloadReplay.replay(plugin, speedUp);
+      workloadReplay.report(plugin, speedUp, System.nanoTime() - startTime);
+    } finally {
+      plugin.onUnregister();
+    }
+  }
+
+  /**
+   * Reads the sessions of a capture file, up to the end of the records written at its closing, or
+   * up to the first unwritten record if the capture was not closed.
+   *
+   * @param file The capture file.
+   * @throws IOException If the file cannot be read or is not a capture file.
+   */
+  private void read(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    ByteBuffer buffer;
+    try {
+      buffer =
+          randomAccessFile
+              .getChannel()
+              .map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+    } finally {
+      randomAccessFile.close();
+    }
+    if (buffer.remaining() < WorkloadRecorder.HEADER_SIZE
+        || buffer.getInt() != WorkloadRecorder.MAGIC
+        || buffer.getInt() != WorkloadRecorder.FORMAT_VERSION) {
+      throw new IOException("Not a workload capture file: " + file);
+    }
+    buffer.getLong();
+    long endPosition = buffer.getLong();
+    if (endPosition == 0) {
+      System.err.println("Capture " + file + " not closed, its last records may be missing.");
+    } else if (endPosition <= buffer.limit()) {
+      buffer.limit((int) endPosition);
+    }
+    while (buffer.remaining() >= WorkloadRecorder.RECORD_HEADER_SIZE) {
+      byte type = buffer.get();
+      int sessionNumber = buffer.getInt();
+      long time = buffer.getLong();
+      capturedDurationNanos = Math.max(capturedDurationNanos, time);
+      if (type == WorkloadRecorder.SESSION_START) {
+        int keyGroup = buffer.getInt();
+        sessions.put(sessionNumber, new Session(keyGroup, time));
+        keyGroups.add(keyGroup);
+      } else if (type == WorkloadRecorder.APDU) {
+        buffer.getInt(); // captured latency
+        int statusWord = buffer.getShort() & 0xFFFF;
+        byte[] apduIn = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(apduIn);
+        Session session = sessions.get(sessionNumber);
+        if (session != null) {
+          session.apdus.add(new Apdu(time, apduIn, statusWord));
+          session.endTime = Math.max(session.endTime, time);
+        }
+      } else if (type == WorkloadRecorder.SESSION_END) {
+        Session session = sessions.get(sessionNumber);
+        if (session != null) {
+          session.endTime = Math.max(session.endTime, time);
+        }
+      } else {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Replays the sessions, each one on its own thread.
+   *
+   * @param plugin The plugin.
+   * @param speedUp The factor dividing the captured times.
+   * @throws InterruptedException If interrupted while waiting for the end of the sessions.
+   */
+  private void replay(LegacyHsmPluginAdapter plugin, double speedUp) throws InterruptedException {
+    List<Session> orderedSessions = new ArrayList<Session>(sessions.values());
+    Collections.sort(
+        orderedSessions,
+        new Comparator<Session>() {
+          @Override
+          public int compare(Session s1, Session s2) {
+            return s1.startTime < s2.startTime ? -1 : (s1.startTime == s2.startTime ? 0 : 1);
+          }
+        });
+    ExecutorService executor = Executors.newCachedThreadPool();
+    long origin = System.nanoTime();
+    for (Session session : orderedSessions) {
+      parkUntil(origin + (long) (session.startTime / speedUp));
+      executor.execute(new SessionReplay(plugin, session, origin, speedUp));
+    }
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Prints the outcome of the replay and the metrics of the plugin.
+   *
+   * @param plugin The plugin.
+   * @param speedUp The factor dividing the captured times.
+   * @param durationNanos The duration of the replay.
+   */
+  private void report(LegacyHsmPluginAdapter plugin, double speedUp, long durationNanos) {
+    LatencyHistogramAdapter scheduleLagHistogram = new LatencyHistogramAdapter();
+    scheduleLags.addTo(scheduleLagHistogram);
+    LegacyHsmPluginMetrics metrics = plugin.getMetrics();
+    System.out.printf(
+        "Captured: %d sessions on %d key groups in %.3f s, replayed at x%s in %.3f s%n",
+        sessions.size(),
+        keyGroups.size(),
+        capturedDurationNanos / 1e9,
+        speedUp,
+        durationNanos / 1e9);
+    System.out.printf(
+        "Failed sessions: %d, APDUs: %d (%.1f/s), failed: %d, other status word: %d%n",
+        failedSessions.get(),
+        exchangedApdus.get(),
+        exchangedApdus.get() / (durationNanos / 1e9),
+        failedApdus.get(),
+        changedStatusWords.get());
+    System.out.println("Schedule lag: " + scheduleLagHistogram);
+    System.out.println("Allocation wait: " + metrics.getAllocationWaitTimes());
+    System.out.println("APDU exchange: " + metrics.getApduExchangeLatencies());
+  }
+
+  /** Waits until the provided {@link System#nanoTime()}. */
+  private static void parkUntil(long deadline) {
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  /** Replays a session on an allocated reader. */
+  private final class SessionReplay implements Runnable {
+
+    private final LegacyHsmPluginAdapter plugin;
+    private final Session session;
+    private final long origin;
+    private final double speedUp;
+
+    private SessionReplay(
+        LegacyHsmPluginAdapter plugin, Session session, long origin, double speedUp) {
+      this.plugin = plugin;
+      this.session = session;
+      this.origin = origin;
+      this.speedUp = speedUp;
+    }
+
+    @Override
+    public void run() {
+      PoolReaderSpi reader;
+      try {
+        reader = plugin.allocateReader(Integer.toString(session.keyGroup));
+      } catch (PluginIOException e) {
+        failedSessions.incrementAndGet();
+        return;
+      }
+      try {
+        for (Apdu apdu : session.apdus) {
+          long deadline = origin + (long) (apdu.time / speedUp);
+          parkUntil(deadline);
+          scheduleLags.record(System.nanoTime() - deadline);
+          byte[] apduOut;
+          try {
+            apduOut = reader.transmitApdu(apdu.apduIn);
+          } catch (ReaderIOException e) {
+            failedApdus.incrementAndGet();
+            // the channel is not usable anymore
+            break;
+          } catch (CardIOException e) {
+            failedApdus.incrementAndGet();
+            break;
+          }
+          exchangedApdus.incrementAndGet();
+          if (apdu.statusWord != 0
+              && StatusWord.of(apduOut, 0, apduOut == null ? 0 : apduOut.length)
+                  != apdu.statusWord) {
+            changedStatusWords.incrementAndGet();
+          }
+        }
+        parkUntil(origin + (long) (session.endTime / speedUp));
+      } finally {
+        try {
+          plugin.releaseReader(reader);
+        } catch (PluginIOException e) {
+          failedSessions.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /** A captured session, from the allocation of a reader to its release. */
+  private static final class Session {
+
+    private final int keyGroup;
+    private final long startTime;
+    private final List<Apdu> apdus = new ArrayList<Apdu>();
+    private long endTime;
+
+    private Session(int keyGroup, long startTime) {
+      this.keyGroup = keyGroup;
+      this.startTime = startTime;
+      this.endTime = startTime;
+    }
+  }
+
+  /** A captured APDU exchange. */
+  private static final class Apdu {
+
+    private final long time;
+    private final byte[] apduIn;
+    private final int statusWord;
+
+    private Apdu(long time, byte[] apduIn, int statusWord) {
+      this.time = time;
+      this.apduIn = apduIn;
+      this.statusWord = statusWord;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Class of the reader allocations, sharing the channels of each key group with the other classes.
+ *
+ * <p>The waiting allocations of the class with the highest priority are served first. The classes
+ * of the same priority are served in proportion of their weights, using stride scheduling. Each
+ * class keeps a number of channels of each key group reserved: the other classes cannot take the
+ * last channels of a pool while the class uses less than its reservation.
+ *
+ * @since 1.1.0
+ */
+final class AllocationClass {
+
+  /** Name of the class of the allocations not naming any. */
+  static final String DEFAULT_NAME = "default";
+
+  private final int index;
+  private final String name;
+  private final int priority;
+  private final int weight;
+  private final int reservedChannels;
+
+  /**
+   * Creates a class.
+   *
+   * @param index The index of the class in the settings, the default class being 0.
+   * @param name The name of the class.
+   * @param priority The priority, the highest being served first.
+   * @param weight The share of the class among the classes of the same priority.
+   * @param reservedChannels The number of channels of each key group reserved to the class.
+   * @since 1.1.0
+   */
+  AllocationClass(int index, String name, int priority, int weight, int reservedChannels) {
+    this.index = index;
+    this.name = name;
+    this.priority = priority;
+    this.weight = weight;
+    this.reservedChannels = reservedChannels;
+  }
+
+  /**
+   * Returns the index of the class in the settings.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getIndex() {
+    return index;
+  }
+
+  /**
+   * Returns the name of the class.
+   *
+   * @return A not empty string.
+   * @since 1.1.0
+   */
+  String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the priority of the class.
+   *
+   * @return An int, the highest being served first.
+   * @since 1.1.0
+   */
+  int getPriority() {
+    return priority;
+  }
+
+  /**
+   * Returns the share of the class among the classes of the same priority.
+   *
+   * @return A strictly positive int.
+   * @since 1.1.0
+   */
+  int getWeight() {
+    return weight;
+  }
+
+  /**
+   * Returns the number of channels of each key group reserved to the class.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getReservedChannels() {
+    return reservedChannels;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String toString() {
+    return name;
+  }
+}
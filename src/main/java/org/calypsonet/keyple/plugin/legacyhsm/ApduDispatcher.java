@@ -0,0 +1,124 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor of the asynchronous APDU exchanges of a CSM.
+ *
+ * <p>Its threads are created at the first submission and stop after one minute of inactivity, so
+ * that the CSMs used only synchronously do not hold any thread.
+ *
+ * @since 1.1.0
+ */
+final class ApduDispatcher {
+
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final String name;
+  private final int threads;
+  private final int queueCapacity;
+  private ThreadPoolExecutor executor;
+  private boolean isShutdown;
+
+  /**
+   * Creates a dispatcher.
+   *
+   * @param name The name of the CSM, used to name the threads.
+   * @param threads The maximum number of exchanges in progress at the same time.
+   * @param queueCapacity The maximum number of readers waiting for a thread.
+   * @since 1.1.0
+   */
+  ApduDispatcher(String name, int threads, int queueCapacity) {
+    this.name = name;
+    this.threads = threads;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Returns the maximum number of tasks waiting for a thread.
+   *
+   * @return A strictly positive int.
+   * @since 1.1.0
+   */
+  int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * Executes the provided task on a thread of the dispatcher.
+   *
+   * @param task The task.
+   * @throws RejectedExecutionException If the queue is full or if the dispatcher is shut down.
+   * @since 1.1.0
+   */
+  void execute(Runnable task) {
+    getExecutor().execute(task);
+  }
+
+  /**
+   * Stops the dispatcher after the completion of the submitted tasks.
+   *
+   * @since 1.1.0
+   */
+  synchronized void shutdown() {
+    isShutdown = true;
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  /** Returns the executor, creating it at the first call. */
+  private synchronized ThreadPoolExecutor getExecutor() {
+    if (isShutdown) {
+      throw new RejectedExecutionException("The APDU dispatcher of " + name + " is shut down.");
+    }
+    if (executor == null) {
+      executor =
+          new ThreadPoolExecutor(
+              threads,
+              threads,
+              KEEP_ALIVE_SECONDS,
+              TimeUnit.SECONDS,
+              new ArrayBlockingQueue<Runnable>(queueCapacity),
+              new DispatcherThreadFactory(name));
+      executor.allowCoreThreadTimeOut(true);
+    }
+    return executor;
+  }
+
+  /** Creates the daemon threads of a dispatcher. */
+  private static final class DispatcherThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    private DispatcherThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread =
+          new Thread(
+              runnable, "LegacyHsmApduDispatcher-" + name + "-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
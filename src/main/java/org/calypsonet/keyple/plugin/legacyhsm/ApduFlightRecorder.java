@@ -0,0 +1,223 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free ring buffer keeping the last APDU exchanges of a CSM in binary form.
+ *
+ * <p>Each record holds the time of the exchange, the channel, the command header (CLA INS P1 P2),
+ * the status word or the HSM error code, and the latency. Recording costs an atomic increment and a
+ * few array writes, no object is allocated: the buffer can be left enabled in production and
+ * formatted only when needed with {@link #dump(StringBuilder, int, int)}.
+ *
+ * <p>Each slot starts with its sequence number, cleared while the slot is being written, so that a
+ * dump skips the records overwritten during the reading instead of mixing them.
+ *
+ * @since 1.1.0
+ */
+final class ApduFlightRecorder {
+
+  /** Recorder keeping nothing. */
+  static final ApduFlightRecorder DISABLED = new ApduFlightRecorder(0);
+
+  /** Value of the channel filter to dump the records of all the channels. */
+  static final int ALL_CHANNELS = -1;
+
+  private static final int SEQUENCE = 0;
+  private static final int TIME = 1;
+  private static final int EXCHANGE = 2;
+  private static final int LATENCY = 3;
+  private static final int SLOT_SIZE = 4;
+
+  /*
+   * Layout of the exchange field: command header (bits 32-63), channel (bits 17-31), error flag
+   * (bit 16), status word or error code (bits 0-15).
+   */
+  private static final int CHANNEL_SHIFT = 17;
+  private static final int CHANNEL_MASK = 0x7FFF;
+
+  /** Marks a record whose exchange failed with an HSM error, the error code replacing the SW. */
+  private static final long ERROR_FLAG = 1L << 16;
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicLongArray slots;
+
+  /** Number of records written so far, the next record having this sequence number plus one. */
+  private final AtomicLong recordCount = new AtomicLong();
+
+  /** Reference of the conversion of {@link System#nanoTime()} to the wall clock. */
+  private final long originMillis = System.currentTimeMillis();
+
+  private final long originNanos = System.nanoTime();
+
+  /**
+   * Creates a recorder.
+   *
+   * @param capacity The number of records kept, rounded up to a power of two (0 to disable the
+   *     recording).
+   * @since 1.1.0
+   */
+  ApduFlightRecorder(int capacity) {
+    int roundedCapacity = capacity > 0 ? 1 : 0;
+    while (roundedCapacity < capacity) {
+      roundedCapacity <<= 1;
+    }
+    this.capacity = roundedCapacity;
+    this.mask = roundedCapacity - 1;
+    this.slots = new AtomicLongArray(roundedCapacity * SLOT_SIZE);
+  }
+
+  /**
+   * Returns the number of records kept.
+   *
+   * @return 0 if the recording is disabled.
+   * @since 1.1.0
+   */
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Records a successful exchange.
+   *
+   * @param startNanos The {@link System#nanoTime()} at the beginning of the exchange.
+   * @param latencyNanos The duration of the exchange.
+   * @param channelId The identifier of the channel.
+   * @param apduIn The command.
+   * @param apduOut The buffer containing the response.
+   * @param offset The position of the response.
+   * @param length The length of the response.
+   * @since 1.1.0
+   */
+  void record(
+      long startNanos,
+      long latencyNanos,
+      int channelId,
+      byte[] apduIn,
+      byte[] apduOut,
+      int offset,
+      int length) {
+    if (capacity == 0) {
+      return;
+    }
+    write(startNanos, latencyNanos, channelId, apduIn, StatusWord.of(apduOut, offset, length));
+  }
+
+  /**
+   * Records an exchange failed with an HSM error.
+   *
+   * @param startNanos The {@link System#nanoTime()} at the beginning of the exchange.
+   * @param latencyNanos The duration of the exchange.
+   * @param channelId The identifier of the channel.
+   * @param apduIn The command, null if unknown.
+   * @param errorCode The HSM error code.
+   * @since 1.1.0
+   */
+  void recordError(
+      long startNanos, long latencyNanos, int channelId, byte[] apduIn, int errorCode) {
+    if (capacity == 0) {
+      return;
+    }
+    write(startNanos, latencyNanos, channelId, apduIn, ERROR_FLAG | (errorCode & 0xFFFF));
+  }
+
+  private void write(
+      long startNanos, long latencyNanos, int channelId, byte[] apduIn, long outcome) {
+    long sequence = recordCount.incrementAndGet();
+    int base = (int) (sequence & mask) * SLOT_SIZE;
+    // ordered stores: a reader seeing any field of this record then sees a different sequence
+    slots.lazySet(base + SEQUENCE, 0);
+    slots.lazySet(base + TIME, startNanos);
+    slots.lazySet(
+        base + EXCHANGE,
+        (long) header(apduIn) << 32 | (long) (channelId & CHANNEL_MASK) << CHANNEL_SHIFT | outcome);
+    slots.lazySet(base + LATENCY, latencyNanos);
+    slots.lazySet(base + SEQUENCE, sequence);
+  }
+
+  /**
+   * Returns the CLA INS P1 P2 bytes of a command.
+   *
+   * @param apduIn The command, null if unknown.
+   * @return The header as an int, missing bytes being 0.
+   */
+  private static int header(byte[] apduIn) {
+    int header = 0;
+    for (int i = 0; i < 4; i++) {
+      header = header << 8 | (apduIn != null && i < apduIn.length ? apduIn[i] & 0xFF : 0);
+    }
+    return header;
+  }
+
+  /**
+   * Formats the last records, oldest first, one per line.
+   *
+   * @param sb The builder to append to.
+   * @param channelId The channel whose records are dumped, {@link #ALL_CHANNELS} for all.
+   * @param maxRecords The maximum number of records dumped.
+   * @since 1.1.0
+   */
+  void dump(StringBuilder sb, int channelId, int maxRecords) {
+    long last = recordCount.get();
+    long first = Math.max(1, last - capacity + 1);
+    // the last matching records are searched backward, then formatted in chronological order
+    long[] records = new long[Math.min(maxRecords, (int) (last - first + 1)) * SLOT_SIZE];
+    int count = 0;
+    for (long sequence = last;
+        sequence >= first && count * SLOT_SIZE < records.length;
+        sequence--) {
+      int base = (int) (sequence & mask) * SLOT_SIZE;
+      long time = slots.get(base + TIME);
+      long exchange = slots.get(base + EXCHANGE);
+      long latency = slots.get(base + LATENCY);
+      if (slots.get(base + SEQUENCE) != sequence) {
+        // being written or already overwritten
+        continue;
+      }
+      if (channelId != ALL_CHANNELS
+          && (int) (exchange >>> CHANNEL_SHIFT & CHANNEL_MASK) != (channelId & CHANNEL_MASK)) {
+        continue;
+      }
+      int index = count++ * SLOT_SIZE;
+      records[index + SEQUENCE] = sequence;
+      records[index + TIME] = time;
+      records[index + EXCHANGE] = exchange;
+      records[index + LATENCY] = latency;
+    }
+    for (int i = count - 1; i >= 0; i--) {
+      int index = i * SLOT_SIZE;
+      long exchange = records[index + EXCHANGE];
+      long timeMillis =
+          originMillis + TimeUnit.NANOSECONDS.toMillis(records[index + TIME] - originNanos);
+      sb.append(String.format("%tF %<tT.%<tL", timeMillis))
+          .append(" #")
+          .append(records[index + SEQUENCE])
+          .append(" ch=")
+          .append(exchange >>> CHANNEL_SHIFT & CHANNEL_MASK)
+          .append(' ')
+          .append(String.format("%08X", exchange >>> 32));
+      if ((exchange & ERROR_FLAG) != 0) {
+        sb.append(String.format(" -> error %02X", exchange & 0xFFFF));
+      } else {
+        sb.append(String.format(" -> %04X", exchange & 0xFFFF));
+      }
+      sb.append(' ')
+          .append(TimeUnit.NANOSECONDS.toMicros(records[index + LATENCY]))
+          .append(" us\n");
+    }
+  }
+}
@@ -0,0 +1,1441 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of {@link HsmChannel} opened for a given key group reference.
+ *
+ * <p>The pool keeps up to {@code minIdle} channels open and ready to be allocated, and holds at
+ * most {@code maxSize} channels (idle and allocated). A released channel goes back to the pool
+ * instead of being closed, unless it failed or the pool is disabled ({@code maxSize} = 0).
+ *
+ * <p>The CSMs holding the key group are tried in the order given by the {@link CsmRouter}, first to
+ * take an idle channel and then to open a new one. A CSM whose {@link CircuitBreaker} is open is
+ * skipped, and a CSM failing to open a channel is reported to its breaker before the allocation
+ * fails over to the next one.
+ *
+ * <p>When no channel is available, {@link #acquire(AllocationClass, String, long)} waits in a
+ * queue. A reusable channel released while callers are waiting is handed over directly to the next
+ * one, and the next waiter is woken up to retry when some capacity is freed (closed channel,
+ * reopened breaker). The next waiter is the oldest one of the {@link AllocationClass} with the
+ * highest priority, the classes of the same priority being served in proportion of their weights
+ * (stride scheduling). A class cannot take a channel that would leave less channels than the unused
+ * reservations of the other classes.
+ *
+ * <p>When the caller affinity is enabled, a reusable channel released by an identified caller is
+ * parked for this caller during the affinity hold time instead of going back to the pool, and is
+ * given back to it by its next allocation without going through the routing nor the wait queue. A
+ * parked channel goes back to the pool when its hold time has elapsed, or is taken by another
+ * caller if no other channel can be obtained, so that the affinity never makes a caller wait.
+ *
+ * <p>The readers allocated in shared mode do not hold a channel: on each CSM, they share a {@link
+ * MultiplexedChannel} lending its channels, taken from this pool as needed up to {@code
+ * sharedChannelsPerCsm}, to each of their exchanges. These channels are accounted for in the
+ * default {@link AllocationClass}.
+ *
+ * <p>Idle channels are reused in LIFO order so that the least recently used ones can be evicted
+ * when they exceed the {@code minIdle} threshold for more than {@link #IDLE_KEEP_ALIVE_MILLIS}.
+ *
+ * @since 1.1.0
+ */
+final class ChannelPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChannelPool.class);
+
+  /** Time after which an idle channel above the min-idle threshold is closed. */
+  static final long IDLE_KEEP_ALIVE_MILLIS = 60000;
+
+  /** Liveness probe of the idle channels: Get Challenge of 4 bytes, accepted by any SAM. */
+  private static final byte[] PROBE_APDU = {(byte) 0x80, (byte) 0x84, 0x00, 0x00, 0x04};
+
+  /** Maximum time the next waiter sleeps before retrying on its own (circuit breaker trials). */
+  private static final long WAITER_RETRY_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /** Pass added to a class of weight 1 each time one of its waiters is served. */
+  private static final long STRIDE = 1 << 20;
+
+  private final int keyGroupReference;
+  /** CSMs holding the key group, replaced as a whole when a CSM is added or removed. */
+  private volatile CsmNode[] csmNodes;
+
+  private final CsmRouter csmRouter;
+  private final int minIdle;
+  private final int maxSize;
+  private final long affinityHoldMillis;
+  private final int sharedChannelsPerCsm;
+
+  /** Channels shared by the readers allocated in shared mode, by CSM. */
+  private final ConcurrentMap<CsmNode, MultiplexedChannel> multiplexedChannels =
+      new ConcurrentHashMap<CsmNode, MultiplexedChannel>();
+
+  /** Idle channels of each CSM. */
+  private final Map<CsmNode, LinkedBlockingDeque<PooledChannel>> idleChannels =
+      new ConcurrentHashMap<CsmNode, LinkedBlockingDeque<PooledChannel>>();
+
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  /** Channels parked for their last caller, by caller identifier. */
+  private final ConcurrentMap<String, Parking> parkings = new ConcurrentHashMap<String, Parking>();
+
+  /**
+   * Parkings in the order of their deadlines, possibly including parkings already ended, which are
+   * skipped.
+   */
+  private final ConcurrentLinkedQueue<Parking> parkingOrder = new ConcurrentLinkedQueue<Parking>();
+
+  /** Size of {@link #parkings}, readable without iterating. */
+  private final AtomicInteger parkedCount = new AtomicInteger();
+
+  /** Number of channels currently opened by this pool (idle and allocated). */
+  private final AtomicInteger size = new AtomicInteger();
+
+  private volatile boolean isClosed;
+
+  /**
+   * Held shared while opening a channel and exclusively while closing the pool, so that no channel
+   * is opened once the pool is closed.
+   */
+  private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+  /** Callers waiting for a channel, oldest first, guarded by {@link #waitLock}. */
+  private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
+
+  private final ReentrantLock waitLock = new ReentrantLock();
+
+  /** Size of {@link #waiters}, readable without lock. */
+  private final AtomicInteger waiterCount = new AtomicInteger();
+
+  private final KeyGroupStatistics statistics;
+
+  /** Classes sharing the channels, indexed by {@link AllocationClass#getIndex()}. */
+  private final AllocationClass[] allocationClasses;
+
+  /** Channels allocated to each class. */
+  private final AtomicIntegerArray allocatedChannels;
+
+  /** Channels parked for a caller, by class of their last allocation. */
+  private final AtomicIntegerArray parkedChannels;
+
+  /** Sum of the reservations of the classes. */
+  private final int reservedChannelsTotal;
+
+  /** Stride scheduling pass of each class, guarded by {@link #waitLock}. */
+  private final long[] classPasses;
+
+  /** Pass of the last served class, guarded by {@link #waitLock}. */
+  private long currentPass;
+
+  /**
+   * Creates a pool for the provided key group.
+   *
+   * @param keyGroupReference The key group reference.
+   * @param csmNodes The CSMs holding the key group.
+   * @param csmRouter The router choosing the CSM of each allocation.
+   * @param minIdle The number of channels to keep open and ready.
+   * @param maxSize The maximum number of channels held by the pool (0 to disable the pooling).
+   * @param allocationClasses The classes of the allocations, indexed by {@link
+   *     AllocationClass#getIndex()}.
+   * @param affinityHoldMillis The time a channel released by an identified caller stays parked for
+   *     it (0 to disable the caller affinity).
+   * @param sharedChannelsPerCsm The maximum number of channels shared by the readers allocated in
+   *     shared mode on each CSM.
+   * @param pluginStatistics The statistics of the plugin, updated along with the ones of the pool.
+   * @since 1.1.0
+   */
+  ChannelPool(
+      int keyGroupReference,
+      List<CsmNode> csmNodes,
+      CsmRouter csmRouter,
+      int minIdle,
+      int maxSize,
+      AllocationClass[] allocationClasses,
+      long affinityHoldMillis,
+      int sharedChannelsPerCsm,
+      KeyGroupStatistics pluginStatistics) {
+    this.keyGroupReference = keyGroupReference;
+    this.csmNodes = csmNodes.toArray(new CsmNode[csmNodes.size()]);
+    this.csmRouter = csmRouter;
+    this.minIdle = minIdle;
+    this.maxSize = maxSize;
+    this.affinityHoldMillis = affinityHoldMillis;
+    this.sharedChannelsPerCsm = sharedChannelsPerCsm;
+    this.allocationClasses = allocationClasses;
+    this.statistics = new KeyGroupStatistics(pluginStatistics);
+    this.allocatedChannels = new AtomicIntegerArray(allocationClasses.length);
+    this.parkedChannels = new AtomicIntegerArray(allocationClasses.length);
+    this.classPasses = new long[allocationClasses.length];
+    int reserved = 0;
+    for (AllocationClass allocationClass : allocationClasses) {
+      reserved += allocationClass.getReservedChannels();
+    }
+    this.reservedChannelsTotal = reserved;
+    for (CsmNode csmNode : this.csmNodes) {
+      idleChannels.put(csmNode, new LinkedBlockingDeque<PooledChannel>());
+    }
+  }
+
+  /**
+   * Returns the key group reference served by this pool.
+   *
+   * @return The key group reference.
+   * @since 1.1.0
+   */
+  int getKeyGroupReference() {
+    return keyGroupReference;
+  }
+
+  /**
+   * Adds a CSM holding the key group, discovered after the creation of the pool.
+   *
+   * @param csmNode The CSM.
+   * @since 1.1.0
+   */
+  synchronized void addCsmNode(CsmNode csmNode) {
+    CsmNode[] currentNodes = csmNodes;
+    if (Arrays.asList(currentNodes).contains(csmNode)) {
+      return;
+    }
+    idleChannels.put(csmNode, new LinkedBlockingDeque<PooledChannel>());
+    CsmNode[] updatedNodes = Arrays.copyOf(currentNodes, currentNodes.length + 1);
+    updatedNodes[currentNodes.length] = csmNode;
+    csmNodes = updatedNodes;
+    // the new CSM may serve a waiting caller
+    signalNextWaiter();
+  }
+
+  /**
+   * Removes a CSM no longer holding the key group.
+   *
+   * <p>Its idle channels are closed. Its allocated channels remain usable and are closed when they
+   * are released.
+   *
+   * @param csmNode The CSM.
+   * @return The number of CSMs still holding the key group.
+   * @since 1.1.0
+   */
+  synchronized int removeCsmNode(CsmNode csmNode) {
+    List<CsmNode> updatedNodes = new ArrayList<CsmNode>(Arrays.asList(csmNodes));
+    if (updatedNodes.remove(csmNode)) {
+      csmNodes = updatedNodes.toArray(new CsmNode[updatedNodes.size()]);
+      // the readers sharing the channels of the CSM keep them until they are released
+      multiplexedChannels.remove(csmNode);
+      LinkedBlockingDeque<PooledChannel> nodeIdleChannels = idleChannels.remove(csmNode);
+      List<PooledChannel> channels = new ArrayList<PooledChannel>();
+      idleCount.addAndGet(-nodeIdleChannels.drainTo(channels));
+      for (PooledChannel pooledChannel : channels) {
+        tryClose(pooledChannel);
+      }
+    }
+    return updatedNodes.size();
+  }
+
+  /**
+   * Indicates if the provided CSM holds the key group.
+   *
+   * @param csmNode The CSM.
+   * @return True if the CSM is used by this pool.
+   * @since 1.1.0
+   */
+  boolean hasCsmNode(CsmNode csmNode) {
+    return idleChannels.containsKey(csmNode);
+  }
+
+  /**
+   * Returns the number of idle channels.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getIdleCount() {
+    return idleCount.get();
+  }
+
+  /**
+   * Returns the number of channels parked for their last caller.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getParkedCount() {
+    return parkedCount.get();
+  }
+
+  /**
+   * Returns the number of channels held by the pool, idle, parked or allocated.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getSize() {
+    return size.get();
+  }
+
+  /**
+   * Returns the number of callers waiting for a channel.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getWaiterCount() {
+    return waiterCount.get();
+  }
+
+  /**
+   * Returns the allocation statistics of the key group.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  KeyGroupStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Takes an idle channel or opens a new one if the maximum size of the pool is not reached, or
+   * takes a channel parked for another caller as a last resort.
+   *
+   * <p>The CSMs are tried in the routed order, an idle channel of a less preferred CSM being taken
+   * only once no channel can be opened on the preferred ones, so that the routing strategy is
+   * followed despite the channels left idle by former allocations.
+   *
+   * @return Null if no channel is available.
+   * @throws HsmException If no channel is available and the HSM backend failed to open a new
+   *     channel on at least one of the CSMs (the last error is thrown).
+   */
+  private PooledChannel acquire() throws HsmException {
+    if (isClosed) {
+      return null;
+    }
+    if (parkedCount.get() != 0) {
+      reclaimExpiredParkings();
+    }
+    HsmException lastException = null;
+    for (CsmNode csmNode : csmRouter.route(csmNodes)) {
+      if (csmNode.getCircuitBreaker().isClosed()) {
+        LinkedBlockingDeque<PooledChannel> nodeIdleChannels = idleChannels.get(csmNode);
+        // the CSM may have been removed since the routing
+        PooledChannel pooledChannel =
+            nodeIdleChannels != null ? nodeIdleChannels.pollFirst() : null;
+        if (pooledChannel != null) {
+          idleCount.decrementAndGet();
+          csmNode.onChannelAllocated();
+          return pooledChannel;
+        }
+      }
+      try {
+        PooledChannel pooledChannel = open(csmNode);
+        if (pooledChannel != null) {
+          csmNode.onChannelAllocated();
+          return pooledChannel;
+        }
+      } catch (HsmException e) {
+        if (!e.isKeyGroupError()) {
+          logger.warn(
+              "Unable to open a channel for key group {} on CSM {}, trying the next one. result={} ({})",
+              keyGroupReference,
+              csmNode,
+              e.getCode(),
+              e.getMessage());
+        }
+        lastException = e;
+      }
+    }
+    if (parkedCount.get() != 0) {
+      PooledChannel pooledChannel = takeParkedChannel();
+      if (pooledChannel != null) {
+        // the channel is taken from another caller
+        if (reset(pooledChannel)) {
+          pooledChannel.getCsmNode().onChannelAllocated();
+          return pooledChannel;
+        }
+        tryClose(pooledChannel);
+      }
+    }
+    if (lastException != null) {
+      throw lastException;
+    }
+    return null;
+  }
+
+  /**
+   * Takes a channel for an allocation of the provided class, waiting up to the provided timeout for
+   * one to be released if none is available.
+   *
+   * <p>The channel parked for the caller, if any, is returned first. As long as other callers are
+   * waiting, a new caller queues even if it could have opened a new channel, and is served
+   * according to its class.
+   *
+   * @param allocationClass The class of the allocation.
+   * @param callerId The identifier of the caller for the caller affinity, null if none.
+   * @param timeoutMillis The maximum waiting time in milliseconds, 0 for no wait.
+   * @return Null if no channel became available within the timeout or if the pool is closed.
+   * @throws HsmException If the HSM backend failed to open a new channel on all the CSMs.
+   * @throws InterruptedException If the caller is interrupted while waiting.
+   * @since 1.1.0
+   */
+  PooledChannel acquire(AllocationClass allocationClass, String callerId, long timeoutMillis)
+      throws HsmException, InterruptedException {
+    if (isClosed) {
+      return null;
+    }
+    if (callerId != null && parkedCount.get() != 0) {
+      PooledChannel pooledChannel = takeParkedChannel(callerId);
+      if (pooledChannel != null) {
+        pooledChannel.getCsmNode().onChannelAllocated();
+        onAllocated(pooledChannel, allocationClass, callerId);
+        statistics.onAffinityReused();
+        return pooledChannel;
+      }
+    }
+    if (waiterCount.get() == 0 && isWithinShare(allocationClass)) {
+      PooledChannel pooledChannel = acquire();
+      if (pooledChannel != null) {
+        onAllocated(pooledChannel, allocationClass, callerId);
+        return pooledChannel;
+      }
+      if (timeoutMillis <= 0) {
+        return null;
+      }
+    } else if (timeoutMillis <= 0) {
+      return null;
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    Waiter waiter = new Waiter(waitLock.newCondition(), allocationClass, callerId);
+    waitLock.lock();
+    try {
+      if (!hasWaiter(allocationClass)) {
+        // a class becoming active does not get the credit of its idle period
+        int index = allocationClass.getIndex();
+        classPasses[index] = Math.max(classPasses[index], currentPass);
+      }
+      waiters.addLast(waiter);
+      waiterCount.incrementAndGet();
+    } finally {
+      waitLock.unlock();
+    }
+    try {
+      while (true) {
+        PooledChannel pooledChannel;
+        if (isNextWaiter(waiter)) {
+          pooledChannel = acquire();
+          if (pooledChannel != null) {
+            waitLock.lock();
+            try {
+              chargePass(allocationClass);
+            } finally {
+              waitLock.unlock();
+            }
+            onAllocated(pooledChannel, allocationClass, callerId);
+            return pooledChannel;
+          }
+        }
+        waitLock.lock();
+        try {
+          if (waiter.handedChannel != null) {
+            pooledChannel = waiter.handedChannel;
+            waiter.handedChannel = null;
+            return pooledChannel;
+          }
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0 || isClosed) {
+            return null;
+          }
+          if (!waiter.isSignaled) {
+            waiter.condition.awaitNanos(Math.min(remaining, WAITER_RETRY_PERIOD_NANOS));
+          }
+          waiter.isSignaled = false;
+        } finally {
+          waitLock.unlock();
+        }
+      }
+    } finally {
+      leave(waiter);
+    }
+  }
+
+  /**
+   * Allocates a reader in shared mode, joining the shared channels of a CSM, or creating them from
+   * a channel taken for the default class, waiting up to the provided timeout for one to be
+   * released if none is available.
+   *
+   * @param timeoutMillis The maximum waiting time in milliseconds, 0 for no wait.
+   * @return A new instance wrapping the {@link MultiplexedChannel} of the CSM, null if no channel
+   *     became available within the timeout or if the pool is closed.
+   * @throws HsmException If the HSM backend failed to open a new channel on all the CSMs.
+   * @throws InterruptedException If the caller is interrupted while waiting.
+   * @since 1.1.0
+   */
+  PooledChannel acquireShared(long timeoutMillis) throws HsmException, InterruptedException {
+    if (isClosed) {
+      return null;
+    }
+    for (CsmNode csmNode : csmRouter.route(csmNodes)) {
+      MultiplexedChannel multiplexedChannel = multiplexedChannels.get(csmNode);
+      if (multiplexedChannel != null
+          && csmNode.getCircuitBreaker().isClosed()
+          && multiplexedChannel.addReader()) {
+        return new PooledChannel(multiplexedChannel, csmNode);
+      }
+    }
+    PooledChannel pooledChannel = acquire(allocationClasses[0], null, timeoutMillis);
+    if (pooledChannel == null) {
+      return null;
+    }
+    CsmNode csmNode = pooledChannel.getCsmNode();
+    MultiplexedChannel multiplexedChannel = multiplexedChannels.get(csmNode);
+    if (multiplexedChannel == null) {
+      MultiplexedChannel newMultiplexedChannel =
+          new MultiplexedChannel(this, csmNode, sharedChannelsPerCsm);
+      multiplexedChannel = multiplexedChannels.putIfAbsent(csmNode, newMultiplexedChannel);
+      if (multiplexedChannel == null) {
+        multiplexedChannel = newMultiplexedChannel;
+      }
+    }
+    multiplexedChannel.addReader(pooledChannel);
+    return new PooledChannel(multiplexedChannel, csmNode);
+  }
+
+  /**
+   * Takes an idle channel of the provided CSM or opens a new one on it for the default class, to
+   * extend its shared channels, unless other callers are waiting.
+   *
+   * @param csmNode The CSM.
+   * @return Null if no channel is available.
+   * @throws HsmException If the HSM backend fails to open a new channel.
+   * @since 1.1.0
+   */
+  PooledChannel acquireSharedChannel(CsmNode csmNode) throws HsmException {
+    AllocationClass allocationClass = allocationClasses[0];
+    if (isClosed
+        || waiterCount.get() != 0
+        || !isWithinShare(allocationClass)
+        || !csmNode.getCircuitBreaker().isClosed()) {
+      return null;
+    }
+    LinkedBlockingDeque<PooledChannel> nodeIdleChannels = idleChannels.get(csmNode);
+    if (nodeIdleChannels == null) {
+      // the CSM has been removed
+      return null;
+    }
+    PooledChannel pooledChannel = nodeIdleChannels.pollFirst();
+    if (pooledChannel != null) {
+      idleCount.decrementAndGet();
+    } else {
+      pooledChannel = open(csmNode);
+      if (pooledChannel == null) {
+        return null;
+      }
+    }
+    csmNode.onChannelAllocated();
+    onAllocated(pooledChannel, allocationClass, null);
+    return pooledChannel;
+  }
+
+  /**
+   * Returns the number of readers allocated in shared mode.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getSharedReaderCount() {
+    int count = 0;
+    for (MultiplexedChannel multiplexedChannel : multiplexedChannels.values()) {
+      count += multiplexedChannel.getReaderCount();
+    }
+    return count;
+  }
+
+  /**
+   * Gives back a channel previously returned by {@link #acquire(AllocationClass, String, long)}.
+   *
+   * <p>A reusable channel is handed over to the next waiter if any, parked for its caller if the
+   * caller affinity applies, or kept open for a next allocation if the pooling is enabled.
+   * Otherwise it is closed.
+   *
+   * <p>A reader allocated in shared mode leaves its {@link MultiplexedChannel}.
+   *
+   * @param pooledChannel The channel.
+   * @param isReusable False if an error occurred on the channel.
+   * @throws HsmException If the channel closing fails.
+   * @since 1.1.0
+   */
+  void release(PooledChannel pooledChannel, boolean isReusable) throws HsmException {
+    statistics.onReleased();
+    if (pooledChannel.getChannel() instanceof MultiplexedChannel) {
+      ((MultiplexedChannel) pooledChannel.getChannel()).removeReader();
+      return;
+    }
+    releaseChannel(pooledChannel, isReusable);
+  }
+
+  /**
+   * Gives back a channel allocated by the pool, without accounting for the release of a reader.
+   *
+   * @param pooledChannel The channel.
+   * @param isReusable False if an error occurred on the channel.
+   * @throws HsmException If the channel closing fails.
+   * @since 1.1.0
+   */
+  void releaseChannel(PooledChannel pooledChannel, boolean isReusable) throws HsmException {
+    pooledChannel.getCsmNode().onChannelReleased();
+    allocatedChannels.decrementAndGet(pooledChannel.getAllocationClass().getIndex());
+    String callerId = pooledChannel.getCallerId();
+    if (isReusable
+        && callerId != null
+        && affinityHoldMillis > 0
+        && !isClosed
+        && waiterCount.get() == 0) {
+      park(pooledChannel, callerId);
+      return;
+    }
+    recycle(pooledChannel, isReusable);
+  }
+
+  /**
+   * Hands over a channel no longer allocated to the next waiter if any, or keeps it open for a next
+   * allocation if the pooling is enabled. Otherwise it is closed.
+   *
+   * <p>A reusable channel is reset beforehand, and closed if the reset fails.
+   *
+   * @param pooledChannel The channel.
+   * @param isReusable False if the channel has to be closed.
+   * @throws HsmException If the channel closing fails.
+   */
+  private void recycle(PooledChannel pooledChannel, boolean isReusable) throws HsmException {
+    if (isReusable && !isClosed) {
+      isReusable = reset(pooledChannel);
+    }
+    giveBack(pooledChannel, isReusable);
+  }
+
+  /**
+   * Hands over a channel already reset to the next waiter if any, or keeps it open for a next
+   * allocation if the pooling is enabled. Otherwise it is closed.
+   *
+   * @param pooledChannel The channel.
+   * @param isReusable False if the channel has to be closed.
+   * @throws HsmException If the channel closing fails.
+   */
+  private void giveBack(PooledChannel pooledChannel, boolean isReusable) throws HsmException {
+    if (isReusable && !isClosed && waiterCount.get() != 0 && handOver(pooledChannel)) {
+      return;
+    }
+    LinkedBlockingDeque<PooledChannel> nodeIdleChannels =
+        idleChannels.get(pooledChannel.getCsmNode());
+    if (isReusable && maxSize > 0 && !isClosed && nodeIdleChannels != null) {
+      pooledChannel.setIdleSince(System.currentTimeMillis());
+      nodeIdleChannels.offerFirst(pooledChannel);
+      idleCount.incrementAndGet();
+      // the pool may have been closed or the CSM removed meanwhile
+      if (!isIdleQueueActive(pooledChannel.getCsmNode(), nodeIdleChannels)
+          && nodeIdleChannels.remove(pooledChannel)) {
+        idleCount.decrementAndGet();
+        close(pooledChannel);
+      }
+      return;
+    }
+    try {
+      close(pooledChannel);
+    } finally {
+      signalNextWaiter();
+    }
+  }
+
+  /**
+   * Resets a channel before its allocation to another caller than the last one.
+   *
+   * @param pooledChannel The channel.
+   * @return False if the reset failed, the channel having then to be closed.
+   */
+  private boolean reset(PooledChannel pooledChannel) {
+    try {
+      pooledChannel.getChannel().reset();
+      return true;
+    } catch (HsmException e) {
+      logger.warn(
+          "Unable to reset a channel of key group {} on CSM {}, closing it. result={} ({})",
+          keyGroupReference,
+          pooledChannel.getCsmNode(),
+          e.getCode(),
+          e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Opens channels until the min-idle threshold is reached, and closes the channels left idle above
+   * this threshold for more than {@link #IDLE_KEEP_ALIVE_MILLIS}.
+   *
+   * <p>The channels are pre-opened on the CSM having the fewest idle channels, so that they are
+   * spread over the CSMs whatever the routing strategy.
+   *
+   * <p>The channels parked for their caller beyond the affinity hold time are given back to the
+   * pool beforehand. Errors are logged and stop the filling of the CSM until the next maintenance.
+   *
+   * @since 1.1.0
+   */
+  void maintain() {
+    if (parkedCount.get() != 0) {
+      reclaimExpiredParkings();
+    }
+    while (!isClosed && idleCount.get() < minIdle) {
+      PooledChannel pooledChannel = null;
+      for (CsmNode csmNode : routeByIdleCount()) {
+        try {
+          pooledChannel = open(csmNode);
+        } catch (HsmException e) {
+          logger.warn(
+              "Unable to pre-open a channel for key group {} on CSM {}. result={} ({})",
+              keyGroupReference,
+              csmNode,
+              e.getCode(),
+              e.getMessage());
+        }
+        if (pooledChannel != null) {
+          break;
+        }
+      }
+      if (pooledChannel == null) {
+        return;
+      }
+      pooledChannel.setIdleSince(System.currentTimeMillis());
+      LinkedBlockingDeque<PooledChannel> nodeIdleChannels =
+          idleChannels.get(pooledChannel.getCsmNode());
+      if (nodeIdleChannels == null) {
+        // the CSM has been removed meanwhile
+        tryClose(pooledChannel);
+        continue;
+      }
+      nodeIdleChannels.offerLast(pooledChannel);
+      idleCount.incrementAndGet();
+      if (!isIdleQueueActive(pooledChannel.getCsmNode(), nodeIdleChannels)
+          && nodeIdleChannels.remove(pooledChannel)) {
+        idleCount.decrementAndGet();
+        tryClose(pooledChannel);
+        continue;
+      }
+      signalNextWaiter();
+    }
+    long evictionTime = System.currentTimeMillis() - IDLE_KEEP_ALIVE_MILLIS;
+    for (LinkedBlockingDeque<PooledChannel> nodeIdleChannels : idleChannels.values()) {
+      while (idleCount.get() > minIdle) {
+        PooledChannel pooledChannel = nodeIdleChannels.peekLast();
+        if (pooledChannel == null || pooledChannel.getIdleSince() > evictionTime) {
+          break;
+        }
+        if (nodeIdleChannels.removeLastOccurrence(pooledChannel)) {
+          idleCount.decrementAndGet();
+          if (logger.isTraceEnabled()) {
+            logger.trace(
+                "Evicting idle channel #{} of key group {}.",
+                pooledChannel.getChannel().getId(),
+                keyGroupReference);
+          }
+          tryClose(pooledChannel);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the CSMs in the routed order, stably sorted by ascending number of idle channels.
+   *
+   * @return A new array.
+   */
+  private CsmNode[] routeByIdleCount() {
+    CsmNode[] routedNodes = csmRouter.route(csmNodes);
+    int length = routedNodes.length;
+    int[] nodeIdleCounts = new int[length];
+    for (int i = 0; i < length; i++) {
+      LinkedBlockingDeque<PooledChannel> nodeIdleChannels = idleChannels.get(routedNodes[i]);
+      // a CSM removed since the routing comes last
+      nodeIdleCounts[i] = nodeIdleChannels != null ? nodeIdleChannels.size() : Integer.MAX_VALUE;
+    }
+    // insertion sort, the number of CSMs is small
+    for (int i = 1; i < length; i++) {
+      CsmNode csmNode = routedNodes[i];
+      int nodeIdleCount = nodeIdleCounts[i];
+      int j = i - 1;
+      while (j >= 0 && nodeIdleCounts[j] > nodeIdleCount) {
+        routedNodes[j + 1] = routedNodes[j];
+        nodeIdleCounts[j + 1] = nodeIdleCounts[j];
+        j--;
+      }
+      routedNodes[j + 1] = csmNode;
+      nodeIdleCounts[j + 1] = nodeIdleCount;
+    }
+    return routedNodes;
+  }
+
+  /**
+   * Exchanges a liveness probe on the idle channels not known to be alive for more than the
+   * provided period, and closes the channels failing it.
+   *
+   * <p>A probed channel is taken out of its idle queue during the exchange so that it cannot be
+   * allocated meanwhile. The failures are reported to the CSM and its circuit breaker as failed
+   * exchanges.
+   *
+   * @param probePeriodMillis The time after which an idle channel is probed.
+   * @since 1.1.0
+   */
+  void probe(long probePeriodMillis) {
+    for (Map.Entry<CsmNode, LinkedBlockingDeque<PooledChannel>> entry : idleChannels.entrySet()) {
+      CsmNode csmNode = entry.getKey();
+      LinkedBlockingDeque<PooledChannel> nodeIdleChannels = entry.getValue();
+      long probeTime = System.currentTimeMillis() - probePeriodMillis;
+      for (PooledChannel pooledChannel : nodeIdleChannels.toArray(new PooledChannel[0])) {
+        if (isClosed
+            || pooledChannel.getAliveSince() > probeTime
+            || !nodeIdleChannels.removeFirstOccurrence(pooledChannel)) {
+          // recently used, or allocated meanwhile
+          continue;
+        }
+        idleCount.decrementAndGet();
+        try {
+          pooledChannel.getChannel().exchangeApdu(PROBE_APDU);
+        } catch (HsmException e) {
+          logger.warn(
+              "Closing the dead channel #{} of key group {} on CSM {}. result={} ({})",
+              pooledChannel.getChannel().getId(),
+              keyGroupReference,
+              csmNode,
+              e.getCode(),
+              e.getMessage());
+          csmNode.onExchangeFailed();
+          csmNode.getCircuitBreaker().onFailure();
+          tryClose(pooledChannel);
+          signalNextWaiter();
+          continue;
+        }
+        pooledChannel.setProbedAt(System.currentTimeMillis());
+        nodeIdleChannels.offerLast(pooledChannel);
+        idleCount.incrementAndGet();
+        if (!isIdleQueueActive(csmNode, nodeIdleChannels)
+            && nodeIdleChannels.remove(pooledChannel)) {
+          idleCount.decrementAndGet();
+          tryClose(pooledChannel);
+        }
+        signalNextWaiter();
+      }
+    }
+  }
+
+  /**
+   * Parks a released channel for its caller until the affinity hold time has elapsed.
+   *
+   * <p>A channel already parked for the same caller, released by a previous reader held
+   * concurrently, goes back to the pool.
+   *
+   * @param pooledChannel The channel.
+   * @param callerId The identifier of the caller.
+   */
+  private void park(PooledChannel pooledChannel, String callerId) {
+    Parking parking =
+        new Parking(pooledChannel, callerId, System.currentTimeMillis() + affinityHoldMillis);
+    onParked(pooledChannel);
+    parkingOrder.offer(parking);
+    Parking previous = parkings.put(callerId, parking);
+    if (previous != null) {
+      onUnparked(previous.pooledChannel);
+      tryRecycle(previous.pooledChannel);
+    }
+    // the pool may have been closed meanwhile
+    if (isClosed && parkings.remove(callerId, parking)) {
+      onUnparked(pooledChannel);
+      tryClose(pooledChannel);
+    }
+  }
+
+  /**
+   * Counts a channel parked for its caller, against the class of its last allocation.
+   *
+   * @param pooledChannel The channel.
+   */
+  private void onParked(PooledChannel pooledChannel) {
+    parkedCount.incrementAndGet();
+    parkedChannels.incrementAndGet(pooledChannel.getAllocationClass().getIndex());
+  }
+
+  /**
+   * Counts a channel no longer parked.
+   *
+   * @param pooledChannel The channel.
+   */
+  private void onUnparked(PooledChannel pooledChannel) {
+    parkedCount.decrementAndGet();
+    parkedChannels.decrementAndGet(pooledChannel.getAllocationClass().getIndex());
+  }
+
+  /**
+   * Takes the channel parked for the provided caller.
+   *
+   * <p>The ended parking is left in {@link #parkingOrder} and skipped later.
+   *
+   * @param callerId The identifier of the caller.
+   * @return Null if no channel is parked for the caller or if its CSM can no longer be used.
+   */
+  private PooledChannel takeParkedChannel(String callerId) {
+    Parking parking = parkings.remove(callerId);
+    if (parking == null) {
+      return null;
+    }
+    onUnparked(parking.pooledChannel);
+    PooledChannel pooledChannel = parking.pooledChannel;
+    if (!isParkedChannelUsable(pooledChannel)) {
+      tryRecycle(pooledChannel);
+      return null;
+    }
+    return pooledChannel;
+  }
+
+  /**
+   * Takes the oldest parked channel whose CSM can be used, whatever its caller.
+   *
+   * @return Null if none.
+   */
+  private PooledChannel takeParkedChannel() {
+    for (Parking parking : parkingOrder) {
+      if (isParkedChannelUsable(parking.pooledChannel)
+          && parkings.remove(parking.callerId, parking)) {
+        parkingOrder.remove(parking);
+        onUnparked(parking.pooledChannel);
+        return parking.pooledChannel;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gives back to the pool the channels parked beyond the affinity hold time.
+   *
+   * <p>The parkings expire in their order of creation, the hold time being the same for all.
+   */
+  private void reclaimExpiredParkings() {
+    long now = System.currentTimeMillis();
+    Parking parking;
+    while ((parking = parkingOrder.peek()) != null && parking.deadline <= now) {
+      if (parkingOrder.remove(parking) && parkings.remove(parking.callerId, parking)) {
+        onUnparked(parking.pooledChannel);
+        tryRecycle(parking.pooledChannel);
+      }
+    }
+  }
+
+  /**
+   * Indicates if a parked channel can be allocated, its CSM still holding the key group and its
+   * circuit breaker being closed.
+   *
+   * @param pooledChannel The channel.
+   * @return False if the channel must not be allocated.
+   */
+  private boolean isParkedChannelUsable(PooledChannel pooledChannel) {
+    CsmNode csmNode = pooledChannel.getCsmNode();
+    return hasCsmNode(csmNode) && csmNode.getCircuitBreaker().isClosed();
+  }
+
+  /**
+   * Gives back a channel taken out of its parking to the pool, closing it if its CSM no longer
+   * holds the key group, catching and logging the possible errors.
+   *
+   * @param pooledChannel The channel.
+   */
+  private void tryRecycle(PooledChannel pooledChannel) {
+    try {
+      recycle(pooledChannel, hasCsmNode(pooledChannel.getCsmNode()));
+    } catch (HsmException e) {
+      logger.error(
+          "Unable to close the channel #{} of key group {}. result={} ({})",
+          pooledChannel.getChannel().getId(),
+          keyGroupReference,
+          e.getCode(),
+          e.getMessage());
+    }
+  }
+
+  /**
+   * Indicates if the idle channels put in the provided queue are still reachable, that is if the
+   * pool is not closed and the CSM has not been removed.
+   *
+   * @param csmNode The CSM.
+   * @param nodeIdleChannels The idle channel queue taken for this CSM.
+   * @return False if the channels put in the queue have to be closed.
+   */
+  private boolean isIdleQueueActive(
+      CsmNode csmNode, LinkedBlockingDeque<PooledChannel> nodeIdleChannels) {
+    return !isClosed && idleChannels.get(csmNode) == nodeIdleChannels;
+  }
+
+  /**
+   * Records the allocation of a channel to a class and a caller.
+   *
+   * @param pooledChannel The channel.
+   * @param allocationClass The class.
+   * @param callerId The identifier of the caller, null if none.
+   */
+  private void onAllocated(
+      PooledChannel pooledChannel, AllocationClass allocationClass, String callerId) {
+    pooledChannel.setAllocationClass(allocationClass);
+    pooledChannel.setCallerId(callerId);
+    allocatedChannels.incrementAndGet(allocationClass.getIndex());
+  }
+
+  /**
+   * Indicates if the provided class can take one more channel without using the unused reservations
+   * of the other classes.
+   *
+   * <p>The channels parked for a caller count against the class of their last allocation. The
+   * channels taken concurrently may exceed the share by a few channels.
+   *
+   * @param allocationClass The class.
+   * @return True if no reservation applies or if the capacity of the pool is unknown.
+   */
+  private boolean isWithinShare(AllocationClass allocationClass) {
+    if (reservedChannelsTotal == 0) {
+      return true;
+    }
+    int capacity = getCapacity();
+    if (capacity == 0) {
+      return true;
+    }
+    int needed = 1;
+    for (AllocationClass other : allocationClasses) {
+      int index = other.getIndex();
+      int allocated = allocatedChannels.get(index) + parkedChannels.get(index);
+      needed += allocated;
+      if (other != allocationClass) {
+        needed += Math.max(other.getReservedChannels() - allocated, 0);
+      }
+    }
+    return needed <= capacity;
+  }
+
+  /**
+   * Returns the number of channels the pool can allocate: its maximum size, or the channel capacity
+   * of its CSMs when the pooling is disabled.
+   *
+   * @return 0 if unknown.
+   */
+  private int getCapacity() {
+    if (maxSize > 0) {
+      return maxSize;
+    }
+    int capacity = 0;
+    for (CsmNode csmNode : csmNodes) {
+      if (csmNode.getChannelsTotal() == 0) {
+        return 0;
+      }
+      capacity += csmNode.getChannelsTotal();
+    }
+    return capacity;
+  }
+
+  /**
+   * Returns the waiter to be served first, must be called with {@link #waitLock} held.
+   *
+   * @return Null if no waiter can be served within the share of its class.
+   */
+  private Waiter nextWaiter() {
+    Waiter next = null;
+    for (Waiter waiter : waiters) {
+      AllocationClass allocationClass = waiter.allocationClass;
+      if (next != null && next.allocationClass == allocationClass) {
+        // the oldest waiter of each class is considered
+        continue;
+      }
+      if ((next == null
+              || allocationClass.getPriority() > next.allocationClass.getPriority()
+              || (allocationClass.getPriority() == next.allocationClass.getPriority()
+                  && classPasses[allocationClass.getIndex()]
+                      < classPasses[next.allocationClass.getIndex()]))
+          && isWithinShare(allocationClass)) {
+        next = waiter;
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Indicates if a caller of the provided class is waiting, must be called with {@link #waitLock}
+   * held.
+   *
+   * @param allocationClass The class.
+   * @return True if a waiter of the class is queued.
+   */
+  private boolean hasWaiter(AllocationClass allocationClass) {
+    for (Waiter waiter : waiters) {
+      if (waiter.allocationClass == allocationClass) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Advances the pass of a class whose waiter is served, must be called with {@link #waitLock}
+   * held.
+   *
+   * @param allocationClass The class.
+   */
+  private void chargePass(AllocationClass allocationClass) {
+    int index = allocationClass.getIndex();
+    currentPass = classPasses[index];
+    classPasses[index] += STRIDE / allocationClass.getWeight();
+  }
+
+  /**
+   * Indicates if the provided waiter is the next one to be served.
+   *
+   * @param waiter The waiter.
+   * @return True if it is the next waiter.
+   */
+  private boolean isNextWaiter(Waiter waiter) {
+    waitLock.lock();
+    try {
+      return nextWaiter() == waiter;
+    } finally {
+      waitLock.unlock();
+    }
+  }
+
+  /**
+   * Gives a released channel to the next waiter.
+   *
+   * @param pooledChannel The channel.
+   * @return False if there is no waiter that can be served.
+   */
+  private boolean handOver(PooledChannel pooledChannel) {
+    waitLock.lock();
+    try {
+      Waiter waiter = nextWaiter();
+      if (waiter == null) {
+        return false;
+      }
+      waiters.remove(waiter);
+      waiterCount.decrementAndGet();
+      chargePass(waiter.allocationClass);
+      pooledChannel.getCsmNode().onChannelAllocated();
+      onAllocated(pooledChannel, waiter.allocationClass, waiter.callerId);
+      waiter.handedChannel = pooledChannel;
+      waiter.condition.signal();
+      return true;
+    } finally {
+      waitLock.unlock();
+    }
+  }
+
+  /** Wakes up the next waiter so that it retries to take or open a channel. */
+  private void signalNextWaiter() {
+    if (waiterCount.get() == 0) {
+      return;
+    }
+    waitLock.lock();
+    try {
+      Waiter waiter = nextWaiter();
+      if (waiter != null) {
+        waiter.isSignaled = true;
+        waiter.condition.signal();
+      }
+    } finally {
+      waitLock.unlock();
+    }
+  }
+
+  /**
+   * Removes a waiter from the queue when it stops waiting.
+   *
+   * <p>A channel handed over meanwhile to a waiter that got another one (or gave up) is given back
+   * to the pool as if it had never been allocated: the pass of the class is refunded and neither
+   * the release statistics nor the caller affinity apply. Otherwise the next waiter is woken up
+   * since the capacity may allow it to be served as well.
+   *
+   * @param waiter The waiter.
+   */
+  private void leave(Waiter waiter) {
+    PooledChannel extraChannel;
+    waitLock.lock();
+    try {
+      if (waiters.remove(waiter)) {
+        waiterCount.decrementAndGet();
+      }
+      extraChannel = waiter.handedChannel;
+      waiter.handedChannel = null;
+      if (extraChannel != null) {
+        AllocationClass allocationClass = waiter.allocationClass;
+        classPasses[allocationClass.getIndex()] -= STRIDE / allocationClass.getWeight();
+      }
+    } finally {
+      waitLock.unlock();
+    }
+    if (extraChannel != null) {
+      extraChannel.getCsmNode().onChannelReleased();
+      allocatedChannels.decrementAndGet(extraChannel.getAllocationClass().getIndex());
+      extraChannel.setCallerId(null);
+      try {
+        giveBack(extraChannel, true);
+      } catch (HsmException e) {
+        logger.error(
+            "Unable to close the channel #{} of key group {}. result={} ({})",
+            extraChannel.getChannel().getId(),
+            keyGroupReference,
+            e.getCode(),
+            e.getMessage());
+      }
+    } else {
+      signalNextWaiter();
+    }
+  }
+
+  /**
+   * Closes all the idle and parked channels and prevents the released ones from being pooled.
+   *
+   * @since 1.1.0
+   */
+  void close() {
+    // waits for the channels being opened, which are then released as allocated ones
+    closeLock.writeLock().lock();
+    try {
+      isClosed = true;
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+    List<PooledChannel> channels = new ArrayList<PooledChannel>();
+    for (LinkedBlockingDeque<PooledChannel> nodeIdleChannels : idleChannels.values()) {
+      idleCount.addAndGet(-nodeIdleChannels.drainTo(channels));
+    }
+    for (Parking parking : parkingOrder) {
+      if (parkings.remove(parking.callerId, parking)) {
+        onUnparked(parking.pooledChannel);
+        channels.add(parking.pooledChannel);
+      }
+    }
+    parkingOrder.clear();
+    for (PooledChannel pooledChannel : channels) {
+      tryClose(pooledChannel);
+    }
+    waitLock.lock();
+    try {
+      for (Waiter waiter : waiters) {
+        waiter.condition.signal();
+      }
+    } finally {
+      waitLock.unlock();
+    }
+  }
+
+  /**
+   * Opens a new channel on the provided CSM, as long as neither the maximum size of the pool nor
+   * the channel capacity of the CSM are reached and its circuit breaker allows it.
+   *
+   * <p>The outcome is reported to the circuit breaker of the CSM, key group errors being considered
+   * as successful exchanges with the CSM.
+   *
+   * @param csmNode The CSM.
+   * @return Null if no channel is available or if the pool is closed.
+   * @throws HsmException If the HSM backend fails to open a new channel.
+   */
+  private PooledChannel open(CsmNode csmNode) throws HsmException {
+    Lock openLock = closeLock.readLock();
+    openLock.lock();
+    try {
+      return isClosed ? null : openChannel(csmNode);
+    } finally {
+      openLock.unlock();
+    }
+  }
+
+  /**
+   * Opens a new channel on the provided CSM, {@link #closeLock} being held.
+   *
+   * <p>The circuit breaker is consulted first. The half-open trial of a CSM whose slots are all
+   * taken by idle channels, skipped while the breaker is not closed, closes one of them to make
+   * room. A trial ending without outcome lets the next caller retry it.
+   *
+   * @param csmNode The CSM.
+   * @return Null if no channel is available.
+   * @throws HsmException If the HSM backend fails to open a new channel.
+   */
+  private PooledChannel openChannel(CsmNode csmNode) throws HsmException {
+    CircuitBreaker circuitBreaker = csmNode.getCircuitBreaker();
+    if (!circuitBreaker.allowRequest()) {
+      return null;
+    }
+    boolean isReserved = false;
+    HsmChannel channel = null;
+    try {
+      isReserved =
+          reserveSlots(csmNode)
+              || (circuitBreaker.isTrialHolder()
+                  && closeIdleChannel(csmNode)
+                  && reserveSlots(csmNode));
+      if (!isReserved) {
+        return null;
+      }
+      channel = csmNode.getDevice().openChannel(keyGroupReference);
+      circuitBreaker.onSuccess();
+    } catch (HsmException e) {
+      if (e.isKeyGroupError()) {
+        circuitBreaker.onSuccess();
+      } else {
+        circuitBreaker.onFailure();
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      circuitBreaker.onFailure();
+      throw e;
+    } finally {
+      if (channel == null) {
+        if (isReserved) {
+          csmNode.releaseChannel();
+          size.decrementAndGet();
+        }
+        circuitBreaker.onTrialAbandoned();
+      }
+    }
+    return new PooledChannel(channel, csmNode);
+  }
+
+  /**
+   * Reserves a slot in the pool and a channel of the CSM.
+   *
+   * @param csmNode The CSM.
+   * @return False if the pool or the CSM is full.
+   */
+  private boolean reserveSlots(CsmNode csmNode) {
+    if (!reserveSlot()) {
+      return false;
+    }
+    if (!csmNode.reserveChannel()) {
+      size.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Closes the oldest idle channel of the provided CSM.
+   *
+   * @param csmNode The CSM.
+   * @return False if the CSM has no idle channel.
+   */
+  private boolean closeIdleChannel(CsmNode csmNode) {
+    LinkedBlockingDeque<PooledChannel> nodeIdleChannels = idleChannels.get(csmNode);
+    PooledChannel pooledChannel = nodeIdleChannels != null ? nodeIdleChannels.pollLast() : null;
+    if (pooledChannel == null) {
+      return false;
+    }
+    idleCount.decrementAndGet();
+    tryClose(pooledChannel);
+    return true;
+  }
+
+  /**
+   * Increments the pool size if the maximum is not reached.
+   *
+   * @return False if the pool is full.
+   */
+  private boolean reserveSlot() {
+    while (true) {
+      int current = size.get();
+      if (maxSize > 0 && current >= maxSize) {
+        return false;
+      }
+      if (size.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Closes a channel and frees its slots in the pool and in its CSM.
+   *
+   * @param pooledChannel The channel.
+   * @throws HsmException If the closing fails.
+   */
+  private void close(PooledChannel pooledChannel) throws HsmException {
+    size.decrementAndGet();
+    pooledChannel.getCsmNode().releaseChannel();
+    pooledChannel.getChannel().close();
+  }
+
+  /**
+   * Closes a channel, catching and logging the possible errors.
+   *
+   * @param pooledChannel The channel.
+   */
+  private void tryClose(PooledChannel pooledChannel) {
+    try {
+      close(pooledChannel);
+    } catch (HsmException e) {
+      logger.error(
+          "Unable to close the channel #{} of key group {}. result={} ({})",
+          pooledChannel.getChannel().getId(),
+          keyGroupReference,
+          e.getCode(),
+          e.getMessage());
+    }
+  }
+
+  /** A caller waiting for a channel. */
+  private static final class Waiter {
+
+    private final Condition condition;
+    private final AllocationClass allocationClass;
+    private final String callerId;
+
+    /** Channel handed over by a release, guarded by {@link #waitLock}. */
+    private PooledChannel handedChannel;
+
+    /** Set when the waiter has to retry, guarded by {@link #waitLock}. */
+    private boolean isSignaled;
+
+    private Waiter(Condition condition, AllocationClass allocationClass, String callerId) {
+      this.condition = condition;
+      this.allocationClass = allocationClass;
+      this.callerId = callerId;
+    }
+  }
+
+  /** A channel parked for its last caller. */
+  private static final class Parking {
+
+    private final PooledChannel pooledChannel;
+    private final String callerId;
+
+    /** Time from which the channel goes back to the pool. */
+    private final long deadline;
+
+    private Parking(PooledChannel pooledChannel, String callerId, long deadline) {
+      this.pooledChannel = pooledChannel;
+      this.callerId = callerId;
+      this.deadline = deadline;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker protecting the allocations from a failing CSM.
+ *
+ * <ul>
+ *   <li>{@link State#CLOSED}: the CSM is used normally. After {@code failureThreshold} consecutive
+ *       failures the breaker opens.
+ *   <li>{@link State#OPEN}: the CSM is skipped until the open duration has elapsed.
+ *   <li>{@link State#HALF_OPEN}: a single trial is let through. Its success closes the breaker, its
+ *       failure opens it again for twice the previous duration (up to {@link #MAX_BACKOFF_FACTOR}
+ *       times the base duration).
+ * </ul>
+ *
+ * <p>Only the trial can close the breaker: the successes of the exchanges started before the
+ * opening, on channels already allocated, are ignored.
+ *
+ * @since 1.1.0
+ */
+final class CircuitBreaker {
+
+  /** Maximum factor applied to the base open duration after repeated failed trials. */
+  static final int MAX_BACKOFF_FACTOR = 16;
+
+  /**
+   * States of the breaker.
+   *
+   * @since 1.1.0
+   */
+  enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openDurationMillis;
+  private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+  private final AtomicInteger consecutiveFailures = new AtomicInteger();
+  private volatile long openedAt;
+  private volatile int backoffFactor = 1;
+
+  /** The thread granted the half-open trial, null if none. */
+  private volatile Thread trialThread;
+
+  /**
+   * Creates a closed breaker.
+   *
+   * @param failureThreshold The number of consecutive failures opening the breaker (0 to disable
+   *     the breaker).
+   * @param openDurationMillis The base duration during which the CSM is skipped.
+   * @since 1.1.0
+   */
+  CircuitBreaker(int failureThreshold, long openDurationMillis) {
+    this.failureThreshold = failureThreshold;
+    this.openDurationMillis = openDurationMillis;
+  }
+
+  /**
+   * Returns the current state.
+   *
+   * @return A not null value.
+   * @since 1.1.0
+   */
+  State getState() {
+    return state.get();
+  }
+
+  /**
+   * Indicates if the breaker is closed, without consuming the half-open trial.
+   *
+   * @return True if the CSM is used normally.
+   * @since 1.1.0
+   */
+  boolean isClosed() {
+    return state.get() == State.CLOSED;
+  }
+
+  /**
+   * Indicates if a request to the CSM is allowed.
+   *
+   * <p>When the open duration has elapsed, the first caller is granted the half-open trial and must
+   * report its outcome from the same thread with {@link #onSuccess()} or {@link #onFailure()}.
+   *
+   * @return True if the request can be sent.
+   * @since 1.1.0
+   */
+  boolean allowRequest() {
+    State current = state.get();
+    if (current == State.CLOSED) {
+      return true;
+    }
+    if (current == State.OPEN
+        && System.currentTimeMillis() - openedAt >= openDurationMillis * backoffFactor
+        && state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+      trialThread = Thread.currentThread();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Reports a successful request: the breaker closes if the request is the half-open trial.
+   *
+   * <p>The successes reported while the breaker is open, or half-open by other threads than the one
+   * of the trial, come from requests sent before the opening and are ignored.
+   *
+   * @since 1.1.0
+   */
+  void onSuccess() {
+    State current = state.get();
+    if (current == State.CLOSED) {
+      if (consecutiveFailures.get() != 0) {
+        consecutiveFailures.set(0);
+      }
+    } else if (current == State.HALF_OPEN && trialThread == Thread.currentThread()) {
+      trialThread = null;
+      consecutiveFailures.set(0);
+      backoffFactor = 1;
+      state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+    }
+  }
+
+  /**
+   * Indicates if the calling thread holds the half-open trial.
+   *
+   * @return True if the breaker is half-open and the trial was granted to this thread.
+   * @since 1.1.0
+   */
+  boolean isTrialHolder() {
+    return state.get() == State.HALF_OPEN && trialThread == Thread.currentThread();
+  }
+
+  /**
+   * Gives back the half-open trial held by the calling thread when the request could not be sent,
+   * so that the next caller is granted it without waiting for a new open duration.
+   *
+   * <p>Does nothing if the calling thread does not hold the trial, for example because its outcome
+   * has already been reported.
+   *
+   * @since 1.1.0
+   */
+  void onTrialAbandoned() {
+    if (isTrialHolder()) {
+      trialThread = null;
+      state.compareAndSet(State.HALF_OPEN, State.OPEN);
+    }
+  }
+
+  /**
+   * Reports a failed request: the breaker opens when the threshold is reached or if the failure
+   * comes from the half-open trial.
+   *
+   * @since 1.1.0
+   */
+  void onFailure() {
+    if (failureThreshold == 0) {
+      return;
+    }
+    if (state.get() == State.HALF_OPEN) {
+      backoffFactor = Math.min(backoffFactor * 2, MAX_BACKOFF_FACTOR);
+      open();
+    } else if (consecutiveFailures.incrementAndGet() >= failureThreshold
+        && state.get() == State.CLOSED) {
+      open();
+    }
+  }
+
+  /** Opens the breaker from now. */
+  private void open() {
+    trialThread = null;
+    openedAt = System.currentTimeMillis();
+    state.set(State.OPEN);
+  }
+}
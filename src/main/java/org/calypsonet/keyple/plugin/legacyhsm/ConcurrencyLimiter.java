@@ -0,0 +1,279 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit of the APDU exchanges in progress on a CSM.
+ *
+ * <p>The limit follows an AIMD scheme driven by the exchange latency: it grows by one after a
+ * limit's worth of successful exchanges performed while at least half of it was in use, and is cut
+ * by a tenth when the exchanges get {@link #LATENCY_TOLERANCE} times slower than their baseline, or
+ * when an exchange fails. The cuts are spaced by a limit's worth of exchanges so that the effect of
+ * the previous one can be observed.
+ *
+ * <p>The cost of the SAM commands differing widely, a baseline latency is estimated for each
+ * instruction code: it moves quickly towards the lower samples and slowly towards the higher ones,
+ * approximating the latency without load while following the slow changes. The slowdown is the
+ * short-term average of the ratios of the latencies to their baseline, so that a change of the
+ * command mix is not taken for a congestion. The limit thus converges towards the concurrency
+ * beyond which the CSM only queues the requests.
+ *
+ * <p>The exchanges exceeding the limit wait for the end of an exchange in progress, up to a maximum
+ * waiting time. The uncontended path costs a few atomic operations.
+ *
+ * @since 1.1.0
+ */
+final class ConcurrencyLimiter {
+
+  /** Limiter letting all the exchanges through. */
+  static final ConcurrencyLimiter DISABLED = new ConcurrencyLimiter(0, 0);
+
+  /** Maximum waiting time of an exchange when the allocations do not wait. */
+  static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+
+  /** Slowdown of the exchanges compared to their baseline considered as congestion. */
+  static final int LATENCY_TOLERANCE = 2;
+
+  /** Fixed-point precision of the slowdown. */
+  private static final int SLOWDOWN_SHIFT = 8;
+
+  /** Weight of a new sample in the short-term average slowdown, as a power of two divisor. */
+  private static final int SLOWDOWN_SMOOTHING_SHIFT = 2;
+
+  /** Weight of a lower sample in the baseline latency, as a power of two divisor. */
+  private static final int BASELINE_DECREASE_SHIFT = 3;
+
+  /** Weight of a higher sample in the baseline latency, as a power of two divisor. */
+  private static final int BASELINE_INCREASE_SHIFT = 13;
+
+  private final int maxLimit;
+  private final long maxWaitNanos;
+  private final AtomicInteger limit;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong slowdown = new AtomicLong();
+
+  /** Baseline latency of each instruction code, 0 until measured. */
+  private final AtomicLongArray baselineLatencies = new AtomicLongArray(256);
+
+  /** Successful exchanges counted towards the next increase. */
+  private final AtomicInteger increaseCredits = new AtomicInteger();
+
+  /** Exchanges remaining before the next decrease is allowed. */
+  private final AtomicInteger decreaseCountdown = new AtomicInteger();
+
+  /** Exchanges waiting for the limit, guarded by {@link #waitLock} when incremented. */
+  private final AtomicInteger waiterCount = new AtomicInteger();
+
+  private final ReentrantLock waitLock = new ReentrantLock();
+  private final Condition belowLimit = waitLock.newCondition();
+
+  /**
+   * Creates a limiter starting at its maximum limit.
+   *
+   * @param maxLimit The maximum number of exchanges in progress (0 to disable the limiter).
+   * @param maxWaitMillis The maximum waiting time of an exchange exceeding the limit.
+   * @since 1.1.0
+   */
+  ConcurrencyLimiter(int maxLimit, long maxWaitMillis) {
+    this.maxLimit = maxLimit;
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    this.limit = new AtomicInteger(maxLimit);
+  }
+
+  /**
+   * Indicates if the exchanges are limited.
+   *
+   * @return False for {@link #DISABLED}.
+   * @since 1.1.0
+   */
+  boolean isEnabled() {
+    return maxLimit > 0;
+  }
+
+  /**
+   * Returns the current limit.
+   *
+   * @return 0 if the limiter is disabled.
+   * @since 1.1.0
+   */
+  int getLimit() {
+    return limit.get();
+  }
+
+  /**
+   * Returns the number of exchanges in progress.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Returns the maximum waiting time of an exchange exceeding the limit.
+   *
+   * @return A number of milliseconds.
+   * @since 1.1.0
+   */
+  long getMaxWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+  }
+
+  /**
+   * Waits until an exchange can start, to be followed by {@link #release(byte[], long, boolean)} if
+   * successful.
+   *
+   * @return False if no exchange ended within the maximum waiting time.
+   * @throws InterruptedException If the caller is interrupted while waiting.
+   * @since 1.1.0
+   */
+  boolean acquire() throws InterruptedException {
+    if (maxLimit == 0 || tryAcquire()) {
+      return true;
+    }
+    waitLock.lockInterruptibly();
+    try {
+      // registered before the last try so that a concurrent release signals this waiter
+      waiterCount.incrementAndGet();
+      try {
+        long remaining = maxWaitNanos;
+        while (!tryAcquire()) {
+          if (remaining <= 0) {
+            return false;
+          }
+          remaining = belowLimit.awaitNanos(remaining);
+        }
+        return true;
+      } finally {
+        waiterCount.decrementAndGet();
+      }
+    } finally {
+      waitLock.unlock();
+    }
+  }
+
+  /**
+   * Reports the end of an exchange started by {@link #acquire()} and adapts the limit.
+   *
+   * @param apduIn The command, null if unknown.
+   * @param latencyNanos The duration of the exchange.
+   * @param isFailed True if the exchange failed with an HSM error.
+   * @since 1.1.0
+   */
+  void release(byte[] apduIn, long latencyNanos, boolean isFailed) {
+    if (maxLimit == 0) {
+      return;
+    }
+    int wasInFlight = inFlight.getAndDecrement();
+    int currentLimit = limit.get();
+    if (decreaseCountdown.get() > 0) {
+      decreaseCountdown.decrementAndGet();
+    }
+    boolean isCongested = isFailed;
+    if (!isFailed && apduIn != null && apduIn.length > 1) {
+      long baselineLatency = updateBaseline(apduIn[1] & 0xFF, Math.max(latencyNanos, 1));
+      long averageSlowdown =
+          smooth(
+              slowdown,
+              Math.min((latencyNanos << SLOWDOWN_SHIFT) / baselineLatency, Integer.MAX_VALUE),
+              SLOWDOWN_SMOOTHING_SHIFT);
+      isCongested = averageSlowdown > (LATENCY_TOLERANCE << SLOWDOWN_SHIFT);
+    }
+    if (isCongested) {
+      decrease(currentLimit);
+    } else if (wasInFlight * 2 >= currentLimit
+        && increaseCredits.incrementAndGet() >= currentLimit) {
+      increaseCredits.set(0);
+      if (currentLimit < maxLimit) {
+        limit.compareAndSet(currentLimit, currentLimit + 1);
+      }
+    }
+    if (waiterCount.get() != 0) {
+      waitLock.lock();
+      try {
+        belowLimit.signal();
+      } finally {
+        waitLock.unlock();
+      }
+    }
+  }
+
+  /** Takes a slot if the limit is not reached. */
+  private boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= limit.get()) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /** Cuts the limit by a tenth, if no cut occurred during the last limit's worth of exchanges. */
+  private void decrease(int currentLimit) {
+    if (decreaseCountdown.get() > 0) {
+      return;
+    }
+    int decreased = Math.max(currentLimit - Math.max(currentLimit / 10, 1), 1);
+    if (limit.compareAndSet(currentLimit, decreased)) {
+      decreaseCountdown.set(currentLimit);
+      increaseCredits.set(0);
+    }
+  }
+
+  /**
+   * Adds a sample to the baseline latency of an instruction code.
+   *
+   * @return The updated baseline.
+   */
+  private long updateBaseline(int ins, long sample) {
+    while (true) {
+      long current = baselineLatencies.get(ins);
+      long updated;
+      if (current == 0) {
+        updated = sample;
+      } else if (sample < current) {
+        updated = current - ((current - sample) >> BASELINE_DECREASE_SHIFT);
+      } else {
+        updated = current + ((sample - current) >> BASELINE_INCREASE_SHIFT);
+      }
+      if (updated == current || baselineLatencies.compareAndSet(ins, current, updated)) {
+        return updated;
+      }
+    }
+  }
+
+  /**
+   * Adds a sample to an exponential moving average.
+   *
+   * @return The updated average.
+   */
+  private static long smooth(AtomicLong average, long sample, int shift) {
+    while (true) {
+      long current = average.get();
+      long updated = current == 0 ? sample : current + ((sample - current) >> shift);
+      if (average.compareAndSet(current, updated)) {
+        return updated;
+      }
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.keyple.core.util.HexUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable identity of a CSM, built once at its discovery and shared by all the readers allocated
+ * on it.
+ *
+ * <p>It holds the information of the CSM and the virtual ATR presented by its readers, precomputed
+ * in its hexadecimal form, the selected SAM image returned by these readers if a {@link
+ * LegacyHsmPluginFactoryBuilder.SelectedSamFactory} is provided, and generates unique reader names.
+ *
+ * @since 1.1.0
+ */
+final class CsmDescriptor {
+
+  private static final Logger logger = LoggerFactory.getLogger(CsmDescriptor.class);
+
+  /** Virtual ATR template, completed with the CSM version and serial number. */
+  private static final byte[] ATR_TEMPLATE = {
+    /* ISO header */
+    (byte) 0x3B,
+    (byte) 0x3F,
+    (byte) 0x96,
+    (byte) 0x00,
+    /* historical bytes */
+    (byte) 0x80,
+    (byte) 0x5A,
+    /* platform [6] */
+    (byte) 0x00,
+    /* Application type: SAM [7] */
+    (byte) 0x80,
+    /* Application subtype: C1 [8] */
+    (byte) 0xC1,
+    /* Software issuer Spirtech [9] */
+    (byte) 0x08,
+    /* Software version [10] */
+    (byte) 0x00,
+    /* Software revision [11] */
+    (byte) 0x00,
+    /* Serial number [12-15] */
+    (byte) 0x00,
+    (byte) 0x00,
+    (byte) 0x00,
+    (byte) 0x00,
+    /* ATR status */
+    (byte) 0x82,
+    (byte) 0x90,
+    (byte) 0x00
+  };
+
+  private final String name;
+  private final HsmDeviceInfo info;
+  private final String atrHex;
+  private final Object selectedSam;
+
+  /** Sequence number of the last reader allocated on the CSM. */
+  private final AtomicLong readerCount = new AtomicLong();
+
+  /**
+   * Creates the descriptor of a CSM.
+   *
+   * @param name The name of the CSM.
+   * @param info The information of the CSM.
+   * @param selectedSamFactory The factory of the selected SAM image, null if none.
+   * @since 1.1.0
+   */
+  CsmDescriptor(
+      String name,
+      HsmDeviceInfo info,
+      LegacyHsmPluginFactoryBuilder.SelectedSamFactory selectedSamFactory) {
+    this.name = name;
+    this.info = info;
+    byte[] atr = ATR_TEMPLATE.clone();
+    // version
+    atr[10] = (byte) info.getCsmVersion();
+    // serial number
+    atr[12] = (byte) (info.getSerialNumber() >> 24);
+    atr[13] = (byte) (info.getSerialNumber() >> 16);
+    atr[14] = (byte) (info.getSerialNumber() >> 8);
+    atr[15] = (byte) info.getSerialNumber();
+    this.atrHex = HexUtil.toHex(atr);
+    this.selectedSam = createSelectedSam(selectedSamFactory);
+  }
+
+  /**
+   * Builds the selected SAM image once for all the readers of the CSM, falling back to the
+   * selection by the application if the factory fails.
+   */
+  private Object createSelectedSam(
+      LegacyHsmPluginFactoryBuilder.SelectedSamFactory selectedSamFactory) {
+    if (selectedSamFactory == null) {
+      return null;
+    }
+    try {
+      return selectedSamFactory.createSelectedSam(atrHex);
+    } catch (RuntimeException e) {
+      logger.error(
+          "Selected SAM of CSM {} not created, its readers will not be pre-selected: {}",
+          name,
+          e.getMessage(),
+          e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the information of the CSM read at its discovery.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  HsmDeviceInfo getInfo() {
+    return info;
+  }
+
+  /**
+   * Returns the virtual ATR of the readers of the CSM as an hexadecimal string.
+   *
+   * @return A not null string.
+   * @since 1.1.0
+   */
+  String getAtrHex() {
+    return atrHex;
+  }
+
+  /**
+   * Returns the selected SAM image shared by the readers of the CSM.
+   *
+   * @return Null if no factory is provided or if it failed.
+   * @since 1.1.0
+   */
+  Object getSelectedSam() {
+    return selectedSam;
+  }
+
+  /**
+   * Returns a new reader name, unique among the readers of the CSM even when allocated in the same
+   * millisecond.
+   *
+   * @param channelId The identifier of the channel of the reader.
+   * @return A not null string.
+   * @since 1.1.0
+   */
+  String nextReaderName(int channelId) {
+    return name + " Ch. #" + channelId + " " + readerCount.incrementAndGet();
+  }
+}
@@ -0,0 +1,257 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the information and the key groups of the CSMs in parallel, one thread per CSM.
+ *
+ * <p>Each CSM is notified to the {@link Listener} as soon as it is discovered, from its discovery
+ * thread. A CSM failing or not answering within the timeout is excluded: it is logged and reported
+ * by {@link #getExcludedCsms()} instead of failing the whole discovery. The thread of a CSM not
+ * answering is interrupted but may remain blocked in the HSM backend; it does not prevent the JVM
+ * from exiting.
+ *
+ * <p>The scan of the keys of a CSM is skipped when the {@link KeyInventorySnapshot} is still valid
+ * for it.
+ *
+ * @since 1.1.0
+ */
+final class CsmDiscovery {
+
+  private static final Logger logger = LoggerFactory.getLogger(CsmDiscovery.class);
+
+  private final long timeoutMillis;
+  private final KeyInventorySnapshot snapshot;
+  private final Map<String, String> excludedCsms = new LinkedHashMap<String, String>();
+
+  /**
+   * Creates a discovery.
+   *
+   * @param timeoutMillis The maximum time given to each CSM to answer.
+   * @param snapshot The key groups recorded by a previous discovery.
+   * @since 1.1.0
+   */
+  CsmDiscovery(long timeoutMillis, KeyInventorySnapshot snapshot) {
+    this.timeoutMillis = timeoutMillis;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Discovers the provided CSMs and waits for the end of the discovery.
+   *
+   * @param devices The CSMs.
+   * @param listener The listener notified of each discovered CSM.
+   * @return The CSMs successfully discovered, in the order of the provided list.
+   * @throws IllegalStateException If the calling thread is interrupted.
+   * @since 1.1.0
+   */
+  List<DiscoveredCsm> discover(List<HsmDevice> devices, Listener listener) {
+    if (devices.isEmpty()) {
+      return new ArrayList<DiscoveredCsm>(0);
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(devices.size(), new DiscoveryThreadFactory());
+    try {
+      List<DiscoveryTask> tasks = new ArrayList<DiscoveryTask>(devices.size());
+      List<Future<DiscoveredCsm>> futures = new ArrayList<Future<DiscoveredCsm>>(devices.size());
+      for (HsmDevice device : devices) {
+        DiscoveryTask task = new DiscoveryTask(device, snapshot, listener);
+        tasks.add(task);
+        futures.add(executor.submit(task));
+      }
+      // all the CSMs are discovered at the same time, they share the same deadline
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+      List<DiscoveredCsm> discoveredCsms = new ArrayList<DiscoveredCsm>(devices.size());
+      for (int i = 0; i < devices.size(); i++) {
+        Future<DiscoveredCsm> future = futures.get(i);
+        try {
+          discoveredCsms.add(future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+          if (tasks.get(i).settle()) {
+            future.cancel(true);
+            exclude(devices.get(i), "no answer within " + timeoutMillis + " ms");
+          } else {
+            // discovered and notified just at the deadline
+            discoveredCsms.add(tasks.get(i).discoveredCsm);
+          }
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof HsmException) {
+            HsmException hsmException = (HsmException) cause;
+            exclude(
+                devices.get(i),
+                String.format(
+                    "result=%02X (%s)", hsmException.getCode(), hsmException.getMessage()));
+          } else {
+            exclude(devices.get(i), String.valueOf(cause));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while discovering the CSMs.", e);
+        }
+      }
+      return discoveredCsms;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the CSMs excluded by the discovery.
+   *
+   * @return A not null unmodifiable map of the reason of the exclusion by CSM name.
+   * @since 1.1.0
+   */
+  Map<String, String> getExcludedCsms() {
+    return Collections.unmodifiableMap(excludedCsms);
+  }
+
+  private void exclude(HsmDevice device, String reason) {
+    logger.error("CSM {} excluded: {}", device, reason);
+    excludedCsms.put(device.toString(), reason);
+  }
+
+  /**
+   * Listener of the discovery.
+   *
+   * @since 1.1.0
+   */
+  interface Listener {
+
+    /**
+     * Called from the discovery thread of a CSM once it is discovered.
+     *
+     * @param discoveredCsm The discovered CSM.
+     * @since 1.1.0
+     */
+    void onDiscovered(DiscoveredCsm discoveredCsm);
+  }
+
+  /** Discovers a CSM and notifies it unless it was excluded in the meantime. */
+  private static final class DiscoveryTask implements Callable<DiscoveredCsm> {
+
+    private final HsmDevice device;
+    private final KeyInventorySnapshot snapshot;
+    private final Listener listener;
+
+    /** Set once the CSM is either notified or excluded. */
+    private final AtomicBoolean isSettled = new AtomicBoolean();
+
+    private volatile DiscoveredCsm discoveredCsm;
+
+    private DiscoveryTask(HsmDevice device, KeyInventorySnapshot snapshot, Listener listener) {
+      this.device = device;
+      this.snapshot = snapshot;
+      this.listener = listener;
+    }
+
+    @Override
+    public DiscoveredCsm call() throws HsmException {
+      HsmDeviceInfo info = device.getInfo();
+      int[] keyGroups = snapshot.getKeyGroups(info);
+      if (keyGroups == null) {
+        keyGroups = device.getKeyGroups();
+      } else if (logger.isDebugEnabled()) {
+        logger.debug("Key groups of CSM {} taken from the key inventory snapshot.", device);
+      }
+      DiscoveredCsm result = new DiscoveredCsm(device, info, keyGroups);
+      discoveredCsm = result;
+      if (settle()) {
+        listener.onDiscovered(result);
+      }
+      return result;
+    }
+
+    private boolean settle() {
+      return isSettled.compareAndSet(false, true);
+    }
+  }
+
+  /**
+   * Information and key groups of a CSM.
+   *
+   * @since 1.1.0
+   */
+  static final class DiscoveredCsm {
+
+    private final HsmDevice device;
+    private final HsmDeviceInfo info;
+    private final int[] keyGroups;
+
+    private DiscoveredCsm(HsmDevice device, HsmDeviceInfo info, int[] keyGroups) {
+      this.device = device;
+      this.info = info;
+      this.keyGroups = keyGroups;
+    }
+
+    /**
+     * Returns the CSM.
+     *
+     * @return A not null reference.
+     * @since 1.1.0
+     */
+    HsmDevice getDevice() {
+      return device;
+    }
+
+    /**
+     * Returns the information of the CSM.
+     *
+     * @return A not null reference.
+     * @since 1.1.0
+     */
+    HsmDeviceInfo getInfo() {
+      return info;
+    }
+
+    /**
+     * Returns the distinct key group references of the CSM.
+     *
+     * @return A not null array.
+     * @since 1.1.0
+     */
+    int[] getKeyGroups() {
+      return keyGroups;
+    }
+  }
+
+  /** Creates the daemon threads of the discovery. */
+  private static final class DiscoveryThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "LegacyHsmDiscovery-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import com.spirtech.csm.Csm;
+import com.spirtech.csm.CsmChannel;
+import com.spirtech.csm.CsmException;
+import com.spirtech.csm.CsmInfoRecord;
+import com.spirtech.csm.CsmKeyInfo;
+import com.spirtech.csm.CsmSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HsmBackend} relying on the Spirtech HSM library.
+ *
+ * <p>This class and its nested classes are the only ones referencing the {@code com.spirtech.csm}
+ * package, which is therefore not needed at runtime when another backend is used.
+ *
+ * @since 1.1.0
+ */
+final class CsmHsmBackend implements HsmBackend {
+
+  private static final Logger logger = LoggerFactory.getLogger(CsmHsmBackend.class);
+
+  private final CsmSystem csmSystem;
+
+  /**
+   * Creates a backend on the {@link CsmSystem} singleton.
+   *
+   * @since 1.1.0
+   */
+  CsmHsmBackend() {
+    csmSystem = CsmSystem.getInstance();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public void initialize() throws HsmException {
+    try {
+      csmSystem.Initialize();
+    } catch (CsmException e) {
+      throw toHsmException(e);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public List<HsmDevice> getDevices() throws HsmException {
+    List<Csm> csmList;
+    try {
+      csmList = csmSystem.getCsmList();
+    } catch (CsmException e) {
+      throw toHsmException(e);
+    }
+    List<HsmDevice> devices = new ArrayList<HsmDevice>(csmList.size());
+    for (Csm csm : csmList) {
+      devices.add(new Device(csm));
+    }
+    return devices;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public void free() throws HsmException {
+    try {
+      csmSystem.Free();
+    } catch (CsmException e) {
+      throw toHsmException(e);
+    }
+  }
+
+  /**
+   * Converts an exception of the HSM library.
+   *
+   * @param e The exception.
+   * @return A new instance.
+   */
+  private static HsmException toHsmException(CsmException e) {
+    return new HsmException(
+        e.getCode(), e.getCode() == CsmException.kHsmErrKeyGroup, e.getMessage(), e);
+  }
+
+  /** A {@link Csm} of the HSM library. */
+  private static final class Device implements HsmDevice {
+
+    private final Csm csm;
+
+    private Device(Csm csm) {
+      this.csm = csm;
+    }
+
+    @Override
+    public HsmDeviceInfo getInfo() throws HsmException {
+      CsmInfoRecord info;
+      try {
+        info = csm.getInfos();
+      } catch (CsmException e) {
+        throw toHsmException(e);
+      }
+      if (info == null) {
+        throw new IllegalStateException("The HSM library returned null while retrieving CsmInfo.");
+      }
+      return new HsmDeviceInfo(
+          (int) info.fSerialNumber,
+          (int) info.fCsmVersion,
+          (int) info.getStructureVersion(),
+          (int) info.getChannelsTotal());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Also prints the keys details in the log flow (debug level).
+     */
+    @Override
+    public int[] getKeyGroups() throws HsmException {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      PrintStream ps = new PrintStream(os);
+
+      if (logger.isDebugEnabled()) {
+        logger.debug("Reading the keys of the HSM {}", csm);
+      }
+      List<CsmKeyInfo> keys;
+      try {
+        keys = csm.getKeyList();
+      } catch (CsmException e) {
+        throw toHsmException(e);
+      }
+
+      if (logger.isDebugEnabled()) {
+        CsmKeyInfo.dumpHeader("", ps);
+        logger.debug(os.toString().replace("\n", ""));
+      }
+
+      Set<Integer> keyGroups = new LinkedHashSet<Integer>();
+      for (CsmKeyInfo key : keys) {
+        if (logger.isDebugEnabled()) {
+          os.reset();
+          key.dump("", ps);
+          logger.debug(os.toString().replace("\n", ""));
+        }
+        keyGroups.add(key.getKeyGroup());
+      }
+
+      if (logger.isDebugEnabled()) {
+        logger.debug("     Total: {} keys", keys.size());
+        logger.debug("     End of HSM key(s)");
+      }
+
+      int[] result = new int[keyGroups.size()];
+      int i = 0;
+      for (Integer keyGroup : keyGroups) {
+        result[i++] = keyGroup;
+      }
+      return result;
+    }
+
+    @Override
+    public HsmChannel openChannel(int keyGroupReference) throws HsmException {
+      CsmChannel csmChannel;
+      try {
+        csmChannel = csm.channelOpen(keyGroupReference);
+      } catch (CsmException e) {
+        throw toHsmException(e);
+      }
+      return csmChannel != null ? new Channel(csmChannel) : null;
+    }
+
+    @Override
+    public String toString() {
+      return csm.toString();
+    }
+  }
+
+  /** A {@link CsmChannel} of the HSM library. */
+  private static final class Channel implements HsmChannel {
+
+    private final CsmChannel csmChannel;
+
+    private Channel(CsmChannel csmChannel) {
+      this.csmChannel = csmChannel;
+    }
+
+    @Override
+    public int getId() {
+      return csmChannel.getId();
+    }
+
+    @Override
+    public byte[] exchangeApdu(byte[] apduIn) throws HsmException {
+      try {
+        return csmChannel.apduExchange(apduIn);
+      } catch (CsmException e) {
+        throw toHsmException(e);
+      }
+    }
+
+    @Override
+    public int exchangeApdu(byte[] apduIn, byte[] apduOut, int offset) throws HsmException {
+      byte[] response;
+      try {
+        response = csmChannel.apduExchange(apduIn);
+      } catch (CsmException e) {
+        throw toHsmException(e);
+      }
+      if (response == null) {
+        return 0;
+      }
+      System.arraycopy(response, 0, apduOut, offset, response.length);
+      return response.length;
+    }
+
+    @Override
+    public List<byte[]> exchangeApdus(List<byte[]> apdusIn, boolean stopOnUnsuccessfulStatusWord)
+        throws HsmException {
+      // the library has no batch exchange, the commands are sent one by one
+      List<byte[]> apdusOut = new ArrayList<byte[]>(apdusIn.size());
+      try {
+        for (byte[] apduIn : apdusIn) {
+          byte[] apduOut = csmChannel.apduExchange(apduIn);
+          apdusOut.add(apduOut == null ? null : apduOut.clone());
+          if (stopOnUnsuccessfulStatusWord && !StatusWord.isSuccessful(apduOut)) {
+            break;
+          }
+        }
+      } catch (CsmException e) {
+        throw toHsmException(e);
+      }
+      return apdusOut;
+    }
+
+    @Override
+    public void reset() {
+      // the library has no channel reset: the SAM state of the channel is reinitialized by the
+      // Select Diversifier and Digest Init commands opening each session of the next reader
+    }
+
+    @Override
+    public void close() throws HsmException {
+      try {
+        csmChannel.close();
+      } catch (CsmException e) {
+        throw toHsmException(e);
+      }
+    }
+
+    @Override
+    public String describe() {
+      ByteArrayOutputStream os = new ByteArrayOutputStream();
+      PrintStream ps = new PrintStream(os);
+      csmChannel.getInfo().dump("", ps);
+      return os.toString();
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Snapshot of the metrics of a CSM.
+ *
+ * @since 1.1.0
+ */
+final class CsmMetricsAdapter implements LegacyHsmPluginMetrics.CsmMetrics {
+
+  private final String name;
+  private final int channelsTotal;
+  private final int inUseChannels;
+  private final int idleChannels;
+  private final boolean isAvailable;
+  private final int concurrencyLimit;
+  private final LatencyHistogramAdapter apduExchangeLatencies = new LatencyHistogramAdapter();
+  private final long failedApduExchangeCount;
+
+  /**
+   * Takes a snapshot of the provided CSM.
+   *
+   * @param csmNode The CSM.
+   * @since 1.1.0
+   */
+  CsmMetricsAdapter(CsmNode csmNode) {
+    name = csmNode.toString();
+    channelsTotal = csmNode.getChannelsTotal();
+    inUseChannels = csmNode.getInUseChannels();
+    // channels being opened are counted as opened before being idle or allocated
+    idleChannels = Math.max(csmNode.getOpenChannels() - inUseChannels, 0);
+    isAvailable = csmNode.getCircuitBreaker().isClosed();
+    concurrencyLimit = csmNode.getConcurrencyLimiter().getLimit();
+    csmNode.getExchangeLatencies().addTo(apduExchangeLatencies);
+    failedApduExchangeCount = csmNode.getFailedExchangeCount();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getChannelsTotal() {
+    return channelsTotal;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getInUseChannels() {
+    return inUseChannels;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getIdleChannels() {
+    return idleChannels;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public boolean isAvailable() {
+    return isAvailable;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getConcurrencyLimit() {
+    return concurrencyLimit;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public LatencyHistogramAdapter getApduExchangeLatencies() {
+    return apduExchangeLatencies;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getFailedApduExchangeCount() {
+    return failedApduExchangeCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String toString() {
+    return "CsmMetrics{name='"
+        + name
+        + "', channelsTotal="
+        + channelsTotal
+        + ", inUseChannels="
+        + inUseChannels
+        + ", idleChannels="
+        + idleChannels
+        + ", isAvailable="
+        + isAvailable
+        + ", concurrencyLimit="
+        + concurrencyLimit
+        + ", apduExchangeLatencies="
+        + apduExchangeLatencies
+        + ", failedApduExchangeCount="
+        + failedApduExchangeCount
+        + '}';
+  }
+}
@@ -0,0 +1,312 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runtime state of a CSM shared by all the key groups it holds.
+ *
+ * <p>It tracks the channels opened on the CSM against its {@link HsmDeviceInfo#getChannelsTotal()}
+ * capacity, the channels currently allocated to readers and a moving average of the APDU exchange
+ * latency, in order to route the allocations. Its {@link CircuitBreaker} excludes it from the
+ * allocations while it is failing.
+ *
+ * @since 1.1.0
+ */
+final class CsmNode {
+
+  /** Weight of a new sample in the latency moving average, as a power of two divisor. */
+  private static final int LATENCY_SMOOTHING_SHIFT = 3;
+
+  private final HsmDevice device;
+  private final CsmDescriptor descriptor;
+  private final int serialNumber;
+  private final int channelsTotal;
+  private final CircuitBreaker circuitBreaker;
+  private final ApduDispatcher apduDispatcher;
+  private final ApduFlightRecorder flightRecorder;
+  private final ConcurrencyLimiter concurrencyLimiter;
+
+  /** Channels opened on this CSM, idle or allocated, for all key groups. */
+  private final AtomicInteger openChannels = new AtomicInteger();
+
+  /** Channels currently allocated to a reader. */
+  private final AtomicInteger inUseChannels = new AtomicInteger();
+
+  /** Exponential moving average of the APDU exchange latency (nanoseconds, 0 until measured). */
+  private final AtomicLong averageLatencyNanos = new AtomicLong();
+
+  /** Distribution of the APDU exchange latency. */
+  private final LatencyRecorder exchangeLatencies = new LatencyRecorder();
+
+  /** APDU exchanges failed with an HSM error. */
+  private final AtomicLong failedExchanges = new AtomicLong();
+
+  /**
+   * Creates the state of a CSM.
+   *
+   * @param device The CSM.
+   * @param descriptor The identity of the CSM.
+   * @param circuitBreaker The circuit breaker of the CSM.
+   * @param apduDispatcher The dispatcher of the asynchronous APDU exchanges of the CSM.
+   * @param flightRecorder The recorder of the last APDU exchanges of the CSM.
+   * @param concurrencyLimiter The limiter of the APDU exchanges in progress on the CSM.
+   * @since 1.1.0
+   */
+  CsmNode(
+      HsmDevice device,
+      CsmDescriptor descriptor,
+      CircuitBreaker circuitBreaker,
+      ApduDispatcher apduDispatcher,
+      ApduFlightRecorder flightRecorder,
+      ConcurrencyLimiter concurrencyLimiter) {
+    this.device = device;
+    this.descriptor = descriptor;
+    this.serialNumber = descriptor.getInfo().getSerialNumber();
+    this.channelsTotal = descriptor.getInfo().getChannelsTotal();
+    this.circuitBreaker = circuitBreaker;
+    this.apduDispatcher = apduDispatcher;
+    this.flightRecorder = flightRecorder;
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  /**
+   * Returns the CSM.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  HsmDevice getDevice() {
+    return device;
+  }
+
+  /**
+   * Returns the identity of the CSM, shared by the readers allocated on it.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  CsmDescriptor getDescriptor() {
+    return descriptor;
+  }
+
+  /**
+   * Returns the serial number of the CSM, identifying it across the refreshes of the key groups.
+   *
+   * @return An int.
+   * @since 1.1.0
+   */
+  int getSerialNumber() {
+    return serialNumber;
+  }
+
+  /**
+   * Returns the circuit breaker of the CSM.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * Returns the dispatcher of the asynchronous APDU exchanges of the CSM.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  ApduDispatcher getApduDispatcher() {
+    return apduDispatcher;
+  }
+
+  /**
+   * Returns the recorder of the last APDU exchanges of the CSM.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  ApduFlightRecorder getFlightRecorder() {
+    return flightRecorder;
+  }
+
+  /**
+   * Returns the limiter of the APDU exchanges in progress on the CSM.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  ConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  /**
+   * Returns the number of channels the CSM can serve efficiently: its channel capacity, lowered to
+   * the adaptive limit of its concurrent exchanges if enabled.
+   *
+   * @return 0 if unknown.
+   * @since 1.1.0
+   */
+  int getEffectiveCapacity() {
+    if (!concurrencyLimiter.isEnabled()) {
+      return channelsTotal;
+    }
+    int concurrencyLimit = concurrencyLimiter.getLimit();
+    return channelsTotal == 0 ? concurrencyLimit : Math.min(channelsTotal, concurrencyLimit);
+  }
+
+  /**
+   * Returns the maximum number of channels of the CSM.
+   *
+   * @return 0 if unknown.
+   * @since 1.1.0
+   */
+  int getChannelsTotal() {
+    return channelsTotal;
+  }
+
+  /**
+   * Returns the number of channels currently allocated to readers.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getInUseChannels() {
+    return inUseChannels.get();
+  }
+
+  /**
+   * Returns the number of channels opened on the CSM (idle and allocated).
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getOpenChannels() {
+    return openChannels.get();
+  }
+
+  /**
+   * Returns the moving average of the APDU exchange latency.
+   *
+   * @return 0 if no exchange has been measured yet.
+   * @since 1.1.0
+   */
+  long getAverageLatencyNanos() {
+    return averageLatencyNanos.get();
+  }
+
+  /**
+   * Returns the distribution of the APDU exchange latency.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  LatencyRecorder getExchangeLatencies() {
+    return exchangeLatencies;
+  }
+
+  /**
+   * Returns the number of APDU exchanges failed with an HSM error.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getFailedExchangeCount() {
+    return failedExchanges.get();
+  }
+
+  /**
+   * Reserves a channel slot before opening a channel.
+   *
+   * @return False if all the channels of the CSM are already opened.
+   * @since 1.1.0
+   */
+  boolean reserveChannel() {
+    while (true) {
+      int current = openChannels.get();
+      if (channelsTotal > 0 && current >= channelsTotal) {
+        return false;
+      }
+      if (openChannels.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Frees a channel slot when a channel is closed or could not be opened.
+   *
+   * @since 1.1.0
+   */
+  void releaseChannel() {
+    openChannels.decrementAndGet();
+  }
+
+  /**
+   * Records the allocation of a channel to a reader.
+   *
+   * @since 1.1.0
+   */
+  void onChannelAllocated() {
+    inUseChannels.incrementAndGet();
+  }
+
+  /**
+   * Records the release of a channel by a reader.
+   *
+   * @since 1.1.0
+   */
+  void onChannelReleased() {
+    inUseChannels.decrementAndGet();
+  }
+
+  /**
+   * Records the duration of a successful APDU exchange and updates the latency moving average.
+   *
+   * @param latencyNanos The duration of an APDU exchange.
+   * @since 1.1.0
+   */
+  void recordLatency(long latencyNanos) {
+    exchangeLatencies.record(latencyNanos);
+    while (true) {
+      long current = averageLatencyNanos.get();
+      long updated =
+          current == 0
+              ? latencyNanos
+              : current + ((latencyNanos - current) >> LATENCY_SMOOTHING_SHIFT);
+      if (averageLatencyNanos.compareAndSet(current, updated)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Records an APDU exchange failed with an HSM error.
+   *
+   * @since 1.1.0
+   */
+  void onExchangeFailed() {
+    failedExchanges.incrementAndGet();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String toString() {
+    return device.toString();
+  }
+}
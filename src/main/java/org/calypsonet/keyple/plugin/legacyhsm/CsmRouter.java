@@ -0,0 +1,144 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Orders the CSMs holding a key group by preference for the next allocation.
+ *
+ * @since 1.1.0
+ */
+abstract class CsmRouter {
+
+  /**
+   * Creates a router implementing the provided strategy.
+   *
+   * <p>Routers may hold state, a new instance must be created for each key group.
+   *
+   * @param routingStrategy The strategy.
+   * @return A new instance.
+   * @since 1.1.0
+   */
+  static CsmRouter create(LegacyHsmPlugin.RoutingStrategy routingStrategy) {
+    switch (routingStrategy) {
+      case ROUND_ROBIN:
+        return new RoundRobinRouter();
+      case LATENCY_WEIGHTED:
+        return new ScoringRouter(LATENCY_WEIGHTED_SCORER);
+      case LEAST_OUTSTANDING_CHANNELS:
+      default:
+        return new ScoringRouter(LEAST_OUTSTANDING_SCORER);
+    }
+  }
+
+  /**
+   * Returns the provided CSMs in the order in which they should be tried.
+   *
+   * @param csmNodes The CSMs holding the key group (not modified).
+   * @return A new array containing the same elements.
+   * @since 1.1.0
+   */
+  abstract CsmNode[] route(CsmNode[] csmNodes);
+
+  /**
+   * Prefers the CSM with the lowest ratio of allocated channels to its channel capacity, lowered to
+   * its adaptive concurrency limit if enabled.
+   */
+  private static final Scorer LEAST_OUTSTANDING_SCORER =
+      new Scorer() {
+        @Override
+        public long score(CsmNode csmNode) {
+          return ((long) csmNode.getInUseChannels() << 20)
+              / Math.max(csmNode.getEffectiveCapacity(), 1);
+        }
+      };
+
+  /**
+   * Prefers the CSM with the lowest expected response time, estimated as its average exchange
+   * latency multiplied by the number of allocated channels plus the new one. CSMs not yet measured
+   * come first so that they get sampled.
+   */
+  private static final Scorer LATENCY_WEIGHTED_SCORER =
+      new Scorer() {
+        @Override
+        public long score(CsmNode csmNode) {
+          return csmNode.getAverageLatencyNanos() * (csmNode.getInUseChannels() + 1);
+        }
+      };
+
+  /** Computes the load of a CSM, the lowest being the preferred. */
+  private interface Scorer {
+
+    long score(CsmNode csmNode);
+  }
+
+  /** Rotates the starting CSM at each allocation. */
+  private static final class RoundRobinRouter extends CsmRouter {
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    CsmNode[] route(CsmNode[] csmNodes) {
+      int length = csmNodes.length;
+      CsmNode[] routed = new CsmNode[length];
+      if (length == 0) {
+        // all the CSMs of the key group have been removed by a refresh
+        return routed;
+      }
+      int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % length;
+      for (int i = 0; i < length; i++) {
+        routed[i] = csmNodes[(start + i) % length];
+      }
+      return routed;
+    }
+  }
+
+  /**
+   * Sorts the CSMs by ascending score.
+   *
+   * <p>The scores are taken once before sorting since they change concurrently, and the sort is
+   * stable so that equally loaded CSMs keep their discovery order.
+   */
+  private static final class ScoringRouter extends CsmRouter {
+
+    private final Scorer scorer;
+
+    private ScoringRouter(Scorer scorer) {
+      this.scorer = scorer;
+    }
+
+    @Override
+    CsmNode[] route(CsmNode[] csmNodes) {
+      int length = csmNodes.length;
+      CsmNode[] routed = csmNodes.clone();
+      long[] scores = new long[length];
+      for (int i = 0; i < length; i++) {
+        scores[i] = scorer.score(routed[i]);
+      }
+      // insertion sort, the number of CSMs is small
+      for (int i = 1; i < length; i++) {
+        CsmNode csmNode = routed[i];
+        long score = scores[i];
+        int j = i - 1;
+        while (j >= 0 && scores[j] > score) {
+          routed[j + 1] = routed[j];
+          scores[j + 1] = scores[j];
+          j--;
+        }
+        routed[j + 1] = csmNode;
+        scores[j + 1] = score;
+      }
+      return routed;
+    }
+  }
+}
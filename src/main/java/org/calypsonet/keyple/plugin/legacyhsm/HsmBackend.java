@@ -0,0 +1,50 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.List;
+
+/**
+ * Access to the HSM system used by the plugin.
+ *
+ * <p>It isolates the plugin from the HSM library, so that the proprietary Spirtech library ({@link
+ * CsmHsmBackend}) can be replaced by an in-process simulation ({@link SimulatedHsmBackend}).
+ *
+ * @since 1.1.0
+ */
+interface HsmBackend {
+
+  /**
+   * Initializes the HSM system.
+   *
+   * @throws HsmException If the initialization fails.
+   * @since 1.1.0
+   */
+  void initialize() throws HsmException;
+
+  /**
+   * Returns the CSMs available in the HSM system.
+   *
+   * @return A not null list.
+   * @throws HsmException If the CSMs cannot be listed.
+   * @since 1.1.0
+   */
+  List<HsmDevice> getDevices() throws HsmException;
+
+  /**
+   * Frees the HSM system.
+   *
+   * @throws HsmException If the release fails.
+   * @since 1.1.0
+   */
+  void free() throws HsmException;
+}
@@ -0,0 +1,93 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.List;
+
+/**
+ * A channel opened on a CSM, behaving as a SAM.
+ *
+ * @since 1.1.0
+ */
+interface HsmChannel {
+
+  /**
+   * Returns the identifier of the channel in its CSM.
+   *
+   * @return An int.
+   * @since 1.1.0
+   */
+  int getId();
+
+  /**
+   * Transmits an APDU command to the SAM of the channel.
+   *
+   * @param apduIn The APDU command.
+   * @return The APDU response, null if none.
+   * @throws HsmException If the exchange fails.
+   * @since 1.1.0
+   */
+  byte[] exchangeApdu(byte[] apduIn) throws HsmException;
+
+  /**
+   * Transmits an APDU command to the SAM of the channel and copies the response into the provided
+   * buffer.
+   *
+   * @param apduIn The APDU command.
+   * @param apduOut The buffer receiving the APDU response.
+   * @param offset The position of the response in the buffer.
+   * @return The length of the response, 0 if none.
+   * @throws HsmException If the exchange fails.
+   * @throws IndexOutOfBoundsException If the response does not fit in the buffer, which is then
+   *     left unchanged.
+   * @since 1.1.0
+   */
+  int exchangeApdu(byte[] apduIn, byte[] apduOut, int offset) throws HsmException;
+
+  /**
+   * Transmits a sequence of APDU commands to the SAM of the channel, in a single submission when
+   * the backend allows it.
+   *
+   * @param apdusIn The APDU commands.
+   * @param stopOnUnsuccessfulStatusWord True to stop after the first response whose status word is
+   *     not {@link StatusWord#SUCCESS}.
+   * @return The responses of the exchanged commands, in new arrays.
+   * @throws HsmException If an exchange fails.
+   * @since 1.1.0
+   */
+  List<byte[]> exchangeApdus(List<byte[]> apdusIn, boolean stopOnUnsuccessfulStatusWord)
+      throws HsmException;
+
+  /**
+   * Resets the state left on the channel by its previous reader, before its reuse by another one.
+   *
+   * @throws HsmException If the reset fails, the channel having then to be closed.
+   * @since 1.1.0
+   */
+  void reset() throws HsmException;
+
+  /**
+   * Closes the channel.
+   *
+   * @throws HsmException If the closing fails.
+   * @since 1.1.0
+   */
+  void close() throws HsmException;
+
+  /**
+   * Returns a textual description of the channel state, for tracing purpose.
+   *
+   * @return A not null string.
+   * @since 1.1.0
+   */
+  String describe();
+}
@@ -0,0 +1,50 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * A CSM of the HSM system.
+ *
+ * @since 1.1.0
+ */
+interface HsmDevice {
+
+  /**
+   * Returns the information of the CSM.
+   *
+   * @return A not null reference.
+   * @throws HsmException If the information cannot be retrieved.
+   * @since 1.1.0
+   */
+  HsmDeviceInfo getInfo() throws HsmException;
+
+  /**
+   * Returns the distinct key group references of the keys stored in the CSM.
+   *
+   * <p>The key details may be logged by the implementation (debug level).
+   *
+   * @return A not null array.
+   * @throws HsmException If the keys cannot be listed.
+   * @since 1.1.0
+   */
+  int[] getKeyGroups() throws HsmException;
+
+  /**
+   * Opens a channel giving access to the keys of the provided key group.
+   *
+   * @param keyGroupReference The key group reference.
+   * @return Null if no channel is available.
+   * @throws HsmException If the opening fails.
+   * @since 1.1.0
+   */
+  HsmChannel openChannel(int keyGroupReference) throws HsmException;
+}
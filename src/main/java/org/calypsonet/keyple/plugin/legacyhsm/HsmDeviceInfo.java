@@ -0,0 +1,81 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Immutable information of a CSM.
+ *
+ * @since 1.1.0
+ */
+final class HsmDeviceInfo {
+
+  private final int serialNumber;
+  private final int csmVersion;
+  private final int structureVersion;
+  private final int channelsTotal;
+
+  /**
+   * Creates the information of a CSM.
+   *
+   * @param serialNumber The serial number.
+   * @param csmVersion The CSM version.
+   * @param structureVersion The key structure version.
+   * @param channelsTotal The maximum number of channels.
+   * @since 1.1.0
+   */
+  HsmDeviceInfo(int serialNumber, int csmVersion, int structureVersion, int channelsTotal) {
+    this.serialNumber = serialNumber;
+    this.csmVersion = csmVersion;
+    this.structureVersion = structureVersion;
+    this.channelsTotal = channelsTotal;
+  }
+
+  /**
+   * Returns the serial number.
+   *
+   * @return An int.
+   * @since 1.1.0
+   */
+  int getSerialNumber() {
+    return serialNumber;
+  }
+
+  /**
+   * Returns the CSM version.
+   *
+   * @return An int.
+   * @since 1.1.0
+   */
+  int getCsmVersion() {
+    return csmVersion;
+  }
+
+  /**
+   * Returns the key structure version.
+   *
+   * @return An int.
+   * @since 1.1.0
+   */
+  int getStructureVersion() {
+    return structureVersion;
+  }
+
+  /**
+   * Returns the maximum number of channels.
+   *
+   * @return 0 if unknown.
+   * @since 1.1.0
+   */
+  int getChannelsTotal() {
+    return channelsTotal;
+  }
+}
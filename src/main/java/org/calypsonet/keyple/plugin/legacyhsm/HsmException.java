@@ -0,0 +1,59 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Error reported by an {@link HsmBackend}.
+ *
+ * @since 1.1.0
+ */
+final class HsmException extends Exception {
+
+  private final int code;
+  private final boolean isKeyGroupError;
+
+  /**
+   * Creates an exception.
+   *
+   * @param code The result code of the HSM library.
+   * @param isKeyGroupError True if the error is related to the requested key group.
+   * @param message The message.
+   * @param cause The original error, may be null.
+   * @since 1.1.0
+   */
+  HsmException(int code, boolean isKeyGroupError, String message, Throwable cause) {
+    super(message, cause);
+    this.code = code;
+    this.isKeyGroupError = isKeyGroupError;
+  }
+
+  /**
+   * Returns the result code of the HSM library.
+   *
+   * @return An int.
+   * @since 1.1.0
+   */
+  int getCode() {
+    return code;
+  }
+
+  /**
+   * Indicates if the error is related to the requested key group (e.g. not available in the CSM)
+   * rather than to the CSM itself.
+   *
+   * @return True if it is a key group error.
+   * @since 1.1.0
+   */
+  boolean isKeyGroupError() {
+    return isKeyGroupError;
+  }
+}
@@ -0,0 +1,139 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable index of the channel pools by key group reference.
+ *
+ * <p>The key group references are kept in a sorted {@code int} array searched by dichotomy, so that
+ * a lookup neither locks nor allocates. The reader group references returned to Keyple are computed
+ * once. A changing index is replaced as a whole by a new instance.
+ *
+ * @since 1.1.0
+ */
+final class KeyGroupIndex {
+
+  /** Index without any key group. */
+  static final KeyGroupIndex EMPTY = new KeyGroupIndex(new TreeMap<Integer, ChannelPool>());
+
+  private final int[] keyGroupReferences;
+  private final ChannelPool[] channelPools;
+  private final List<ChannelPool> channelPoolList;
+  private final SortedSet<String> readerGroupReferences;
+
+  /**
+   * Creates an index of the provided pools.
+   *
+   * @param channelPools The pools by key group reference.
+   * @since 1.1.0
+   */
+  KeyGroupIndex(SortedMap<Integer, ChannelPool> channelPools) {
+    int size = channelPools.size();
+    this.keyGroupReferences = new int[size];
+    this.channelPools = new ChannelPool[size];
+    SortedSet<String> references = new TreeSet<String>();
+    int i = 0;
+    for (Map.Entry<Integer, ChannelPool> entry : channelPools.entrySet()) {
+      keyGroupReferences[i] = entry.getKey();
+      this.channelPools[i] = entry.getValue();
+      references.add(Integer.toString(entry.getKey()));
+      i++;
+    }
+    this.channelPoolList =
+        Collections.unmodifiableList(new ArrayList<ChannelPool>(Arrays.asList(this.channelPools)));
+    this.readerGroupReferences = Collections.unmodifiableSortedSet(references);
+  }
+
+  /**
+   * Creates a new index containing the pools of this index and the provided ones.
+   *
+   * @param addedChannelPools The pools to add, replacing the pools of the same key groups.
+   * @return A new instance, or this instance if there is no pool to add.
+   * @since 1.1.0
+   */
+  KeyGroupIndex with(Collection<ChannelPool> addedChannelPools) {
+    if (addedChannelPools.isEmpty()) {
+      return this;
+    }
+    SortedMap<Integer, ChannelPool> channelPoolMap = new TreeMap<Integer, ChannelPool>();
+    for (int i = 0; i < keyGroupReferences.length; i++) {
+      channelPoolMap.put(keyGroupReferences[i], channelPools[i]);
+    }
+    for (ChannelPool channelPool : addedChannelPools) {
+      channelPoolMap.put(channelPool.getKeyGroupReference(), channelPool);
+    }
+    return new KeyGroupIndex(channelPoolMap);
+  }
+
+  /**
+   * Creates a new index containing the pools of this index except the provided ones.
+   *
+   * @param removedChannelPools The pools to remove.
+   * @return A new instance, or this instance if there is no pool to remove.
+   * @since 1.1.0
+   */
+  KeyGroupIndex without(Collection<ChannelPool> removedChannelPools) {
+    if (removedChannelPools.isEmpty()) {
+      return this;
+    }
+    SortedMap<Integer, ChannelPool> channelPoolMap = new TreeMap<Integer, ChannelPool>();
+    for (int i = 0; i < keyGroupReferences.length; i++) {
+      if (!removedChannelPools.contains(channelPools[i])) {
+        channelPoolMap.put(keyGroupReferences[i], channelPools[i]);
+      }
+    }
+    return new KeyGroupIndex(channelPoolMap);
+  }
+
+  /**
+   * Returns the pool of the provided key group.
+   *
+   * @param keyGroupReference The key group reference.
+   * @return Null if the key group is not held by any CSM.
+   * @since 1.1.0
+   */
+  ChannelPool get(int keyGroupReference) {
+    int index = Arrays.binarySearch(keyGroupReferences, keyGroupReference);
+    return index >= 0 ? channelPools[index] : null;
+  }
+
+  /**
+   * Returns all the pools, in ascending order of key group reference.
+   *
+   * @return A not null unmodifiable list.
+   * @since 1.1.0
+   */
+  List<ChannelPool> getChannelPools() {
+    return channelPoolList;
+  }
+
+  /**
+   * Returns the key group references as reader group references.
+   *
+   * @return A not null unmodifiable set.
+   * @since 1.1.0
+   */
+  SortedSet<String> getReaderGroupReferences() {
+    return readerGroupReferences;
+  }
+}
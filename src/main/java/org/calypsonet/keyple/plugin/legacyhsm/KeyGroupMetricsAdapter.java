@@ -0,0 +1,212 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of the metrics of a key group.
+ *
+ * @since 1.1.0
+ */
+final class KeyGroupMetricsAdapter implements LegacyHsmPluginMetrics.KeyGroupMetrics {
+
+  private final int keyGroupReference;
+  private final int inUseChannels;
+  private final int idleChannels;
+  private final int parkedChannels;
+  private final int sharedReaders;
+  private final int waitingAllocations;
+  private final long allocationCount;
+  private final long releaseCount;
+  private final long affinityReuseCount;
+  private final long unavailableAllocationCount;
+  private final Map<Integer, Long> failedAllocationCounts;
+  private final LatencyHistogramAdapter allocationWaitTimes = new LatencyHistogramAdapter();
+
+  /**
+   * Takes a snapshot of the key group served by the provided pool.
+   *
+   * @param channelPool The pool of the key group.
+   * @since 1.1.0
+   */
+  KeyGroupMetricsAdapter(ChannelPool channelPool) {
+    KeyGroupStatistics statistics = channelPool.getStatistics();
+    keyGroupReference = channelPool.getKeyGroupReference();
+    idleChannels = channelPool.getIdleCount();
+    parkedChannels = channelPool.getParkedCount();
+    sharedReaders = channelPool.getSharedReaderCount();
+    inUseChannels = Math.max(channelPool.getSize() - idleChannels - parkedChannels, 0);
+    waitingAllocations = channelPool.getWaiterCount();
+    allocationCount = statistics.getAllocationCount();
+    releaseCount = statistics.getReleaseCount();
+    affinityReuseCount = statistics.getAffinityReuseCount();
+    unavailableAllocationCount = statistics.getUnavailableAllocationCount();
+    failedAllocationCounts = Collections.unmodifiableMap(statistics.getFailedAllocationCounts());
+    statistics.getAllocationWaitTimes().addTo(allocationWaitTimes);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getKeyGroupReference() {
+    return keyGroupReference;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getInUseChannels() {
+    return inUseChannels;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getIdleChannels() {
+    return idleChannels;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getParkedChannels() {
+    return parkedChannels;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getSharedReaders() {
+    return sharedReaders;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getWaitingAllocations() {
+    return waitingAllocations;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getAllocationCount() {
+    return allocationCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getReleaseCount() {
+    return releaseCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getAffinityReuseCount() {
+    return affinityReuseCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getUnavailableAllocationCount() {
+    return unavailableAllocationCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public Map<Integer, Long> getFailedAllocationCounts() {
+    return failedAllocationCounts;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public LatencyHistogramAdapter getAllocationWaitTimes() {
+    return allocationWaitTimes;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String toString() {
+    return "KeyGroupMetrics{keyGroupReference="
+        + keyGroupReference
+        + ", inUseChannels="
+        + inUseChannels
+        + ", idleChannels="
+        + idleChannels
+        + ", parkedChannels="
+        + parkedChannels
+        + ", sharedReaders="
+        + sharedReaders
+        + ", waitingAllocations="
+        + waitingAllocations
+        + ", allocationCount="
+        + allocationCount
+        + ", releaseCount="
+        + releaseCount
+        + ", affinityReuseCount="
+        + affinityReuseCount
+        + ", unavailableAllocationCount="
+        + unavailableAllocationCount
+        + ", failedAllocationCounts="
+        + failedAllocationCounts
+        + ", allocationWaitTimes="
+        + allocationWaitTimes
+        + '}';
+  }
+}
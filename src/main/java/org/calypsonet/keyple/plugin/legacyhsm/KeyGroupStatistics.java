@@ -0,0 +1,192 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocation counters and wait times of a key group.
+ *
+ * @since 1.1.0
+ */
+final class KeyGroupStatistics {
+
+  /** Statistics of the plugin, also updated so that they outlive the key group, null if none. */
+  private final KeyGroupStatistics pluginStatistics;
+
+  private final LatencyRecorder allocationWaitTimes = new LatencyRecorder();
+  private final AtomicLong allocations = new AtomicLong();
+  private final AtomicLong releases = new AtomicLong();
+  private final AtomicLong affinityReuses = new AtomicLong();
+  private final AtomicLong unavailableAllocations = new AtomicLong();
+  private final ConcurrentMap<Integer, AtomicLong> failedAllocations =
+      new ConcurrentHashMap<Integer, AtomicLong>();
+
+  /**
+   * Creates the statistics of the plugin, summing the ones of all its key groups.
+   *
+   * @since 1.1.0
+   */
+  KeyGroupStatistics() {
+    this(null);
+  }
+
+  /**
+   * Creates the statistics of a key group.
+   *
+   * @param pluginStatistics The statistics of the plugin, updated along with the ones of the key
+   *     group, null if none.
+   * @since 1.1.0
+   */
+  KeyGroupStatistics(KeyGroupStatistics pluginStatistics) {
+    this.pluginStatistics = pluginStatistics;
+  }
+
+  /**
+   * Records a successful allocation.
+   *
+   * @param waitNanos The time spent to obtain the channel.
+   * @since 1.1.0
+   */
+  void onAllocated(long waitNanos) {
+    allocations.incrementAndGet();
+    allocationWaitTimes.record(waitNanos);
+    if (pluginStatistics != null) {
+      pluginStatistics.onAllocated(waitNanos);
+    }
+  }
+
+  /**
+   * Records a successful allocation served by the channel parked for its caller.
+   *
+   * @since 1.1.0
+   */
+  void onAffinityReused() {
+    affinityReuses.incrementAndGet();
+    if (pluginStatistics != null) {
+      pluginStatistics.onAffinityReused();
+    }
+  }
+
+  /**
+   * Records an allocation failed because no channel was available within the timeout.
+   *
+   * @since 1.1.0
+   */
+  void onUnavailable() {
+    unavailableAllocations.incrementAndGet();
+    if (pluginStatistics != null) {
+      pluginStatistics.onUnavailable();
+    }
+  }
+
+  /**
+   * Records an allocation failed because of an HSM error.
+   *
+   * @param code The HSM result code.
+   * @since 1.1.0
+   */
+  void onFailed(int code) {
+    AtomicLong counter = failedAllocations.get(code);
+    if (counter == null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = failedAllocations.putIfAbsent(code, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.incrementAndGet();
+    if (pluginStatistics != null) {
+      pluginStatistics.onFailed(code);
+    }
+  }
+
+  /**
+   * Records the release of a channel.
+   *
+   * @since 1.1.0
+   */
+  void onReleased() {
+    releases.incrementAndGet();
+    if (pluginStatistics != null) {
+      pluginStatistics.onReleased();
+    }
+  }
+
+  /**
+   * Returns the allocation wait time recorder.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  LatencyRecorder getAllocationWaitTimes() {
+    return allocationWaitTimes;
+  }
+
+  /**
+   * Returns the number of successful allocations.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getAllocationCount() {
+    return allocations.get();
+  }
+
+  /**
+   * Returns the number of allocations served by the channel parked for their caller.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getAffinityReuseCount() {
+    return affinityReuses.get();
+  }
+
+  /**
+   * Returns the number of released channels.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getReleaseCount() {
+    return releases.get();
+  }
+
+  /**
+   * Returns the number of allocations failed because no channel was available.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getUnavailableAllocationCount() {
+    return unavailableAllocations.get();
+  }
+
+  /**
+   * Returns a copy of the numbers of allocations failed because of an HSM error.
+   *
+   * @return A not null map of the counts by HSM result code.
+   * @since 1.1.0
+   */
+  Map<Integer, Long> getFailedAllocationCounts() {
+    Map<Integer, Long> counts = new HashMap<Integer, Long>();
+    for (Map.Entry<Integer, AtomicLong> entry : failedAllocations.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return counts;
+  }
+}
@@ -0,0 +1,235 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable snapshot of the key groups of each CSM, persisted on disk to skip the scan of the keys
+ * at startup.
+ *
+ * <p>The key groups of a CSM are taken from the snapshot only if the serial number, the CSM version
+ * and the key structure version read from the CSM match the recorded ones; otherwise its keys are
+ * scanned and the snapshot is updated.
+ *
+ * <p>File layout (big-endian): magic {@code "LHKS"}, format version, number of CSMs, then for each
+ * CSM its serial number, CSM version, structure version, number of key groups and the sorted key
+ * group references; a CRC-32 of all the previous bytes ends the file. A missing, corrupted or
+ * unsupported file is ignored.
+ *
+ * @since 1.1.0
+ */
+final class KeyInventorySnapshot {
+
+  private static final Logger logger = LoggerFactory.getLogger(KeyInventorySnapshot.class);
+
+  private static final int MAGIC = 0x4C484B53; // "LHKS"
+  private static final int FORMAT_VERSION = 1;
+
+  /** Snapshot without any CSM. */
+  static final KeyInventorySnapshot EMPTY =
+      new KeyInventorySnapshot(new TreeMap<Integer, CsmEntry>());
+
+  /** Recorded CSMs by serial number. */
+  private final SortedMap<Integer, CsmEntry> csmEntries;
+
+  private KeyInventorySnapshot(SortedMap<Integer, CsmEntry> csmEntries) {
+    this.csmEntries = csmEntries;
+  }
+
+  /**
+   * Reads a snapshot from the provided file.
+   *
+   * @param file The file.
+   * @return {@link #EMPTY} if the file does not exist or cannot be read.
+   * @since 1.1.0
+   */
+  static KeyInventorySnapshot read(File file) {
+    if (!file.exists()) {
+      return EMPTY;
+    }
+    CRC32 crc = new CRC32();
+    DataInputStream input = null;
+    try {
+      input =
+          new DataInputStream(
+              new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc));
+      if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+        logger.warn("Key inventory snapshot {} ignored: unsupported format.", file);
+        return EMPTY;
+      }
+      // each count is bounded by the file length to reject a corrupted file early
+      long maxCount = file.length() / 4;
+      int csmCount = readCount(input, maxCount);
+      SortedMap<Integer, CsmEntry> csmEntries = new TreeMap<Integer, CsmEntry>();
+      for (int i = 0; i < csmCount; i++) {
+        int serialNumber = input.readInt();
+        int csmVersion = input.readInt();
+        int structureVersion = input.readInt();
+        int[] keyGroups = new int[readCount(input, maxCount)];
+        for (int j = 0; j < keyGroups.length; j++) {
+          keyGroups[j] = input.readInt();
+        }
+        csmEntries.put(serialNumber, new CsmEntry(csmVersion, structureVersion, keyGroups));
+      }
+      int expectedCrc = (int) crc.getValue();
+      if (input.readInt() != expectedCrc) {
+        logger.warn("Key inventory snapshot {} ignored: checksum mismatch.", file);
+        return EMPTY;
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Key inventory snapshot {} read with {} CSM(s).", file, csmEntries.size());
+      }
+      return new KeyInventorySnapshot(csmEntries);
+    } catch (IOException e) {
+      logger.warn("Key inventory snapshot {} ignored: {}", file, e.getMessage());
+      return EMPTY;
+    } finally {
+      closeQuietly(input);
+    }
+  }
+
+  /**
+   * Returns the recorded key groups of a CSM if the snapshot is still valid for it.
+   *
+   * @param info The information read from the CSM.
+   * @return Null if the CSM is not recorded or if its versions changed.
+   * @since 1.1.0
+   */
+  int[] getKeyGroups(HsmDeviceInfo info) {
+    CsmEntry csmEntry = csmEntries.get(info.getSerialNumber());
+    if (csmEntry == null
+        || csmEntry.csmVersion != info.getCsmVersion()
+        || csmEntry.structureVersion != info.getStructureVersion()) {
+      return null;
+    }
+    return csmEntry.keyGroups.clone();
+  }
+
+  /**
+   * Returns a snapshot updated with the provided CSMs, the other recorded CSMs being kept.
+   *
+   * @param discoveredCsms The discovered CSMs.
+   * @return This instance if nothing changed.
+   * @since 1.1.0
+   */
+  KeyInventorySnapshot update(List<CsmDiscovery.DiscoveredCsm> discoveredCsms) {
+    SortedMap<Integer, CsmEntry> updatedEntries = null;
+    for (CsmDiscovery.DiscoveredCsm discoveredCsm : discoveredCsms) {
+      HsmDeviceInfo info = discoveredCsm.getInfo();
+      int[] keyGroups = discoveredCsm.getKeyGroups().clone();
+      Arrays.sort(keyGroups);
+      int[] recordedKeyGroups = getKeyGroups(info);
+      if (recordedKeyGroups != null && Arrays.equals(recordedKeyGroups, keyGroups)) {
+        continue;
+      }
+      if (updatedEntries == null) {
+        updatedEntries = new TreeMap<Integer, CsmEntry>(csmEntries);
+      }
+      updatedEntries.put(
+          info.getSerialNumber(),
+          new CsmEntry(info.getCsmVersion(), info.getStructureVersion(), keyGroups));
+    }
+    return updatedEntries == null ? this : new KeyInventorySnapshot(updatedEntries);
+  }
+
+  /**
+   * Writes the snapshot to the provided file.
+   *
+   * <p>The snapshot is first written to a temporary file renamed afterwards, so that a reader never
+   * sees a partially written file.
+   *
+   * @param file The file.
+   * @throws IOException If the file cannot be written.
+   * @since 1.1.0
+   */
+  void write(File file) throws IOException {
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    CRC32 crc = new CRC32();
+    DataOutputStream output =
+        new DataOutputStream(
+            new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)), crc));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(FORMAT_VERSION);
+      output.writeInt(csmEntries.size());
+      for (Map.Entry<Integer, CsmEntry> entry : csmEntries.entrySet()) {
+        CsmEntry csmEntry = entry.getValue();
+        output.writeInt(entry.getKey());
+        output.writeInt(csmEntry.csmVersion);
+        output.writeInt(csmEntry.structureVersion);
+        output.writeInt(csmEntry.keyGroups.length);
+        for (int keyGroup : csmEntry.keyGroups) {
+          output.writeInt(keyGroup);
+        }
+      }
+      output.writeInt((int) crc.getValue());
+    } finally {
+      output.close();
+    }
+    // File.renameTo does not replace an existing file on every platform
+    if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file))) {
+      temporaryFile.delete();
+      throw new IOException("Unable to rename " + temporaryFile + " to " + file);
+    }
+  }
+
+  private static int readCount(DataInputStream input, long maxCount) throws IOException {
+    int count = input.readInt();
+    if (count < 0 || count > maxCount) {
+      throw new IOException("corrupted content");
+    }
+    return count;
+  }
+
+  private static void closeQuietly(DataInputStream input) {
+    if (input != null) {
+      try {
+        input.close();
+      } catch (IOException e) {
+        // nothing to do
+      }
+    }
+  }
+
+  /** Recorded versions and key groups of a CSM. */
+  private static final class CsmEntry {
+
+    private final int csmVersion;
+    private final int structureVersion;
+    private final int[] keyGroups;
+
+    private CsmEntry(int csmVersion, int structureVersion, int[] keyGroups) {
+      this.csmVersion = csmVersion;
+      this.structureVersion = structureVersion;
+      this.keyGroups = keyGroups;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Snapshot of one or several {@link LatencyRecorder}.
+ *
+ * @since 1.1.0
+ */
+final class LatencyHistogramAdapter implements LegacyHsmPluginMetrics.LatencyHistogram {
+
+  private final long[] counts = new long[LatencyRecorder.BUCKET_COUNT];
+  private long count;
+  private long totalNanos;
+  private long maxNanos;
+
+  /**
+   * Adds recorded values to the snapshot.
+   *
+   * @param bucketCounts The counts of each sub-bucket.
+   * @param totalNanos The sum of the recorded values.
+   * @param maxNanos The highest recorded value.
+   * @since 1.1.0
+   */
+  void add(long[] bucketCounts, long totalNanos, long maxNanos) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += bucketCounts[i];
+      count += bucketCounts[i];
+    }
+    this.totalNanos += totalNanos;
+    this.maxNanos = Math.max(this.maxNanos, maxNanos);
+  }
+
+  /**
+   * Adds the values of another snapshot to the snapshot.
+   *
+   * @param histogram The snapshot to add.
+   * @since 1.1.0
+   */
+  void add(LatencyHistogramAdapter histogram) {
+    add(histogram.counts, histogram.totalNanos, histogram.maxNanos);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getMeanNanos() {
+    return count == 0 ? 0 : totalNanos / count;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getValueAtPercentileNanos(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Bad percentile: " + percentile);
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(LatencyRecorder.highestValueOf(i), maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String toString() {
+    return "LatencyHistogram{count="
+        + count
+        + ", meanNanos="
+        + getMeanNanos()
+        + ", p50Nanos="
+        + getValueAtPercentileNanos(50)
+        + ", p99Nanos="
+        + getValueAtPercentileNanos(99)
+        + ", maxNanos="
+        + maxNanos
+        + '}';
+  }
+}
@@ -0,0 +1,104 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free recorder of durations into a log-linear histogram.
+ *
+ * <p>As in HdrHistogram, the values are counted in buckets covering a power of two range, each one
+ * split into {@link #SUB_BUCKET_COUNT} linear sub-buckets: the relative error of a recorded value
+ * is below 1/{@value #SUB_BUCKET_COUNT}. Values from 0 to about 4.8 hours (in nanoseconds) are
+ * covered, larger values are counted in the last sub-bucket.
+ *
+ * <p>Recording costs a few atomic increments and never blocks, snapshots may therefore be taken
+ * while values are recorded.
+ *
+ * @since 1.1.0
+ */
+final class LatencyRecorder {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int VALUE_BITS = 44;
+  private static final long MAX_VALUE = (1L << VALUE_BITS) - 1;
+
+  /** Number of sub-buckets needed to cover the values up to {@link #MAX_VALUE}. */
+  static final int BUCKET_COUNT = (VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos The duration in nanoseconds (negative values are recorded as 0).
+   * @since 1.1.0
+   */
+  void record(long nanos) {
+    long value = nanos < 0 ? 0 : Math.min(nanos, MAX_VALUE);
+    counts.incrementAndGet(indexOf(value));
+    totalNanos.addAndGet(value);
+    long max = maxNanos.get();
+    while (value > max && !maxNanos.compareAndSet(max, value)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Adds the values recorded so far to the provided histogram.
+   *
+   * @param histogram The histogram to complete.
+   * @since 1.1.0
+   */
+  void addTo(LatencyHistogramAdapter histogram) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+    }
+    histogram.add(snapshot, totalNanos.get(), maxNanos.get());
+  }
+
+  /**
+   * Returns the index of the sub-bucket counting the provided value.
+   *
+   * @param value A value between 0 and {@link #MAX_VALUE}.
+   * @return An index lower than {@link #BUCKET_COUNT}.
+   * @since 1.1.0
+   */
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+  }
+
+  /**
+   * Returns the highest value counted by the provided sub-bucket.
+   *
+   * @param index The sub-bucket index.
+   * @return A value in nanoseconds.
+   * @since 1.1.0
+   */
+  static long highestValueOf(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long lowest = (long) (SUB_BUCKET_COUNT + (index & (SUB_BUCKET_COUNT - 1))) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
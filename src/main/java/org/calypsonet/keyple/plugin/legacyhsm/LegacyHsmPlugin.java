@@ -11,6 +11,7 @@
  ************************************************************************************** */
 package org.calypsonet.keyple.plugin.legacyhsm;
 
+import java.util.Map;
 import org.eclipse.keyple.core.common.KeyplePluginExtension;
 
 /**
@@ -18,4 +19,92 @@
  *
  * @since 1.0.0
  */
-public interface LegacyHsmPlugin extends KeyplePluginExtension {}
+public interface LegacyHsmPlugin extends KeyplePluginExtension {
+
+  /**
+   * Returns the CSMs excluded at the plugin startup, or at the last {@link #refreshKeyGroups()},
+   * because they failed or did not answer within the discovery timeout.
+   *
+   * <p>The key groups of an excluded CSM are only served by the other CSMs holding them.
+   *
+   * @return A not null unmodifiable map of the reason of the exclusion by CSM name, empty if all
+   *     the CSMs are used.
+   * @since 1.1.0
+   */
+  Map<String, String> getExcludedCsms();
+
+  /**
+   * Rescans the CSMs and their key groups and applies the changes without interrupting the
+   * allocated readers.
+   *
+   * <p>The new CSMs and key groups become available to the next allocations. A key group removed
+   * from a CSM, or a CSM no longer listed by the HSM, is no longer used for the next allocations;
+   * the readers already allocated on it keep working until they are released. A CSM failing or not
+   * answering during the refresh is kept unchanged and reported by {@link #getExcludedCsms()}.
+   *
+   * <p>The refresh can also be performed periodically, see {@link
+   * LegacyHsmPluginFactoryBuilder.Builder#useKeyGroupRefresh(int)}.
+   *
+   * @throws IllegalStateException If the HSM inventory is in progress or failed, or if the list of
+   *     the CSMs cannot be read.
+   * @since 1.1.0
+   */
+  void refreshKeyGroups();
+
+  /**
+   * Returns a snapshot of the activity of the plugin: allocation and APDU exchange counters and
+   * latencies, channels usage by CSM and by key group.
+   *
+   * <p>The metrics are always collected, taking a snapshot does not block the allocations.
+   *
+   * @return A new instance.
+   * @since 1.1.0
+   */
+  LegacyHsmPluginMetrics getMetrics();
+
+  /**
+   * Formats the last APDU exchanges recorded for each CSM, oldest first.
+   *
+   * <p>The exchanges are always recorded in a compact binary form, without formatting cost (see
+   * {@link LegacyHsmPluginFactoryBuilder.Builder#useApduFlightRecorder(int)}). Each line gives the
+   * time, the sequence number and channel of the exchange, the command header (CLA INS P1 P2), the
+   * status word or the HSM error code, and the latency. The last exchanges of a channel are also
+   * logged at the warning level when an HSM error occurs on it.
+   *
+   * @return A not null string, one line per exchange, preceded by a line naming each CSM.
+   * @since 1.1.0
+   */
+  String dumpApduFlightRecorder();
+
+  /**
+   * Strategies for choosing the CSM on which a reader is allocated, among those holding the
+   * requested key group.
+   *
+   * @since 1.1.0
+   */
+  enum RoutingStrategy {
+
+    /**
+     * The CSMs are used in turn.
+     *
+     * @since 1.1.0
+     */
+    ROUND_ROBIN,
+
+    /**
+     * The CSM having the lowest number of allocated channels relative to its total number of
+     * channels is used first.
+     *
+     * @since 1.1.0
+     */
+    LEAST_OUTSTANDING_CHANNELS,
+
+    /**
+     * The CSM having the lowest average APDU exchange latency, weighted by its number of allocated
+     * channels, is used first.
+     *
+     * @since 1.1.0
+     */
+    LATENCY_WEIGHTED
+  }
+}
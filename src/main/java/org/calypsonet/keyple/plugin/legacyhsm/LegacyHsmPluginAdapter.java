@@ -11,21 +11,22 @@
  ************************************************************************************** */
 package org.calypsonet.keyple.plugin.legacyhsm;
 
-import com.spirtech.csm.Csm;
-import com.spirtech.csm.CsmChannel;
-import com.spirtech.csm.CsmException;
-import com.spirtech.csm.CsmInfoRecord;
-import com.spirtech.csm.CsmKeyInfo;
-import com.spirtech.csm.CsmSystem;
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.keyple.core.plugin.PluginIOException;
 import org.eclipse.keyple.core.plugin.ReaderIOException;
 import org.eclipse.keyple.core.plugin.spi.PoolPluginSpi;
@@ -44,15 +45,59 @@ final class LegacyHsmPluginAdapter implements LegacyHsmPlugin, PoolPluginSpi {
 
   private static final Logger logger = LoggerFactory.getLogger(LegacyHsmPluginAdapter.class);
 
-  private final CsmSystem csmSystem;
-  private final Map<Integer, List<Csm>> keyGroupToCsmsMap =
-      Collections.synchronizedMap(new HashMap<Integer, List<Csm>>());
+  /** Period of the refill and eviction of the pooled channels. */
+  private static final long POOL_MAINTENANCE_PERIOD_MILLIS = 1000;
+
+  /** Maximum number of threads closing the channel pools in parallel at unregistration. */
+  private static final int MAX_CLOSING_THREADS = 8;
+
+  /** Maximum time waited for the closing of the channels at unregistration. */
+  private static final long CLOSING_TIMEOUT_MILLIS = 10000;
+
+  private final HsmBackend backend;
+  private final List<CsmNode> csmNodes = new CopyOnWriteArrayList<CsmNode>();
+  private final PluginSettings settings;
+
+  /** Reason of the exclusion of the CSMs failing at discovery, by CSM name. */
+  private volatile Map<String, String> excludedCsms = Collections.emptyMap();
+
+  /** Channel pools by key group reference, replaced as a whole when the key groups change. */
+  private volatile KeyGroupIndex keyGroupIndex = KeyGroupIndex.EMPTY;
+
+  /** Allocation statistics of all the key groups, including the removed ones. */
+  private final KeyGroupStatistics pluginStatistics = new KeyGroupStatistics();
+
+  /** Guards the changes of the key group index and of the inventory state. */
+  private final Object inventoryLock = new Object();
+
+  private volatile boolean isInventoryComplete;
+
+  /** Cause of the failure of the inventory, null if none. */
+  private volatile String inventoryFailure;
+
+  private volatile boolean isUnregistered;
+
+  /** Set while the plugin is a user of the HSM backend, between its initialization and its free. */
+  private final AtomicBoolean isBackendHeld = new AtomicBoolean();
+
+  /** Refills and evicts the pooled channels in the background, null if the pooling is disabled. */
+  private final ScheduledExecutorService poolMaintainer;
+
+  /** Refreshes the key groups periodically, null if the periodic refresh is disabled. */
+  private final ScheduledExecutorService keyGroupRefresher;
+
+  /** Serializes the refreshes of the key groups. */
+  private final Object refreshLock = new Object();
+
+  /** Captures the sessions and APDU exchanges of the readers, null if the capture is disabled. */
+  private final WorkloadRecorder workloadRecorder;
 
   /**
    * Do the initialization of the plugin.
    *
-   * <p>It initializes the {@link CsmSystem} and get all necessary information from the available
-   * CSMs.
+   * <p>It initializes the HSM backend and get all necessary information from the available CSMs.
+   * The CSMs are discovered in parallel: a CSM failing or not answering within the discovery
+   * timeout is excluded and reported by {@link #getExcludedCsms()}.
    *
    * <p>It records the mapping between available key group references and CSMs in order to speed up
    * the selection of the right CSM for a particular group reference (in the case where multiple CSM
@@ -61,135 +106,501 @@ final class LegacyHsmPluginAdapter implements LegacyHsmPlugin, PoolPluginSpi {
    * <p>According to the current log level, it also prints more or less information about the
    * available keys.
    *
+   * <p>When the channel pooling is enabled, it finally opens the min-idle channels of each key
+   * group and starts their background maintenance.
+   *
+   * <p>When the background inventory is enabled, all these steps are performed by a background
+   * thread and the constructor returns immediately: the key groups are made available as their CSMs
+   * are discovered.
+   *
+   * @param settings The plugin settings.
+   * @param backend The HSM backend.
+   * @throws IllegalStateException If the workload capture file cannot be created, or if the
+   *     background inventory is disabled and the HSM cannot be initialized or no CSM is available.
    * @since 1.0.0
    */
-  LegacyHsmPluginAdapter() {
+  LegacyHsmPluginAdapter(PluginSettings settings, HsmBackend backend) {
+
+    this.settings = settings;
+    this.backend = backend;
+
+    if (settings.workloadCaptureFile != null) {
+      try {
+        workloadRecorder =
+            new WorkloadRecorder(settings.workloadCaptureFile, settings.workloadCaptureMaxSize);
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            "Unable to create the workload capture file "
+                + settings.workloadCaptureFile
+                + ": "
+                + e.getMessage(),
+            e);
+      }
+    } else {
+      workloadRecorder = null;
+    }
+    if (settings.isChannelPoolingEnabled() || settings.callerAffinityHoldMillis > 0) {
+      poolMaintainer =
+          Executors.newSingleThreadScheduledExecutor(
+              new MaintainerThreadFactory("LegacyHsmPoolMaintainer"));
+    } else {
+      poolMaintainer = null;
+    }
+    if (settings.keyGroupRefreshPeriodMillis > 0) {
+      keyGroupRefresher =
+          Executors.newSingleThreadScheduledExecutor(
+              new MaintainerThreadFactory("LegacyHsmKeyGroupRefresher"));
+    } else {
+      keyGroupRefresher = null;
+    }
+
+    if (settings.isBackgroundInventoryEnabled) {
+      Thread inventoryThread =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    takeInventory();
+                  } catch (RuntimeException e) {
+                    logger.error("HSM inventory failed: {}", e.getMessage(), e);
+                    completeInventory(e.getMessage());
+                  }
+                }
+              },
+              "LegacyHsmInventory");
+      inventoryThread.setDaemon(true);
+      inventoryThread.start();
+    } else {
+      try {
+        takeInventory();
+      } catch (RuntimeException e) {
+        if (poolMaintainer != null) {
+          poolMaintainer.shutdownNow();
+        }
+        if (keyGroupRefresher != null) {
+          keyGroupRefresher.shutdownNow();
+        }
+        if (workloadRecorder != null) {
+          workloadRecorder.close();
+        }
+        releaseBackend();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Initializes the HSM backend, discovers the CSMs and their key groups, and pre-opens the channel
+   * pools.
+   *
+   * @throws IllegalStateException If the HSM cannot be initialized or no CSM is available.
+   */
+  private void takeInventory() {
 
     if (logger.isTraceEnabled()) {
       logger.trace("Initializing HSM client...");
     }
-    csmSystem = CsmSystem.getInstance();
 
     try {
-      csmSystem.Initialize();
-    } catch (CsmException e) {
-      tryFree(csmSystem);
+      backend.initialize();
+    } catch (HsmException e) {
       throw new IllegalStateException(
           String.format("Unable to initialize the HSM client: %s", e.getMessage()), e);
     }
+    isBackendHeld.set(true);
+    if (isUnregistered) {
+      // unregistered during the initialization
+      releaseBackend();
+      throw new IllegalStateException("The plugin has been unregistered.");
+    }
 
-    List<Csm> csmList;
+    List<HsmDevice> devices;
     try {
-      csmList = csmSystem.getCsmList();
+      devices = backend.getDevices();
       if (logger.isTraceEnabled()) {
-        logger.trace("CSM list size = {}", csmList.size());
+        logger.trace("CSM list size = {}", devices.size());
       }
-      if (csmList.isEmpty()) {
+      if (devices.isEmpty()) {
+        releaseBackend();
         throw new IllegalStateException("No CSM found retry getCsmList...");
       }
-    } catch (CsmException e) {
-      tryFree(csmSystem);
+    } catch (HsmException e) {
+      releaseBackend();
       throw new IllegalStateException(
           String.format("Unable to get the list of CSM: %s", e.getMessage()), e);
     }
 
-    for (Csm csm : csmList) {
+    KeyInventorySnapshot snapshot =
+        settings.keyInventorySnapshotFile != null
+            ? KeyInventorySnapshot.read(settings.keyInventorySnapshotFile)
+            : KeyInventorySnapshot.EMPTY;
+    CsmDiscovery csmDiscovery = new CsmDiscovery(settings.discoveryTimeoutMillis, snapshot);
+    List<CsmDiscovery.DiscoveredCsm> discoveredCsms =
+        csmDiscovery.discover(
+            devices,
+            new CsmDiscovery.Listener() {
+              @Override
+              public void onDiscovered(CsmDiscovery.DiscoveredCsm discoveredCsm) {
+                addCsm(discoveredCsm);
+              }
+            });
+    excludedCsms = csmDiscovery.getExcludedCsms();
+    if (csmNodes.isEmpty()) {
+      releaseBackend();
+      throw new IllegalStateException("No CSM available, all the CSMs have been excluded.");
+    }
+    if (settings.keyInventorySnapshotFile != null) {
+      writeKeyInventorySnapshot(snapshot.update(discoveredCsms), snapshot);
+    }
+
+    for (ChannelPool channelPool : keyGroupIndex.getChannelPools()) {
+      channelPool.maintain();
+      if (logger.isDebugEnabled() && settings.isChannelPoolingEnabled()) {
+        logger.debug(
+            "Channel pool of key group {} created with {} idle channel(s).",
+            channelPool.getKeyGroupReference(),
+            channelPool.getIdleCount());
+      }
+    }
+    if (poolMaintainer != null) {
       try {
-        CsmInfoRecord info = csm.getInfos();
-        if (info != null) {
-          String csmInfo =
-              String.format(
-                  "Serial number: %s, Version: %d, Structure version: %d, Max channels: %d",
-                  HexUtil.toHex(info.getSerialNumber()),
-                  info.getCsmVersion(),
-                  info.getStructureVersion(),
-                  info.getChannelsTotal());
-          logger.info(csmInfo);
-        } else {
-          throw new IllegalStateException(
-              "The HSM library returned null while retrieving CsmInfo.");
-        }
-      } catch (CsmException e) {
-        throw new IllegalStateException(
-            String.format("An error occurred while getting CsmInfos: %s", e.getMessage()), e);
+        poolMaintainer.scheduleWithFixedDelay(
+            new Runnable() {
+              @Override
+              public void run() {
+                for (ChannelPool channelPool : keyGroupIndex.getChannelPools()) {
+                  if (settings.channelProbePeriodMillis > 0) {
+                    channelPool.probe(settings.channelProbePeriodMillis);
+                  }
+                  channelPool.maintain();
+                }
+              }
+            },
+            POOL_MAINTENANCE_PERIOD_MILLIS,
+            POOL_MAINTENANCE_PERIOD_MILLIS,
+            TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // the plugin has been unregistered during the inventory
+      }
+    }
+    if (keyGroupRefresher != null) {
+      try {
+        keyGroupRefresher.scheduleWithFixedDelay(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  refreshKeyGroups();
+                } catch (RuntimeException e) {
+                  logger.error("Periodic refresh of the key groups failed: {}", e.getMessage(), e);
+                }
+              }
+            },
+            settings.keyGroupRefreshPeriodMillis,
+            settings.keyGroupRefreshPeriodMillis,
+            TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // the plugin has been unregistered during the inventory
       }
-
-      // collect the key groups available in this CSM and store it in a map with the associated CSMs
-      collectKeyGroups(csm);
     }
+    completeInventory(null);
   }
 
   /**
-   * Tries to free the HSM library, catching and logging the possible errors.
+   * Writes the updated key inventory snapshot if it changed.
    *
-   * @param csmSystem the csm system handle
+   * <p>A failure is only logged, the next startup will scan the keys again.
+   *
+   * @param updatedSnapshot The snapshot updated with the discovered CSMs.
+   * @param snapshot The snapshot read at startup.
    */
-  private void tryFree(CsmSystem csmSystem) {
+  private void writeKeyInventorySnapshot(
+      KeyInventorySnapshot updatedSnapshot, KeyInventorySnapshot snapshot) {
+    if (updatedSnapshot == snapshot) {
+      return;
+    }
     try {
+      updatedSnapshot.write(settings.keyInventorySnapshotFile);
       if (logger.isDebugEnabled()) {
-        logger.debug("Freeing the HSM...");
+        logger.debug("Key inventory snapshot {} written.", settings.keyInventorySnapshotFile);
       }
-      csmSystem.Free();
-    } catch (CsmException ex) {
-      logger.error(
-          String.format(
-              "HSM Error: Could not free: result=%02X (%s)", ex.getCode(), ex.getMessage()));
+    } catch (IOException e) {
+      logger.warn(
+          "Unable to write the key inventory snapshot {}: {}",
+          settings.keyInventorySnapshotFile,
+          e.getMessage());
     }
   }
 
   /**
-   * Parses all the keys of the provided Csm.
+   * Adds a discovered CSM to the plugin and makes its key groups available.
    *
-   * <p>Update the keyGroupsCsmMap to list which Csm has which keyReaderGroupReference.
+   * <p>A key group reference may be available in several CSM. That's why the pool of a key group
+   * already held by another CSM is extended with the new one.
    *
-   * <p>A key group reference may be available in several CSM. That's why a list of CSM is
-   * associated with each key group reference in the keyGroupsCsmMap
-   *
-   * <p>Also print the keys details in the log flow (debug level).
+   * @param discoveredCsm The CSM.
+   */
+  private void addCsm(CsmDiscovery.DiscoveredCsm discoveredCsm) {
+    CsmNode csmNode = createCsmNode(discoveredCsm);
+    synchronized (inventoryLock) {
+      if (isUnregistered) {
+        return;
+      }
+      csmNodes.add(csmNode);
+      updateKeyGroups(csmNode, discoveredCsm.getKeyGroups());
+    }
+  }
+
+  /**
+   * Creates the runtime state of a discovered CSM.
    *
-   * @param csm the Csm
+   * @param discoveredCsm The CSM.
+   * @return A new instance.
    */
-  private void collectKeyGroups(Csm csm) {
-    ByteArrayOutputStream os = new ByteArrayOutputStream();
-    PrintStream ps = new PrintStream(os);
+  private CsmNode createCsmNode(CsmDiscovery.DiscoveredCsm discoveredCsm) {
+    HsmDevice device = discoveredCsm.getDevice();
+    HsmDeviceInfo info = discoveredCsm.getInfo();
+    String csmInfo =
+        String.format(
+            "Serial number: %s, Version: %d, Structure version: %d, Max channels: %d",
+            HexUtil.toHex(info.getSerialNumber()),
+            info.getCsmVersion(),
+            info.getStructureVersion(),
+            info.getChannelsTotal());
+    logger.info(csmInfo);
+    return new CsmNode(
+        device,
+        new CsmDescriptor(device.toString(), info, settings.selectedSamFactory),
+        new CircuitBreaker(
+            settings.circuitBreakerFailureThreshold, settings.circuitBreakerOpenDurationMillis),
+        new ApduDispatcher(
+            device.toString(), settings.asyncDispatchThreads, settings.asyncDispatchQueueCapacity),
+        settings.apduFlightRecorderCapacity > 0
+            ? new ApduFlightRecorder(settings.apduFlightRecorderCapacity)
+            : ApduFlightRecorder.DISABLED,
+        settings.maxConcurrentExchangesPerCsm > 0
+            ? new ConcurrencyLimiter(
+                settings.maxConcurrentExchangesPerCsm,
+                settings.allocationTimeoutMillis > 0
+                    ? settings.allocationTimeoutMillis
+                    : ConcurrencyLimiter.DEFAULT_MAX_WAIT_MILLIS)
+            : ConcurrencyLimiter.DISABLED);
+  }
 
-    try {
-      if (logger.isDebugEnabled()) {
-        logger.debug("Reading the keys of the HSM {}", csm);
+  /**
+   * Makes the provided CSM serve exactly the provided key groups, leaving its other key groups.
+   *
+   * <p>The pools of the key groups no longer held by any CSM are removed from the index and closed:
+   * their allocated channels remain usable until released. Must be called holding {@link
+   * #inventoryLock}.
+   *
+   * @param csmNode The CSM.
+   * @param keyGroups The key groups now held by the CSM.
+   */
+  private void updateKeyGroups(CsmNode csmNode, int[] keyGroups) {
+    KeyGroupIndex currentIndex = keyGroupIndex;
+    SortedSet<Integer> addedKeyGroups = new TreeSet<Integer>();
+    for (int keyGroup : keyGroups) {
+      addedKeyGroups.add(keyGroup);
+    }
+    SortedSet<Integer> removedKeyGroups = new TreeSet<Integer>();
+    List<ChannelPool> removedChannelPools = new ArrayList<ChannelPool>();
+    for (ChannelPool channelPool : currentIndex.getChannelPools()) {
+      if (!channelPool.hasCsmNode(csmNode)
+          || addedKeyGroups.remove(channelPool.getKeyGroupReference())) {
+        continue;
       }
-      List<CsmKeyInfo> keys = csm.getKeyList();
-
-      if (logger.isDebugEnabled()) {
-        CsmKeyInfo.dumpHeader("", ps);
-        logger.debug(os.toString().replace("\n", ""));
+      removedKeyGroups.add(channelPool.getKeyGroupReference());
+      if (channelPool.removeCsmNode(csmNode) == 0) {
+        removedChannelPools.add(channelPool);
+      }
+    }
+    List<ChannelPool> addedChannelPools = new ArrayList<ChannelPool>();
+    for (int keyGroup : addedKeyGroups) {
+      ChannelPool channelPool = currentIndex.get(keyGroup);
+      if (channelPool != null) {
+        channelPool.addCsmNode(csmNode);
+      } else {
+        addedChannelPools.add(
+            new ChannelPool(
+                keyGroup,
+                Collections.singletonList(csmNode),
+                CsmRouter.create(settings.routingStrategy),
+                settings.channelPoolMinIdle,
+                settings.channelPoolMaxSize,
+                settings.allocationClasses.toArray(
+                    new AllocationClass[settings.allocationClasses.size()]),
+                settings.callerAffinityHoldMillis,
+                settings.sharedChannelsPerCsm,
+                pluginStatistics));
       }
+    }
+    keyGroupIndex = currentIndex.without(removedChannelPools).with(addedChannelPools);
+    inventoryLock.notifyAll();
+    for (ChannelPool channelPool : removedChannelPools) {
+      channelPool.close();
+    }
+    if (!removedKeyGroups.isEmpty() || (isInventoryComplete && !addedKeyGroups.isEmpty())) {
+      logger.info(
+          "Key groups of CSM {} updated: added {}, removed {}.",
+          csmNode,
+          addedKeyGroups,
+          removedKeyGroups);
+    }
+  }
 
-      for (CsmKeyInfo key : keys) {
-        if (logger.isDebugEnabled()) {
-          os.reset();
-          key.dump("", ps);
-          logger.debug(os.toString().replace("\n", ""));
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public void refreshKeyGroups() {
+    if (!isInventoryComplete) {
+      throw new IllegalStateException("The HSM inventory is in progress.");
+    }
+    if (inventoryFailure != null) {
+      throw new IllegalStateException("The HSM inventory failed: " + inventoryFailure);
+    }
+    synchronized (refreshLock) {
+      List<HsmDevice> devices;
+      try {
+        devices = backend.getDevices();
+      } catch (HsmException e) {
+        throw new IllegalStateException(
+            String.format("Unable to get the list of CSM: %s", e.getMessage()), e);
+      }
+      // the refresh is the way to resynchronize the plugin with the CSMs, the snapshot is thus not
+      // trusted and all the keys are rescanned; the snapshot is then rewritten from the scan
+      CsmDiscovery csmDiscovery =
+          new CsmDiscovery(settings.discoveryTimeoutMillis, KeyInventorySnapshot.EMPTY);
+      List<CsmDiscovery.DiscoveredCsm> discoveredCsms =
+          csmDiscovery.discover(
+              devices,
+              new CsmDiscovery.Listener() {
+                @Override
+                public void onDiscovered(CsmDiscovery.DiscoveredCsm discoveredCsm) {
+                  // applied once all the CSMs are discovered
+                }
+              });
+      Map<Integer, CsmNode> csmNodesBySerialNumber = new HashMap<Integer, CsmNode>();
+      for (CsmNode csmNode : csmNodes) {
+        csmNodesBySerialNumber.put(csmNode.getSerialNumber(), csmNode);
+      }
+      synchronized (inventoryLock) {
+        if (isUnregistered) {
+          return;
         }
-        List<Csm> csmList = keyGroupToCsmsMap.get(key.getKeyGroup());
-        if (csmList == null) {
-          csmList = new ArrayList<Csm>();
+        for (CsmDiscovery.DiscoveredCsm discoveredCsm : discoveredCsms) {
+          CsmNode csmNode =
+              csmNodesBySerialNumber.remove(discoveredCsm.getInfo().getSerialNumber());
+          if (csmNode == null) {
+            csmNode = createCsmNode(discoveredCsm);
+            csmNodes.add(csmNode);
+          }
+          updateKeyGroups(csmNode, discoveredCsm.getKeyGroups());
         }
-        if (!csmList.contains(csm)) {
-          csmList.add(csm);
-          keyGroupToCsmsMap.put(key.getKeyGroup(), csmList);
+        // a CSM failing the refresh is kept, it is removed only when it is no longer listed
+        if (csmDiscovery.getExcludedCsms().isEmpty()) {
+          for (CsmNode csmNode : csmNodesBySerialNumber.values()) {
+            logger.info("CSM {} removed.", csmNode);
+            updateKeyGroups(csmNode, new int[0]);
+            csmNodes.remove(csmNode);
+          }
         }
       }
+      excludedCsms = csmDiscovery.getExcludedCsms();
+      if (settings.keyInventorySnapshotFile != null) {
+        KeyInventorySnapshot snapshot =
+            KeyInventorySnapshot.read(settings.keyInventorySnapshotFile);
+        writeKeyInventorySnapshot(snapshot.update(discoveredCsms), snapshot);
+      }
+    }
+    for (ChannelPool channelPool : keyGroupIndex.getChannelPools()) {
+      scheduleMaintenance(channelPool);
+    }
+  }
 
+  /**
+   * Marks the inventory as complete and wakes up the allocations waiting for a key group.
+   *
+   * @param failure The cause of the failure of the inventory, null if none.
+   */
+  private void completeInventory(String failure) {
+    synchronized (inventoryLock) {
+      if (!isInventoryComplete) {
+        inventoryFailure = failure;
+        isInventoryComplete = true;
+      }
+      inventoryLock.notifyAll();
+    }
+  }
+
+  /**
+   * Waits until the provided key group is discovered or the inventory is complete.
+   *
+   * @param keyGroupReference The key group reference.
+   * @return Null if the key group is not held by any CSM.
+   * @throws PluginIOException If the inventory failed or if the calling thread is interrupted.
+   */
+  private ChannelPool awaitKeyGroup(int keyGroupReference) throws PluginIOException {
+    synchronized (inventoryLock) {
+      ChannelPool channelPool;
+      while ((channelPool = keyGroupIndex.get(keyGroupReference)) == null && !isInventoryComplete) {
+        try {
+          inventoryLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new PluginIOException("Interrupted while waiting for the HSM inventory.", e);
+        }
+      }
+      if (channelPool == null && inventoryFailure != null) {
+        throw new PluginIOException("HSM inventory failed: " + inventoryFailure);
+      }
+      return channelPool;
+    }
+  }
+
+  /**
+   * Asks the pool maintainer to refill the provided pool if it went below its min-idle threshold.
+   *
+   * @param channelPool The pool.
+   */
+  private void scheduleMaintenance(final ChannelPool channelPool) {
+    if (poolMaintainer != null && channelPool.getIdleCount() < settings.channelPoolMinIdle) {
+      try {
+        poolMaintainer.execute(
+            new Runnable() {
+              @Override
+              public void run() {
+                channelPool.maintain();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        // the plugin is being unregistered
+      }
+    }
+  }
+
+  /**
+   * Frees the HSM backend if the plugin still holds it, catching and logging the possible errors.
+   *
+   * <p>The backend being shared, the HSM library is actually freed only when its last user leaves.
+   */
+  private void releaseBackend() {
+    if (!isBackendHeld.compareAndSet(true, false)) {
+      return;
+    }
+    try {
       if (logger.isDebugEnabled()) {
-        logger.debug("     Total: {} keys", keys.size());
-        logger.debug("     End of HSM key(s)");
+        logger.debug("Freeing the HSM...");
       }
-    } catch (CsmException ex) {
+      backend.free();
+    } catch (HsmException ex) {
       logger.error(
           String.format(
-              "HSM Error: Could not get csm keys: result=%02X (%s)%n",
-              ex.getCode(), ex.getMessage()));
-      tryFree(csmSystem);
+              "HSM Error: Could not free: result=%02X (%s)", ex.getCode(), ex.getMessage()));
     }
   }
 
@@ -210,11 +621,7 @@ public String getName() {
    */
   @Override
   public SortedSet<String> getReaderGroupReferences() {
-    SortedSet<String> readerGroupReferences = new ConcurrentSkipListSet<String>();
-    for (Map.Entry<Integer, List<Csm>> entry : keyGroupToCsmsMap.entrySet()) {
-      readerGroupReferences.add(Integer.toString(entry.getKey()));
-    }
-    return readerGroupReferences;
+    return keyGroupIndex.getReaderGroupReferences();
   }
 
   /**
@@ -229,50 +636,76 @@ public PoolReaderSpi allocateReader(String readerGroupReference) throws PluginIO
       logger.trace("Reader allocation requested. GROUP_REFERENCE = {}", readerGroupReference);
     }
 
-    LegacyHsmReaderAdapter hsmReader = null;
-    int reference;
-
-    // convert the group reference string to an integer: null or malformed strings give the
-    // reference 0
-    try {
-      if (readerGroupReference == null) {
-        reference = 0;
-      } else {
-        reference = Integer.parseInt(readerGroupReference);
-      }
-    } catch (NumberFormatException ex) {
-      throw new IllegalArgumentException("Bad group reference string: " + readerGroupReference);
+    // the key group reference, followed by the optional allocation parameters; a null string gives
+    // the reference 0
+    ReaderGroupReference groupReference = ReaderGroupReference.valueOf(readerGroupReference);
+    int reference = groupReference.getKeyGroupReference();
+    String allocationClassName = groupReference.getParameter(ReaderGroupReference.CLASS_PARAMETER);
+    AllocationClass allocationClass = settings.getAllocationClass(allocationClassName);
+    if (allocationClass == null) {
+      throw new IllegalArgumentException(
+          "Unknown allocation class '" + allocationClassName + "': " + readerGroupReference);
     }
-    List<Csm> csmList = keyGroupToCsmsMap.get(reference);
-    if (csmList.isEmpty()) {
+    String mode = groupReference.getParameter(ReaderGroupReference.MODE_PARAMETER);
+    boolean isShared = ReaderGroupReference.SHARED_MODE.equals(mode);
+    if (!isShared && mode != null && !ReaderGroupReference.EXCLUSIVE_MODE.equals(mode)) {
+      throw new IllegalArgumentException(
+          "Unknown allocation mode '" + mode + "': " + readerGroupReference);
+    }
+    ChannelPool channelPool = keyGroupIndex.get(reference);
+    if (channelPool == null && !isInventoryComplete) {
+      channelPool = awaitKeyGroup(reference);
+    }
+    if (channelPool == null) {
       throw new PluginIOException(
           "The request key group reference "
               + reference
               + " is not available in the configuration.");
     }
-    // loop on all available CSMs with the requested key group reference until a channel is opened
-    for (Csm csm : csmList) {
-      try {
-        CsmChannel csmChannel = csm.channelOpen(reference);
-        if (csmChannel == null) {
-          throw new PluginIOException("No channel available at the moment.");
-        }
-        hsmReader = new LegacyHsmReaderAdapter(csmChannel);
-        if (logger.isTraceEnabled()) {
-          logger.trace("Reader {} allocated.", hsmReader.getName());
-        }
-        break;
-      } catch (CsmException e) {
-        /* let the caller handle key group related exceptions */
-        if (e.getCode() != CsmException.kHsmErrKeyGroup) {
-          logger.error(
-              "Unable to allocate a new CSM channel for CSM {}. result={} ({})",
-              csm,
-              e.getCode(),
-              e.getMessage());
-        }
-        throw new PluginIOException("HSM library exception:" + e.getMessage(), e);
+    // take an idle channel from the pool or open a new one on the CSM chosen by the router, waiting
+    // for a released channel if allowed
+    KeyGroupStatistics statistics = channelPool.getStatistics();
+    PooledChannel pooledChannel;
+    long startTime = System.nanoTime();
+    try {
+      if (isShared && settings.sharedChannelsPerCsm > 0) {
+        pooledChannel = channelPool.acquireShared(settings.allocationTimeoutMillis);
+      } else {
+        pooledChannel =
+            channelPool.acquire(
+                allocationClass,
+                groupReference.getParameter(ReaderGroupReference.CALLER_PARAMETER),
+                settings.allocationTimeoutMillis);
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PluginIOException("Interrupted while waiting for a channel.", e);
+    } catch (HsmException e) {
+      statistics.onFailed(e.getCode());
+      /* let the caller handle key group related exceptions */
+      if (!e.isKeyGroupError()) {
+        logger.error(
+            "Unable to allocate a new CSM channel for key group {}. result={} ({})",
+            reference,
+            e.getCode(),
+            e.getMessage());
+      }
+      throw new PluginIOException("HSM library exception:" + e.getMessage(), e);
+    }
+    if (pooledChannel == null) {
+      statistics.onUnavailable();
+      if (settings.allocationTimeoutMillis > 0) {
+        throw new PluginIOException(
+            "No channel available after waiting " + settings.allocationTimeoutMillis + " ms.");
+      }
+      throw new PluginIOException("No channel available at the moment.");
+    }
+    statistics.onAllocated(System.nanoTime() - startTime);
+    scheduleMaintenance(channelPool);
+    LegacyHsmReaderAdapter hsmReader =
+        new LegacyHsmReaderAdapter(pooledChannel, channelPool, workloadRecorder);
+    if (logger.isTraceEnabled()) {
+      logger.trace("Reader {} allocated.", hsmReader.getName());
     }
     return hsmReader;
   }
@@ -301,6 +734,42 @@ public void releaseReader(ReaderSpi readerSpi) throws PluginIOException {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public Map<String, String> getExcludedCsms() {
+    return excludedCsms;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String dumpApduFlightRecorder() {
+    StringBuilder sb = new StringBuilder();
+    for (CsmNode csmNode : csmNodes) {
+      ApduFlightRecorder flightRecorder = csmNode.getFlightRecorder();
+      sb.append("CSM ").append(csmNode).append(":\n");
+      flightRecorder.dump(sb, ApduFlightRecorder.ALL_CHANNELS, flightRecorder.getCapacity());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public LegacyHsmPluginMetrics getMetrics() {
+    return new PluginMetricsAdapter(csmNodes, keyGroupIndex.getChannelPools(), pluginStatistics);
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -308,6 +777,84 @@ public void releaseReader(ReaderSpi readerSpi) throws PluginIOException {
    */
   @Override
   public void onUnregister() {
-    // NOP
+    isUnregistered = true;
+    if (keyGroupRefresher != null) {
+      keyGroupRefresher.shutdownNow();
+    }
+    completeInventory("The plugin has been unregistered.");
+    if (poolMaintainer != null) {
+      poolMaintainer.shutdownNow();
+      awaitTermination(poolMaintainer);
+    }
+    closeChannelPools(keyGroupIndex.getChannelPools());
+    for (CsmNode csmNode : csmNodes) {
+      csmNode.getApduDispatcher().shutdown();
+    }
+    releaseBackend();
+    if (workloadRecorder != null) {
+      workloadRecorder.close();
+    }
+  }
+
+  /**
+   * Closes the provided pools in parallel and waits for the closing of their idle channels, each
+   * closing being an exchange with the HSM.
+   *
+   * @param channelPools The pools.
+   */
+  private void closeChannelPools(List<ChannelPool> channelPools) {
+    if (channelPools.size() <= 1) {
+      for (ChannelPool channelPool : channelPools) {
+        channelPool.close();
+      }
+      return;
+    }
+    ExecutorService closer =
+        Executors.newFixedThreadPool(
+            Math.min(channelPools.size(), MAX_CLOSING_THREADS),
+            new MaintainerThreadFactory("LegacyHsmPoolCloser"));
+    for (final ChannelPool channelPool : channelPools) {
+      closer.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              channelPool.close();
+            }
+          });
+    }
+    closer.shutdown();
+    awaitTermination(closer);
+  }
+
+  /**
+   * Waits for the end of the tasks of a shut down executor, up to {@link #CLOSING_TIMEOUT_MILLIS}.
+   *
+   * @param executor The executor.
+   */
+  private static void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(CLOSING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+        logger.warn("Channel closing not completed after {} ms.", CLOSING_TIMEOUT_MILLIS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Creates the daemon thread of a background maintenance task. */
+  private static final class MaintainerThreadFactory implements ThreadFactory {
+
+    private final String threadName;
+
+    private MaintainerThreadFactory(String threadName) {
+      this.threadName = threadName;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, threadName);
+      thread.setDaemon(true);
+      return thread;
+    }
   }
 }
@@ -30,6 +30,18 @@ final class LegacyHsmPluginFactoryAdapter implements LegacyHsmPluginFactory, Poo
    */
   static final String PLUGIN_NAME = "LegacyHsmPlugin";
 
+  private final PluginSettings settings;
+
+  /**
+   * Creates a factory providing plugins configured with the provided settings.
+   *
+   * @param settings The plugin settings.
+   * @since 1.1.0
+   */
+  LegacyHsmPluginFactoryAdapter(PluginSettings settings) {
+    this.settings = settings;
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -67,6 +79,6 @@ public String getPoolPluginName() {
    */
   @Override
   public PoolPluginSpi getPoolPlugin() {
-    return new LegacyHsmPluginAdapter();
+    return new LegacyHsmPluginAdapter(settings, settings.createBackend());
   }
 }
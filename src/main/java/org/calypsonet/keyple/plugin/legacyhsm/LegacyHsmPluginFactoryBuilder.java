@@ -0,0 +1,554 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.io.File;
+import org.eclipse.keyple.core.util.Assert;
+
+/**
+ * Builds instances of {@link LegacyHsmPluginFactory} with a custom configuration.
+ *
+ * @since 1.1.0
+ */
+public final class LegacyHsmPluginFactoryBuilder {
+
+  /** Private constructor */
+  private LegacyHsmPluginFactoryBuilder() {}
+
+  /**
+   * Creates builder to build a {@link LegacyHsmPluginFactory}.
+   *
+   * @return A new instance.
+   * @since 1.1.0
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder to build a {@link LegacyHsmPluginFactory}.
+   *
+   * @since 1.1.0
+   */
+  public static final class Builder {
+
+    /** Maximum number of APDU exchanges kept by the flight recorder of each CSM. */
+    private static final int MAX_FLIGHT_RECORDER_CAPACITY = 1 << 20;
+
+    /** Maximum size of the workload capture file in megabytes, the file being mapped at once. */
+    private static final int MAX_WORKLOAD_CAPTURE_MEGABYTES = 2047;
+
+    private final PluginSettings settings = new PluginSettings();
+
+    /** Private constructor */
+    private Builder() {}
+
+    /**
+     * Keeps the HSM channels open between the allocations of readers of the same key group.
+     *
+     * <p>For each key group, {@code minIdle} channels are opened when the plugin starts and are
+     * refilled in the background as they are allocated. A released reader gives back its channel to
+     * the pool instead of closing it, unless an error occurred on it. Idle channels exceeding the
+     * min-idle threshold are closed after one minute of inactivity.
+     *
+     * <p>By default, the channels are opened at allocation and closed at release.
+     *
+     * @param minIdle The number of channels kept open and ready for each key group.
+     * @param maxSize The maximum number of channels (idle and allocated) of each key group.
+     * @return This instance.
+     * @throws IllegalArgumentException If a value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useChannelPool(int minIdle, int maxSize) {
+      Assert.getInstance()
+          .greaterOrEqual(minIdle, 0, "minIdle")
+          .greaterOrEqual(maxSize, 1, "maxSize")
+          .isTrue(minIdle <= maxSize, "minIdle <= maxSize");
+      settings.channelPoolMinIdle = minIdle;
+      settings.channelPoolMaxSize = maxSize;
+      return this;
+    }
+
+    /**
+     * Checks periodically that the idle channels of the pools are still open on the HSM.
+     *
+     * <p>Each channel left idle for the probe period exchanges a Get Challenge command. A channel
+     * failing this exchange is closed and reported to the circuit breaker of its CSM, so that a
+     * channel dropped by the HSM is evicted before being allocated, instead of failing a
+     * transaction. The probes are performed in the background by the pool maintenance; they only
+     * apply when the channel pooling is enabled ({@link #useChannelPool(int, int)}).
+     *
+     * <p>By default, the idle channels are not probed.
+     *
+     * @param probePeriodSeconds The time in seconds after which an idle channel is probed (0 to
+     *     disable the probing).
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useChannelProbe(int probePeriodSeconds) {
+      Assert.getInstance().greaterOrEqual(probePeriodSeconds, 0, "probePeriodSeconds");
+      settings.channelProbePeriodMillis = probePeriodSeconds * 1000L;
+      return this;
+    }
+
+    /**
+     * Keeps the channel released by an identified caller reserved for this caller during the
+     * provided hold time, so that its next allocation gets the same channel back immediately.
+     *
+     * <p>An allocation identifies its caller, such as a terminal running back-to-back secure
+     * sessions, in the reader group reference: {@code "<keyGroupReference>;caller=<id>"}. The
+     * parked channel skips the routing and the wait queue of its caller's next allocation, and
+     * keeps its CSM-side context. It goes back to the pool when the hold time has elapsed, and is
+     * taken by another allocation of the key group if no other channel can be obtained, so that the
+     * affinity never delays the other callers. A channel released while other allocations are
+     * waiting is handed over to them instead of being parked.
+     *
+     * <p>By default, the caller affinity is disabled and the caller parameter is ignored.
+     *
+     * @param holdMillis The time in milliseconds a released channel stays parked for its caller (0
+     *     to disable the caller affinity).
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useCallerAffinity(int holdMillis) {
+      Assert.getInstance().greaterOrEqual(holdMillis, 0, "holdMillis");
+      settings.callerAffinityHoldMillis = holdMillis;
+      return this;
+    }
+
+    /**
+     * Lets the readers allocated in shared mode share a few channels of each CSM instead of holding
+     * a channel each, for their stateless commands.
+     *
+     * <p>An allocation requests the shared mode in the reader group reference: {@code
+     * "<keyGroupReference>;mode=shared"}. Such a reader does not hold a channel: each of its
+     * exchanges borrows one of the channels shared by the readers of the key group on its CSM, so
+     * that many readers performing commands independent from each other, such as the verification
+     * of signatures, are served by at most {@code channelsPerCsm} channels. The commands of a
+     * session relying on the state of the SAM between commands, such as a secure session, must not
+     * be sent on a shared reader.
+     *
+     * <p>The shared channels are taken from the pool of the key group as needed, for the default
+     * allocation class ({@link #useAllocationClass(String, int, int, int)}), and go back to it when
+     * the last reader sharing them is released. The class and caller parameters of a shared
+     * allocation are ignored.
+     *
+     * <p>By default, the shared mode is disabled and the readers requesting it hold a channel.
+     *
+     * @param channelsPerCsm The maximum number of channels shared by the readers of a key group on
+     *     each CSM.
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useSharedChannels(int channelsPerCsm) {
+      Assert.getInstance().greaterOrEqual(channelsPerCsm, 1, "channelsPerCsm");
+      settings.sharedChannelsPerCsm = channelsPerCsm;
+      return this;
+    }
+
+    /**
+     * Sets the strategy for choosing the CSM on which a reader is allocated when several CSMs hold
+     * the requested key group.
+     *
+     * <p>By default, {@link LegacyHsmPlugin.RoutingStrategy#LEAST_OUTSTANDING_CHANNELS} is used.
+     *
+     * @param routingStrategy The routing strategy.
+     * @return This instance.
+     * @throws IllegalArgumentException If the provided strategy is null.
+     * @since 1.1.0
+     */
+    public Builder useRoutingStrategy(LegacyHsmPlugin.RoutingStrategy routingStrategy) {
+      Assert.getInstance().notNull(routingStrategy, "routingStrategy");
+      settings.routingStrategy = routingStrategy;
+      return this;
+    }
+
+    /**
+     * Configures the circuit breaker associated with each CSM.
+     *
+     * <p>After {@code failureThreshold} consecutive failures (channel opening or APDU exchange),
+     * the CSM is skipped by the allocations during {@code openDurationMillis}. A single allocation
+     * is then let through as a trial: if it fails, the CSM is skipped again for twice the previous
+     * duration, up to 16 times {@code openDurationMillis}. The allocations fail over to the other
+     * CSMs holding the requested key group in the meantime.
+     *
+     * <p>By default, a CSM is skipped for 5 seconds after 3 consecutive failures.
+     *
+     * @param failureThreshold The number of consecutive failures opening the breaker, 0 to disable
+     *     the breaker.
+     * @param openDurationMillis The base duration in milliseconds during which the CSM is skipped.
+     * @return This instance.
+     * @throws IllegalArgumentException If a value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useCircuitBreaker(int failureThreshold, int openDurationMillis) {
+      Assert.getInstance()
+          .greaterOrEqual(failureThreshold, 0, "failureThreshold")
+          .greaterOrEqual(openDurationMillis, 0, "openDurationMillis");
+      settings.circuitBreakerFailureThreshold = failureThreshold;
+      settings.circuitBreakerOpenDurationMillis = openDurationMillis;
+      return this;
+    }
+
+    /**
+     * Makes the allocations wait for a channel when none is available.
+     *
+     * <p>A channel released while allocations of the key group are waiting is given directly to one
+     * of them: the oldest waiting allocation of the class to be served first, according to the
+     * priorities and weights of the classes ({@link #useAllocationClass(String, int, int, int)}).
+     * An allocation still waiting after the timeout fails with a {@code PluginIOException}.
+     *
+     * <p>By default, an allocation fails immediately when no channel is available.
+     *
+     * @param allocationTimeoutMillis The maximum waiting time in milliseconds, 0 for no wait.
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useAllocationTimeout(int allocationTimeoutMillis) {
+      Assert.getInstance().greaterOrEqual(allocationTimeoutMillis, 0, "allocationTimeoutMillis");
+      settings.allocationTimeoutMillis = allocationTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time given to each CSM to provide its information and its key list when the
+     * plugin starts.
+     *
+     * <p>The CSMs are queried in parallel. A CSM failing or not answering in time is excluded from
+     * the plugin and reported by {@link LegacyHsmPlugin#getExcludedCsms()}; the plugin startup
+     * fails only if all the CSMs are excluded.
+     *
+     * <p>By default, the timeout is 30 seconds.
+     *
+     * @param discoveryTimeoutMillis The timeout in milliseconds.
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useDiscoveryTimeout(int discoveryTimeoutMillis) {
+      Assert.getInstance().greaterOrEqual(discoveryTimeoutMillis, 1, "discoveryTimeoutMillis");
+      settings.discoveryTimeoutMillis = discoveryTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Limits the APDU exchanges in progress on each CSM to an adaptive limit, driven by the
+     * exchange latency.
+     *
+     * <p>Beyond its throughput ceiling, a CSM only queues the requests: more concurrent exchanges
+     * increase the latency of all of them. The limit of each CSM starts at the provided maximum and
+     * is lowered when the recent exchanges get twice as slow as the usual latency of their commands
+     * or when exchanges fail, then raised again while the latency stays stable (AIMD). The
+     * exchanges exceeding the limit wait for the end of an exchange in progress, up to the
+     * allocation timeout ({@link #useAllocationTimeout(int)}) or 10 seconds if the allocations do
+     * not wait, after which they fail with a {@code ReaderIOException}. The new allocations are
+     * routed preferably to the CSMs having the highest limit relative to their allocated channels.
+     *
+     * <p>By default, the exchanges are not limited.
+     *
+     * @param maxConcurrentExchangesPerCsm The maximum number of exchanges in progress on each CSM.
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useAdaptiveConcurrencyLimit(int maxConcurrentExchangesPerCsm) {
+      Assert.getInstance()
+          .greaterOrEqual(maxConcurrentExchangesPerCsm, 1, "maxConcurrentExchangesPerCsm");
+      settings.maxConcurrentExchangesPerCsm = maxConcurrentExchangesPerCsm;
+      return this;
+    }
+
+    /**
+     * Declares a class of allocations sharing the channels of each key group with the other
+     * classes, or redefines the default class named {@code "default"}.
+     *
+     * <p>An allocation names its class in the reader group reference: {@code
+     * "<keyGroupReference>;class=<name>"}, the default class being used otherwise. When the
+     * allocations wait for a channel ({@link #useAllocationTimeout(int)}), the classes with the
+     * highest priority are served first, and the classes of the same priority are served in
+     * proportion of their weights. The reserved channels of a class cannot be taken by the other
+     * classes while the class does not use them, so that for example fare gate validations are
+     * always served while back-office batches saturate the key group.
+     *
+     * <p>The reservations apply to the maximum size of the pool of each key group ({@link
+     * #useChannelPool(int, int)}), or to the channel capacity of its CSMs when the pooling is
+     * disabled. The channels parked for a caller ({@link #useCallerAffinity(int)}) count against
+     * the class of their last allocation.
+     *
+     * <p>By default, a single class of priority 0 and weight 1 without reservation is used.
+     *
+     * @param name The name of the class.
+     * @param priority The priority of the class, the highest being served first.
+     * @param weight The share of the class among the classes of the same priority.
+     * @param reservedChannels The number of channels of each key group reserved to the class.
+     * @return This instance.
+     * @throws IllegalArgumentException If the name is null, empty or contains ';' or '=', or if a
+     *     value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useAllocationClass(String name, int priority, int weight, int reservedChannels) {
+      Assert.getInstance().notNull(name, "name");
+      String trimmedName = name.trim();
+      Assert.getInstance()
+          .notEmpty(trimmedName, "name")
+          .isTrue(
+              trimmedName.indexOf(';') < 0 && trimmedName.indexOf('=') < 0,
+              "name without ';' and '='")
+          .greaterOrEqual(weight, 1, "weight")
+          .greaterOrEqual(reservedChannels, 0, "reservedChannels");
+      int index = settings.allocationClasses.size();
+      for (int i = 0; i < settings.allocationClasses.size(); i++) {
+        if (settings.allocationClasses.get(i).getName().equals(trimmedName)) {
+          index = i;
+        }
+      }
+      AllocationClass allocationClass =
+          new AllocationClass(index, trimmedName, priority, weight, reservedChannels);
+      if (index < settings.allocationClasses.size()) {
+        settings.allocationClasses.set(index, allocationClass);
+      } else {
+        settings.allocationClasses.add(allocationClass);
+      }
+      return this;
+    }
+
+    /**
+     * Sets the number of APDU exchanges kept by the flight recorder of each CSM.
+     *
+     * <p>The recorder keeps the time, channel, command header, status word and latency of the last
+     * exchanges in a lock-free ring buffer, at a negligible cost. They are formatted by {@link
+     * LegacyHsmPlugin#dumpApduFlightRecorder()} and logged when an HSM error occurs, without having
+     * to enable the trace logging.
+     *
+     * <p>By default, the last 1024 exchanges of each CSM are kept.
+     *
+     * @param capacity The number of exchanges kept, rounded up to a power of two (0 to disable the
+     *     recording).
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useApduFlightRecorder(int capacity) {
+      Assert.getInstance().isInRange(capacity, 0, MAX_FLIGHT_RECORDER_CAPACITY, "capacity");
+      settings.apduFlightRecorderCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Captures the workload of the plugin into the provided file, to be replayed later at a
+     * configurable speed-up against simulated or real CSMs ({@code ./gradlew replayWorkload}).
+     *
+     * <p>Each allocation of a reader starts a session, closed by its release. The key group of the
+     * session, and the time, command, status word and latency of each APDU exchange are appended to
+     * the file, which is memory-mapped so that the recording costs a few memory writes. The file is
+     * replaced at each startup; the capture stops when it reaches its maximum size.
+     *
+     * <p>The commands are recorded in full: the capture file must be protected as the production
+     * traces are.
+     *
+     * <p>By default, the workload is not captured.
+     *
+     * @param filePath The path of the capture file.
+     * @param maxSizeMegabytes The maximum size of the file in megabytes.
+     * @return This instance.
+     * @throws IllegalArgumentException If the path is null or empty or if the size is out of range.
+     * @since 1.1.0
+     */
+    public Builder useWorkloadCapture(String filePath, int maxSizeMegabytes) {
+      Assert.getInstance()
+          .notEmpty(filePath, "filePath")
+          .isInRange(maxSizeMegabytes, 1, MAX_WORKLOAD_CAPTURE_MEGABYTES, "maxSizeMegabytes");
+      settings.workloadCaptureFile = new File(filePath);
+      settings.workloadCaptureMaxSize = maxSizeMegabytes << 20;
+      return this;
+    }
+
+    /**
+     * Makes the plugin available immediately, the CSMs and their key groups being discovered in the
+     * background.
+     *
+     * <p>The key groups appear in {@link LegacyHsmPlugin#getReaderGroupReferences()} as soon as the
+     * CSM holding them has answered. An allocation for a key group not yet discovered waits until
+     * it is, or until the end of the discovery; it fails if the key group is still unknown.
+     *
+     * <p>The failure of the discovery (HSM client not initialized, all the CSMs excluded) is then
+     * reported by the allocations instead of the plugin registration.
+     *
+     * <p>By default, the discovery is performed during the plugin registration.
+     *
+     * @return This instance.
+     * @since 1.1.0
+     */
+    public Builder useBackgroundInventory() {
+      settings.isBackgroundInventoryEnabled = true;
+      return this;
+    }
+
+    /**
+     * Records the key groups of each CSM in the provided file, so that the next startups do not
+     * scan the keys of the CSMs again.
+     *
+     * <p>At startup, the information of each CSM is still read: its key groups are taken from the
+     * file only if its serial number, CSM version and key structure version are unchanged, and its
+     * keys are scanned otherwise. The file is rewritten when the key groups of a CSM changed.
+     * Deleting the file forces a full scan.
+     *
+     * <p>By default, the keys of all the CSMs are scanned at each startup.
+     *
+     * @param filePath The path of the snapshot file, created if missing.
+     * @return This instance.
+     * @throws IllegalArgumentException If the path is null or empty.
+     * @since 1.1.0
+     */
+    public Builder useKeyInventorySnapshot(String filePath) {
+      Assert.getInstance().notEmpty(filePath, "filePath");
+      settings.keyInventorySnapshotFile = new File(filePath);
+      return this;
+    }
+
+    /**
+     * Refreshes periodically the CSMs and their key groups, as done by {@link
+     * LegacyHsmPlugin#refreshKeyGroups()}.
+     *
+     * <p>By default, the key groups are only refreshed on demand.
+     *
+     * @param refreshPeriodSeconds The refresh period in seconds (0 to disable the periodic
+     *     refresh).
+     * @return This instance.
+     * @throws IllegalArgumentException If the value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useKeyGroupRefresh(int refreshPeriodSeconds) {
+      Assert.getInstance().greaterOrEqual(refreshPeriodSeconds, 0, "refreshPeriodSeconds");
+      settings.keyGroupRefreshPeriodMillis = refreshPeriodSeconds * 1000L;
+      return this;
+    }
+
+    /**
+     * Configures the dispatchers executing the APDUs submitted with {@link
+     * LegacyHsmReader#transmitApduAsync(byte[], LegacyHsmReader.ApduCallback)}.
+     *
+     * <p>Each CSM has its own dispatcher, whose threads are started at the first asynchronous
+     * submission and stopped after one minute of inactivity. When all its threads are busy, the
+     * readers having APDUs to exchange are queued; when the queue is full, the submissions fail.
+     *
+     * <p>By default, each CSM has 4 threads and a queue of 1024 readers.
+     *
+     * @param threadsPerCsm The maximum number of asynchronous exchanges in progress on each CSM.
+     * @param queueCapacity The maximum number of readers waiting for a thread on each CSM, also
+     *     used as the maximum number of APDUs pending on each reader.
+     * @return This instance.
+     * @throws IllegalArgumentException If a value is out of range.
+     * @since 1.1.0
+     */
+    public Builder useAsyncDispatch(int threadsPerCsm, int queueCapacity) {
+      Assert.getInstance()
+          .greaterOrEqual(threadsPerCsm, 1, "threadsPerCsm")
+          .greaterOrEqual(queueCapacity, 1, "queueCapacity");
+      settings.asyncDispatchThreads = threadsPerCsm;
+      settings.asyncDispatchQueueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * Sets the factory of the selected SAM image returned by {@code getSelectedSmartCard()} of the
+     * allocated readers.
+     *
+     * <p>The image is built once per CSM at its discovery, from the virtual ATR of its readers, so
+     * that the card resource service can skip the SAM selection scenario and its APDU exchanges at
+     * each allocation. The same instance is returned by all the readers of a CSM. If the factory
+     * fails for a CSM, the error is logged and its readers return null, the SAM being then selected
+     * by the application as usual.
+     *
+     * <p>By default, no factory is used and the readers return null.
+     *
+     * @param selectedSamFactory The factory.
+     * @return This instance.
+     * @throws IllegalArgumentException If the factory is null.
+     * @since 1.1.0
+     */
+    public Builder useSelectedSamFactory(SelectedSamFactory selectedSamFactory) {
+      Assert.getInstance().notNull(selectedSamFactory, "selectedSamFactory");
+      settings.selectedSamFactory = selectedSamFactory;
+      return this;
+    }
+
+    /**
+     * Replaces the HSM library by an in-process simulated CSM whose channels behave as Calypso SAM
+     * C1.
+     *
+     * <p>This method can be called several times to simulate several CSMs. The simulated SAMs
+     * answer the commands of the secure session (digest) and signature flows with deterministic but
+     * non-verifiable cryptograms: they are intended for load tests and benchmarks of the plugin, on
+     * hosts where neither the HSM hardware nor the HSM library is available.
+     *
+     * <p>Not part of the public API: reserved to the tests and benchmarks of the plugin, which
+     * belong to its package.
+     *
+     * <p>By default, the Spirtech HSM library is used.
+     *
+     * @param channelsTotal The maximum number of channels of the simulated CSM.
+     * @param latencyMicros The latency in microseconds added to each channel opening and APDU
+     *     exchange.
+     * @param keyGroupReferences The key group references held by the simulated CSM.
+     * @return This instance.
+     * @throws IllegalArgumentException If a value is out of range or if no key group is provided.
+     * @since 1.1.0
+     */
+    Builder useSimulatedCsm(int channelsTotal, int latencyMicros, int... keyGroupReferences) {
+      Assert.getInstance()
+          .greaterOrEqual(channelsTotal, 1, "channelsTotal")
+          .greaterOrEqual(latencyMicros, 0, "latencyMicros")
+          .notNull(keyGroupReferences, "keyGroupReferences")
+          .isTrue(keyGroupReferences.length > 0, "keyGroupReferences not empty");
+      settings.simulatedCsmSpecs.add(
+          new SimulatedHsmBackend.Spec(channelsTotal, latencyMicros, keyGroupReferences));
+      return this;
+    }
+
+    /**
+     * Returns an instance of {@link LegacyHsmPluginFactory} created from the fields set on this
+     * builder.
+     *
+     * @return A {@link LegacyHsmPluginFactory}
+     * @since 1.1.0
+     */
+    public LegacyHsmPluginFactory build() {
+      return new LegacyHsmPluginFactoryAdapter(new PluginSettings(settings));
+    }
+  }
+
+  /**
+   * Factory of the selected SAM image returned by the readers of a CSM, typically a {@code
+   * CalypsoSam} built by the card extension of the application from the power-on data.
+   *
+   * @since 1.1.0
+   */
+  public interface SelectedSamFactory {
+
+    /**
+     * Creates the selected SAM image of a CSM.
+     *
+     * <p>Invoked once at the discovery of each CSM, possibly from several threads for different
+     * CSMs.
+     *
+     * @param powerOnData The virtual ATR of the readers of the CSM as an hexadecimal string.
+     * @return The selected SAM image, null to let the application select the SAM.
+     * @since 1.1.0
+     */
+    Object createSelectedSam(String powerOnData);
+  }
+}
@@ -21,10 +21,13 @@ public final class LegacyHsmPluginFactoryProvider {
   /**
    * Returns the factory to register to the Keyple core service.
    *
+   * <p>The plugin provided by this factory uses the default settings. Use {@link
+   * LegacyHsmPluginFactoryBuilder} to customize them.
+   *
    * @return A new instance.
    * @since 1.0.0
    */
   public static LegacyHsmPluginFactory getFactory() {
-    return new LegacyHsmPluginFactoryAdapter();
+    return LegacyHsmPluginFactoryBuilder.builder().build();
   }
 }
@@ -0,0 +1,334 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Snapshot of the activity of the Legacy HSM plugin, obtained with {@link
+ * LegacyHsmPlugin#getMetrics()}.
+ *
+ * <p>Counters are cumulated since the plugin registration: throughputs are obtained by comparing
+ * two snapshots with their {@link #getTimestamp()}. Durations are measured in nanoseconds.
+ *
+ * @since 1.1.0
+ */
+public interface LegacyHsmPluginMetrics {
+
+  /**
+   * Returns the date of the snapshot.
+   *
+   * @return A time in milliseconds, as given by {@link System#currentTimeMillis()}.
+   * @since 1.1.0
+   */
+  long getTimestamp();
+
+  /**
+   * Returns the number of successful reader allocations, all key groups included.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getAllocationCount();
+
+  /**
+   * Returns the number of released readers, all key groups included.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getReleaseCount();
+
+  /**
+   * Returns the number of reader allocations failed because no channel was available, all key
+   * groups included.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getUnavailableAllocationCount();
+
+  /**
+   * Returns the number of reader allocations failed because of an HSM error, all key groups
+   * included.
+   *
+   * @return A not null map of the counts by HSM result code.
+   * @since 1.1.0
+   */
+  Map<Integer, Long> getFailedAllocationCounts();
+
+  /**
+   * Returns the time spent by the successful allocations to obtain a channel, all key groups
+   * included.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  LatencyHistogram getAllocationWaitTimes();
+
+  /**
+   * Returns the duration of the successful APDU exchanges, all CSMs included.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  LatencyHistogram getApduExchangeLatencies();
+
+  /**
+   * Returns the number of failed APDU exchanges, all CSMs included.
+   *
+   * @return A positive long.
+   * @since 1.1.0
+   */
+  long getFailedApduExchangeCount();
+
+  /**
+   * Returns the metrics of each CSM, in discovery order.
+   *
+   * @return A not null list.
+   * @since 1.1.0
+   */
+  List<CsmMetrics> getCsmMetrics();
+
+  /**
+   * Returns the metrics of each key group.
+   *
+   * @return A not null map sorted by key group reference.
+   * @since 1.1.0
+   */
+  SortedMap<Integer, KeyGroupMetrics> getKeyGroupMetrics();
+
+  /**
+   * Distribution of durations.
+   *
+   * <p>Values are counted in logarithmic buckets: the returned percentiles have a relative error
+   * lower than 1/16.
+   *
+   * @since 1.1.0
+   */
+  interface LatencyHistogram {
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return A positive long.
+     * @since 1.1.0
+     */
+    long getCount();
+
+    /**
+     * Returns the mean of the recorded durations.
+     *
+     * @return 0 if no duration was recorded.
+     * @since 1.1.0
+     */
+    long getMeanNanos();
+
+    /**
+     * Returns the highest recorded duration.
+     *
+     * @return 0 if no duration was recorded.
+     * @since 1.1.0
+     */
+    long getMaxNanos();
+
+    /**
+     * Returns the duration below which the provided percentage of the recorded durations fall.
+     *
+     * @param percentile A percentage between 0 and 100 (e.g. 99.9).
+     * @return 0 if no duration was recorded.
+     * @throws IllegalArgumentException If the percentile is out of range.
+     * @since 1.1.0
+     */
+    long getValueAtPercentileNanos(double percentile);
+  }
+
+  /**
+   * Metrics of a CSM.
+   *
+   * @since 1.1.0
+   */
+  interface CsmMetrics {
+
+    /**
+     * Returns the name of the CSM.
+     *
+     * @return A not empty string.
+     * @since 1.1.0
+     */
+    String getName();
+
+    /**
+     * Returns the maximum number of channels of the CSM.
+     *
+     * @return 0 if unknown.
+     * @since 1.1.0
+     */
+    int getChannelsTotal();
+
+    /**
+     * Returns the number of channels allocated to readers.
+     *
+     * @return A positive int.
+     * @since 1.1.0
+     */
+    int getInUseChannels();
+
+    /**
+     * Returns the number of channels kept open by the pools and not allocated.
+     *
+     * @return A positive int.
+     * @since 1.1.0
+     */
+    int getIdleChannels();
+
+    /**
+     * Indicates if the CSM is used for the allocations, i.e. if its circuit breaker is closed.
+     *
+     * @return False if the CSM is considered as failing.
+     * @since 1.1.0
+     */
+    boolean isAvailable();
+
+    /**
+     * Returns the current adaptive limit of the APDU exchanges in progress on the CSM.
+     *
+     * @return 0 if the adaptive concurrency limit is disabled.
+     * @since 1.1.0
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * Returns the duration of the successful APDU exchanges.
+     *
+     * @return A not null reference.
+     * @since 1.1.0
+     */
+    LatencyHistogram getApduExchangeLatencies();
+
+    /**
+     * Returns the number of failed APDU exchanges.
+     *
+     * @return A positive long.
+     * @since 1.1.0
+     */
+    long getFailedApduExchangeCount();
+  }
+
+  /**
+   * Metrics of a key group.
+   *
+   * @since 1.1.0
+   */
+  interface KeyGroupMetrics {
+
+    /**
+     * Returns the key group reference.
+     *
+     * @return The reference.
+     * @since 1.1.0
+     */
+    int getKeyGroupReference();
+
+    /**
+     * Returns the number of channels of the key group allocated to readers.
+     *
+     * @return A positive int.
+     * @since 1.1.0
+     */
+    int getInUseChannels();
+
+    /**
+     * Returns the number of channels of the key group kept open and not allocated.
+     *
+     * @return A positive int.
+     * @since 1.1.0
+     */
+    int getIdleChannels();
+
+    /**
+     * Returns the number of channels of the key group parked for the caller that released them.
+     *
+     * @return A positive int.
+     * @since 1.1.0
+     */
+    int getParkedChannels();
+
+    /**
+     * Returns the number of readers of the key group allocated in shared mode, which share the
+     * channels counted by {@link #getInUseChannels()}.
+     *
+     * @return A positive int.
+     * @since 1.1.0
+     */
+    int getSharedReaders();
+
+    /**
+     * Returns the number of allocations currently waiting for a channel.
+     *
+     * @return A positive int.
+     * @since 1.1.0
+     */
+    int getWaitingAllocations();
+
+    /**
+     * Returns the number of successful reader allocations.
+     *
+     * @return A positive long.
+     * @since 1.1.0
+     */
+    long getAllocationCount();
+
+    /**
+     * Returns the number of released readers.
+     *
+     * @return A positive long.
+     * @since 1.1.0
+     */
+    long getReleaseCount();
+
+    /**
+     * Returns the number of reader allocations served by the channel parked for their caller,
+     * included in {@link #getAllocationCount()}.
+     *
+     * @return A positive long.
+     * @since 1.1.0
+     */
+    long getAffinityReuseCount();
+
+    /**
+     * Returns the number of reader allocations failed because no channel was available.
+     *
+     * @return A positive long.
+     * @since 1.1.0
+     */
+    long getUnavailableAllocationCount();
+
+    /**
+     * Returns the number of reader allocations failed because of an HSM error.
+     *
+     * @return A not null map of the counts by HSM result code.
+     * @since 1.1.0
+     */
+    Map<Integer, Long> getFailedAllocationCounts();
+
+    /**
+     * Returns the time spent by the successful allocations to obtain a channel.
+     *
+     * @return A not null reference.
+     * @since 1.1.0
+     */
+    LatencyHistogram getAllocationWaitTimes();
+  }
+}
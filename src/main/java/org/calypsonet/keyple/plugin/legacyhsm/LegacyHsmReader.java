@@ -1,5 +1,5 @@
 /* **************************************************************************************
- * Copyright (c) 2019 Calypso Networks Association https://calypsonet.org/
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
  *
  * See the NOTICE file(s) distributed with this work for additional information
  * regarding copyright ownership.
@@ -11,11 +11,100 @@
  ************************************************************************************** */
 package org.calypsonet.keyple.plugin.legacyhsm;
 
+import java.util.List;
+import java.util.concurrent.Future;
 import org.eclipse.keyple.core.common.KeypleReaderExtension;
+import org.eclipse.keyple.core.plugin.ReaderIOException;
 
 /**
  * Legacy HSM reader extension.
  *
  * @since 1.0.0
  */
-public interface LegacyHsmReader extends KeypleReaderExtension {}
+public interface LegacyHsmReader extends KeypleReaderExtension {
+
+  /**
+   * Transmits an APDU to the HSM and writes the response into the provided buffer, without
+   * allocating any intermediate array in the plugin.
+   *
+   * <p>Intended for high exchange rates, the buffer being reused from one call to the next. A
+   * buffer of 258 bytes from {@code offset} can hold any short APDU response.
+   *
+   * @param apduIn The APDU to send.
+   * @param apduOut The buffer receiving the response APDU.
+   * @param offset The position of the response in the buffer.
+   * @return The length of the response APDU written at {@code offset}, 0 if none.
+   * @throws IllegalArgumentException If an argument is null or if the offset is out of the buffer,
+   *     or if the response does not fit in the buffer (the response is then lost but the reader
+   *     remains usable).
+   * @throws ReaderIOException If an HSM error occurs.
+   * @since 1.1.0
+   */
+  int transmitApdu(byte[] apduIn, byte[] apduOut, int offset) throws ReaderIOException;
+
+  /**
+   * Transmits a sequence of APDUs to the HSM, such as the Digest Init, Digest Update and Digest
+   * Close commands of a secure session, in a single submission when the HSM allows it.
+   *
+   * <p>When {@code stopOnUnsuccessfulStatusWord} is set, the sequence stops after the first
+   * response whose status word is not 9000: the returned list is then shorter than the provided
+   * one, its last element being the unsuccessful response.
+   *
+   * @param apdusIn The APDUs to send, in order.
+   * @param stopOnUnsuccessfulStatusWord True to stop at the first unsuccessful response.
+   * @return A not null list of the responses of the exchanged APDUs, in order.
+   * @throws IllegalArgumentException If the list is null or contains a null APDU.
+   * @throws ReaderIOException If an HSM error occurs. The responses received before the error are
+   *     lost and the reader should be released.
+   * @since 1.1.0
+   */
+  List<byte[]> transmitApdus(List<byte[]> apdusIn, boolean stopOnUnsuccessfulStatusWord)
+      throws ReaderIOException;
+
+  /**
+   * Submits an APDU to the HSM without blocking the calling thread.
+   *
+   * <p>The exchange is executed by the bounded dispatcher of the CSM holding the channel (see
+   * {@link LegacyHsmPluginFactoryBuilder.Builder#useAsyncDispatch(int, int)}). The APDUs submitted
+   * to a reader are exchanged one at a time, in submission order; the reader must not be used for
+   * synchronous exchanges while asynchronous ones are pending.
+   *
+   * <p>The exchange fails with a {@code ReaderIOException} if an HSM error occurs, if the reader is
+   * released before its execution, or if the dispatcher of the CSM is saturated.
+   *
+   * @param apduIn The APDU to send.
+   * @param callback The callback notified of the outcome on a dispatcher thread, or on the calling
+   *     thread if the submission is rejected (null if not needed).
+   * @return A future giving the response APDU.
+   * @throws IllegalArgumentException If the APDU is null.
+   * @since 1.1.0
+   */
+  Future<byte[]> transmitApduAsync(byte[] apduIn, ApduCallback callback);
+
+  /**
+   * Receives the outcome of an asynchronous APDU exchange.
+   *
+   * <p>Implementations must return quickly since they are run by the threads exchanging the APDUs
+   * with the HSM.
+   *
+   * @since 1.1.0
+   */
+  interface ApduCallback {
+
+    /**
+     * Called when the response APDU is received.
+     *
+     * @param apduOut The response APDU.
+     * @since 1.1.0
+     */
+    void onResponse(byte[] apduOut);
+
+    /**
+     * Called when the exchange failed or was cancelled.
+     *
+     * @param exception The cause of the failure.
+     * @since 1.1.0
+     */
+    void onFailure(Exception exception);
+  }
+}
@@ -11,12 +11,21 @@
  ************************************************************************************** */
 package org.calypsonet.keyple.plugin.legacyhsm;
 
-import com.spirtech.csm.CsmChannel;
-import com.spirtech.csm.CsmException;
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.keyple.core.plugin.ReaderIOException;
 import org.eclipse.keyple.core.plugin.spi.reader.PoolReaderSpi;
+import org.eclipse.keyple.core.util.Assert;
 import org.eclipse.keyple.core.util.HexUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,101 +39,111 @@ final class LegacyHsmReaderAdapter implements LegacyHsmReader, PoolReaderSpi {
 
   private static final Logger logger = LoggerFactory.getLogger(LegacyHsmReaderAdapter.class);
 
+  /** Number of exchanges of the channel logged when an exchange fails. */
+  private static final int FAILURE_DUMP_RECORDS = 16;
+
   private final String name;
 
-  /** CsmChannel object from the Spirtech library */
-  private final CsmChannel csmChannel;
-
-  private boolean isPhysicalChannelOpen;
-
-  /** Virtual ATR */
-  private final byte[] atr = {
-    /* ISO header */
-    (byte) 0x3B,
-    (byte) 0x3F,
-    (byte) 0x96,
-    (byte) 0x00,
-    /* historical bytes */
-    (byte) 0x80,
-    (byte) 0x5A,
-    /* platform [6] */
-    (byte) 0x00,
-    /* Application type: SAM [7] */
-    (byte) 0x80,
-    /* Application subtype: C1 [8] */
-    (byte) 0xC1,
-    /* Software issuer Spirtech [9] */
-    (byte) 0x08,
-    /* Software version [10] */
-    (byte) 0x00,
-    /* Software revision [11] */
-    (byte) 0x00,
-    /* Serial number [12-15] */
-    (byte) 0x00,
-    (byte) 0x00,
-    (byte) 0x00,
-    (byte) 0x00,
-    /* ATR status */
-    (byte) 0x82,
-    (byte) 0x90,
-    (byte) 0x00
-  };
+  /** Channel object from the HSM backend */
+  private final HsmChannel channel;
+
+  /** The pooled channel wrapping the channel */
+  private final PooledChannel pooledChannel;
+
+  /** The pool the channel is given back to when the reader is released */
+  private final ChannelPool channelPool;
+
+  /** The channels shared by the reader if allocated in shared mode, null otherwise */
+  private final MultiplexedChannel multiplexedChannel;
+
+  private volatile boolean isPhysicalChannelOpen;
+
+  /** Set when the channel raised an error, to prevent its reuse by another reader */
+  private volatile boolean isChannelFailed;
+
+  /** Asynchronous APDUs waiting for their exchange, in submission order */
+  private final Queue<AsyncApdu> pendingApdus = new ConcurrentLinkedQueue<AsyncApdu>();
+
+  private final AtomicInteger pendingApduCount = new AtomicInteger();
+
+  /** Set while a dispatcher thread is exchanging the pending APDUs */
+  private final AtomicBoolean isDispatching = new AtomicBoolean();
+
+  private final Runnable pendingApduDrainer = new PendingApduDrainer();
+
+  /** Prevents the release of the channel during an exchange */
+  private final Object exchangeLock = new Object();
+
+  /** Identity of the CSM holding the channel */
+  private final CsmDescriptor csmDescriptor;
+
+  /** Capture of the workload of the plugin, null if disabled */
+  private final WorkloadRecorder workloadRecorder;
+
+  /** Number of the session of this reader in the workload capture */
+  private final int workloadSession;
 
   /**
    * This constructor should only be called by allocateReader from {@link LegacyHsmPluginAdapter}
    *
-   * @param csmChannel the {@link CsmChannel}
+   * <p>The identity of the reader comes from the {@link CsmDescriptor} of the CSM, so that no
+   * request is sent to the HSM.
+   *
+   * @param pooledChannel the {@link PooledChannel} wrapping the {@link HsmChannel}
+   * @param channelPool the {@link ChannelPool} from which the channel has been acquired
+   * @param workloadRecorder the {@link WorkloadRecorder} capturing the exchanges of the reader,
+   *     null if the capture is disabled
    * @since 1.0.0
    */
-  LegacyHsmReaderAdapter(CsmChannel csmChannel) throws CsmException {
-    this.name =
-        csmChannel.getCsm().toString()
-            + " Ch. #"
-            + csmChannel.getId()
-            + " "
-            + System.currentTimeMillis();
-    this.csmChannel = csmChannel;
+  LegacyHsmReaderAdapter(
+      PooledChannel pooledChannel, ChannelPool channelPool, WorkloadRecorder workloadRecorder) {
+    HsmChannel channel = pooledChannel.getChannel();
+    this.csmDescriptor = pooledChannel.getCsmNode().getDescriptor();
+    this.name = csmDescriptor.nextReaderName(channel.getId());
+    this.channel = channel;
+    this.pooledChannel = pooledChannel;
+    this.channelPool = channelPool;
+    this.multiplexedChannel =
+        channel instanceof MultiplexedChannel ? (MultiplexedChannel) channel : null;
     this.isPhysicalChannelOpen = true;
-    // fill virtual ATR with CSM infos
-    // version
-    this.atr[10] = (byte) csmChannel.getCsm().getInfos().fCsmVersion;
-    // serial number
-    this.atr[12] = (byte) (csmChannel.getCsm().getInfos().fSerialNumber >> 24);
-    this.atr[13] = (byte) (csmChannel.getCsm().getInfos().fSerialNumber >> 16);
-    this.atr[14] = (byte) (csmChannel.getCsm().getInfos().fSerialNumber >> 8);
-    this.atr[15] = (byte) csmChannel.getCsm().getInfos().fSerialNumber;
+    this.workloadRecorder = workloadRecorder;
+    this.workloadSession =
+        workloadRecorder != null
+            ? workloadRecorder.startSession(channelPool.getKeyGroupReference())
+            : 0;
     if (logger.isTraceEnabled()) {
-      ByteArrayOutputStream os = new ByteArrayOutputStream();
-      PrintStream ps = new PrintStream(os);
-      csmChannel.getInfo().dump("", ps);
-      if (logger.isTraceEnabled()) {
-        logger.trace(
-            "Creation of a HSM SAM reader. CSMCHANNEL = {}, VIRTUAL ATR = {}",
-            os.toString().replaceAll("\\n|[\\s]{1,20}", " "),
-            HexUtil.toHex(atr));
-      }
+      logger.trace(
+          "Creation of a HSM SAM reader. CSMCHANNEL = {}, VIRTUAL ATR = {}",
+          channel.describe().replaceAll("\\n|[\\s]{1,20}", " "),
+          csmDescriptor.getAtrHex());
     }
   }
 
   /**
-   * Release the current CsmChannel.
+   * Release the current channel.
    *
-   * <p>Since the {@link CsmChannel} is released, this reader is unusable after this method has been
-   * called.
+   * <p>The {@link HsmChannel} is given back to its {@link ChannelPool}, which keeps it open for a
+   * next allocation unless an error occurred on it. In any case, this reader is unusable after this
+   * method has been called.
    *
-   * @throws ReaderIOException if an {@link CsmException} occurs
+   * @throws ReaderIOException if an {@link HsmException} occurs
    * @since 1.0.0
    */
   void freeReaderChannel() throws ReaderIOException {
     if (logger.isTraceEnabled()) {
       logger.trace("Free reader channel request.");
     }
-    if (csmChannel != null) {
-      try {
-        csmChannel.close();
+    synchronized (exchangeLock) {
+      if (channel != null && isPhysicalChannelOpen) {
         isPhysicalChannelOpen = false;
-      } catch (CsmException e) {
-        throw new ReaderIOException(e.getMessage(), e);
+        if (workloadRecorder != null) {
+          workloadRecorder.endSession(workloadSession);
+        }
+        try {
+          channelPool.release(pooledChannel, !isChannelFailed);
+        } catch (HsmException e) {
+          throw new ReaderIOException(e.getMessage(), e);
+        }
       }
     }
   }
@@ -142,8 +161,8 @@ public String getName() {
   /**
    * {@inheritDoc}
    *
-   * <p>Do not nothing since the physical channel opening is implicit through the CsmChannel
-   * allocation process.
+   * <p>Do not nothing since the physical channel opening is implicit through the channel allocation
+   * process.
    *
    * @since 1.0.0
    */
@@ -157,7 +176,7 @@ public void openPhysicalChannel() {
   /**
    * {@inheritDoc}
    *
-   * <p>Do not nothing since the physical channel closing is implicit through the CsmChannel
+   * <p>Do not nothing since the physical channel closing is implicit through the channel
    * de-allocation process.
    *
    * @since 1.0.0
@@ -182,6 +201,9 @@ public boolean isPhysicalChannelOpen() {
   /**
    * {@inheritDoc}
    *
+   * <p>The SAM is reported as absent once the channel has failed or has been released, so that the
+   * card resource service stops using this reader.
+   *
    * @since 1.0.0
    */
   @Override
@@ -189,7 +211,7 @@ public boolean checkCardPresence() {
     if (logger.isTraceEnabled()) {
       logger.trace("Check card presence requested.");
     }
-    return true;
+    return isPhysicalChannelOpen && !isChannelFailed;
   }
 
   /**
@@ -199,7 +221,7 @@ public boolean checkCardPresence() {
    */
   @Override
   public String getPowerOnData() {
-    String powerOnData = HexUtil.toHex(atr);
+    String powerOnData = csmDescriptor.getAtrHex();
     if (logger.isTraceEnabled()) {
       logger.trace("Get power on requested. ATR = {}", powerOnData);
     }
@@ -213,22 +235,399 @@ public String getPowerOnData() {
    */
   @Override
   public byte[] transmitApdu(byte[] apduIn) throws ReaderIOException {
+    synchronized (exchangeLock) {
+      checkNotReleased();
+      return exchangeApdu(apduIn);
+    }
+  }
+
+  /**
+   * Exchanges an APDU, {@link #exchangeLock} being held.
+   *
+   * @param apduIn The APDU command.
+   * @return The APDU response.
+   * @throws ReaderIOException If the exchange fails.
+   */
+  private byte[] exchangeApdu(byte[] apduIn) throws ReaderIOException {
     if (logger.isTraceEnabled()) {
       logger.trace("APDU_REQ = {}", HexUtil.toHex(apduIn));
     }
     byte[] apduOut;
+    CsmNode csmNode = pooledChannel.getCsmNode();
+    ConcurrencyLimiter concurrencyLimiter = csmNode.getConcurrencyLimiter();
+    PooledChannel exchangeChannel = takeExchangeChannel();
+    HsmChannel hsmChannel = exchangeChannel.getChannel();
+    boolean isFailed = false;
     try {
-      apduOut = csmChannel.apduExchange(apduIn);
-      if (logger.isTraceEnabled()) {
-        logger.trace("APDU_RSP = {}", HexUtil.toHex(apduOut));
+      acquireExchangeSlot(concurrencyLimiter);
+      long startTime = System.nanoTime();
+      try {
+        apduOut = hsmChannel.exchangeApdu(apduIn);
+        long latency = System.nanoTime() - startTime;
+        csmNode.recordLatency(latency);
+        csmNode
+            .getFlightRecorder()
+            .record(
+                startTime,
+                latency,
+                hsmChannel.getId(),
+                apduIn,
+                apduOut,
+                0,
+                apduOut == null ? 0 : apduOut.length);
+        if (workloadRecorder != null) {
+          workloadRecorder.recordApdu(
+              workloadSession,
+              startTime,
+              latency,
+              apduIn,
+              apduOut == null ? 0 : StatusWord.of(apduOut, 0, apduOut.length));
+        }
+        csmNode.getCircuitBreaker().onSuccess();
+        if (logger.isTraceEnabled()) {
+          logger.trace("APDU_RSP = {}", HexUtil.toHex(apduOut));
+        }
+      } catch (HsmException e) {
+        isFailed = true;
+        throw onExchangeFailed(e, hsmChannel, apduIn, startTime);
+      } finally {
+        concurrencyLimiter.release(apduIn, System.nanoTime() - startTime, isFailed);
       }
-    } catch (CsmException e) {
+    } finally {
+      giveBackExchangeChannel(exchangeChannel, isFailed);
+    }
+    return apduOut == null ? null : apduOut.clone();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int transmitApdu(byte[] apduIn, byte[] apduOut, int offset) throws ReaderIOException {
+    synchronized (exchangeLock) {
+      checkNotReleased();
+      return exchangeApdu(apduIn, apduOut, offset);
+    }
+  }
+
+  /**
+   * Exchanges an APDU into the provided buffer, {@link #exchangeLock} being held.
+   *
+   * @param apduIn The APDU command.
+   * @param apduOut The buffer receiving the APDU response.
+   * @param offset The position of the response in the buffer.
+   * @return The length of the response.
+   * @throws ReaderIOException If the exchange fails.
+   */
+  private int exchangeApdu(byte[] apduIn, byte[] apduOut, int offset) throws ReaderIOException {
+    // checked without Assert to avoid the boxing of the offset
+    if (apduIn == null || apduOut == null || offset < 0 || offset > apduOut.length) {
+      throw new IllegalArgumentException(
+          "Null APDU or buffer, or offset out of the buffer: " + offset);
+    }
+    if (logger.isTraceEnabled()) {
+      logger.trace("APDU_REQ = {}", HexUtil.toHex(apduIn));
+    }
+    CsmNode csmNode = pooledChannel.getCsmNode();
+    ConcurrencyLimiter concurrencyLimiter = csmNode.getConcurrencyLimiter();
+    int length;
+    PooledChannel exchangeChannel = takeExchangeChannel();
+    HsmChannel hsmChannel = exchangeChannel.getChannel();
+    boolean isFailed = false;
+    try {
+      acquireExchangeSlot(concurrencyLimiter);
+      long startTime = System.nanoTime();
+      try {
+        length = hsmChannel.exchangeApdu(apduIn, apduOut, offset);
+        long latency = System.nanoTime() - startTime;
+        csmNode.recordLatency(latency);
+        csmNode
+            .getFlightRecorder()
+            .record(startTime, latency, hsmChannel.getId(), apduIn, apduOut, offset, length);
+        if (workloadRecorder != null) {
+          workloadRecorder.recordApdu(
+              workloadSession, startTime, latency, apduIn, StatusWord.of(apduOut, offset, length));
+        }
+        csmNode.getCircuitBreaker().onSuccess();
+      } catch (HsmException e) {
+        isFailed = true;
+        throw onExchangeFailed(e, hsmChannel, apduIn, startTime);
+      } catch (IndexOutOfBoundsException e) {
+        csmNode.getCircuitBreaker().onSuccess();
+        throw new IllegalArgumentException(
+            "The response APDU does not fit in the buffer from offset " + offset + ".", e);
+      } finally {
+        concurrencyLimiter.release(apduIn, System.nanoTime() - startTime, isFailed);
+      }
+    } finally {
+      giveBackExchangeChannel(exchangeChannel, isFailed);
+    }
+    if (logger.isTraceEnabled()) {
+      logger.trace(
+          "APDU_RSP = {}", HexUtil.toHex(Arrays.copyOfRange(apduOut, offset, offset + length)));
+    }
+    return length;
+  }
+
+  /**
+   * Checks that the reader has not been released, its channel being possibly used by another reader
+   * since then. Must be called with {@link #exchangeLock} held.
+   *
+   * @throws ReaderIOException If the reader has been released.
+   */
+  private void checkNotReleased() throws ReaderIOException {
+    if (!isPhysicalChannelOpen) {
+      throw new ReaderIOException("The reader " + name + " has been released.");
+    }
+  }
+
+  /**
+   * Returns the channel of the next exchange: the channel of the reader, or a channel borrowed from
+   * the shared channels of its CSM if it is allocated in shared mode.
+   *
+   * <p>A shared channel not available within the wait time of the {@link MultiplexedChannel} is not
+   * an HSM failure: it is neither reported to the CSM nor does it make the reader unusable.
+   *
+   * @return A not null reference.
+   * @throws ReaderIOException If no shared channel could be obtained.
+   */
+  private PooledChannel takeExchangeChannel() throws ReaderIOException {
+    if (multiplexedChannel == null) {
+      return pooledChannel;
+    }
+    PooledChannel borrowedChannel;
+    try {
+      borrowedChannel = multiplexedChannel.borrow();
+    } catch (HsmException e) {
+      // already reported to the CSM by the pool
       throw new ReaderIOException(
           String.format(
-              "CsmException raised while doing apduExchange. result=%02X (%s)",
-              e.getCode(), e.getMessage()));
+              "Unable to open a shared channel. result=%02X (%s)", e.getCode(), e.getMessage()),
+          e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ReaderIOException("Interrupted while waiting for a shared channel.", e);
+    }
+    if (borrowedChannel == null) {
+      throw new ReaderIOException(
+          "No shared channel available on CSM " + pooledChannel.getCsmNode() + ".");
+    }
+    return borrowedChannel;
+  }
+
+  /**
+   * Waits for the concurrency limiter of the CSM to let an exchange start.
+   *
+   * <p>As for the shared channels, a limit not released in time is not an HSM failure.
+   *
+   * @param concurrencyLimiter The limiter of the CSM.
+   * @throws ReaderIOException If no exchange slot became available within the maximum waiting time.
+   */
+  private void acquireExchangeSlot(ConcurrencyLimiter concurrencyLimiter) throws ReaderIOException {
+    try {
+      if (!concurrencyLimiter.acquire()) {
+        throw new ReaderIOException(
+            "No exchange slot available on CSM "
+                + pooledChannel.getCsmNode()
+                + " after waiting "
+                + concurrencyLimiter.getMaxWaitMillis()
+                + " ms.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ReaderIOException("Interrupted while waiting for an exchange slot.", e);
+    }
+  }
+
+  /**
+   * Gives back the channel of an exchange borrowed from the shared channels.
+   *
+   * @param exchangeChannel The channel returned by {@link #takeExchangeChannel()}.
+   * @param isFailed True if an HSM error occurred on the channel.
+   */
+  private void giveBackExchangeChannel(PooledChannel exchangeChannel, boolean isFailed) {
+    if (exchangeChannel != pooledChannel) {
+      multiplexedChannel.giveBack(exchangeChannel, !isFailed);
+    }
+  }
+
+  /**
+   * Records a failed exchange: the channel will not be reused and the failure is reported to the
+   * CSM.
+   *
+   * <p>The last exchanges of the channel are logged from the flight recorder of the CSM. A reader
+   * allocated in shared mode remains usable, the failed channel being only removed from the shared
+   * channels.
+   *
+   * @param e The HSM exception.
+   * @param hsmChannel The channel of the exchange.
+   * @param apduIn The command, null if unknown.
+   * @param startTime The {@link System#nanoTime()} at the beginning of the exchange.
+   * @return The exception to be thrown to the caller.
+   */
+  private ReaderIOException onExchangeFailed(
+      HsmException e, HsmChannel hsmChannel, byte[] apduIn, long startTime) {
+    if (multiplexedChannel == null) {
+      isChannelFailed = true;
+    }
+    CsmNode csmNode = pooledChannel.getCsmNode();
+    csmNode.onExchangeFailed();
+    csmNode.getCircuitBreaker().onFailure();
+    long latency = System.nanoTime() - startTime;
+    ApduFlightRecorder flightRecorder = csmNode.getFlightRecorder();
+    flightRecorder.recordError(startTime, latency, hsmChannel.getId(), apduIn, e.getCode());
+    if (workloadRecorder != null && apduIn != null) {
+      workloadRecorder.recordApdu(workloadSession, startTime, latency, apduIn, 0);
+    }
+    if (flightRecorder.getCapacity() != 0 && logger.isWarnEnabled()) {
+      StringBuilder sb = new StringBuilder();
+      flightRecorder.dump(sb, hsmChannel.getId(), FAILURE_DUMP_RECORDS);
+      logger.warn("Last APDU exchanges of reader {}:\n{}", name, sb);
+    }
+    return new ReaderIOException(
+        String.format(
+            "HSM exception raised while doing apduExchange. result=%02X (%s)",
+            e.getCode(), e.getMessage()));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public List<byte[]> transmitApdus(List<byte[]> apdusIn, boolean stopOnUnsuccessfulStatusWord)
+      throws ReaderIOException {
+    synchronized (exchangeLock) {
+      checkNotReleased();
+      return exchangeApdus(apdusIn, stopOnUnsuccessfulStatusWord);
+    }
+  }
+
+  /**
+   * Exchanges a sequence of APDUs, {@link #exchangeLock} being held.
+   *
+   * @param apdusIn The APDU commands.
+   * @param stopOnUnsuccessfulStatusWord True to stop after the first unsuccessful status word.
+   * @return The APDU responses.
+   * @throws ReaderIOException If an exchange fails.
+   */
+  private List<byte[]> exchangeApdus(List<byte[]> apdusIn, boolean stopOnUnsuccessfulStatusWord)
+      throws ReaderIOException {
+    Assert.getInstance().notNull(apdusIn, "apdusIn");
+    for (byte[] apduIn : apdusIn) {
+      Assert.getInstance().notNull(apduIn, "apduIn");
+    }
+    if (logger.isTraceEnabled()) {
+      for (byte[] apduIn : apdusIn) {
+        logger.trace("APDU_REQ = {}", HexUtil.toHex(apduIn));
+      }
+    }
+    List<byte[]> apdusOut;
+    CsmNode csmNode = pooledChannel.getCsmNode();
+    ConcurrencyLimiter concurrencyLimiter = csmNode.getConcurrencyLimiter();
+    PooledChannel exchangeChannel = takeExchangeChannel();
+    HsmChannel hsmChannel = exchangeChannel.getChannel();
+    boolean isFailed = false;
+    try {
+      // the batch takes a single exchange slot, its commands being sent one at a time; the latency
+      // of a batch of several commands is not compared to the baseline of a single command
+      acquireExchangeSlot(concurrencyLimiter);
+      long startTime = System.nanoTime();
+      try {
+        apdusOut = hsmChannel.exchangeApdus(apdusIn, stopOnUnsuccessfulStatusWord);
+        if (!apdusOut.isEmpty()) {
+          // the exchanges of a batch are accounted for with their average duration
+          long latency = (System.nanoTime() - startTime) / apdusOut.size();
+          for (int i = 0; i < apdusOut.size(); i++) {
+            csmNode.recordLatency(latency);
+            byte[] apduOut = apdusOut.get(i);
+            csmNode
+                .getFlightRecorder()
+                .record(
+                    startTime + i * latency,
+                    latency,
+                    hsmChannel.getId(),
+                    apdusIn.get(i),
+                    apduOut,
+                    0,
+                    apduOut == null ? 0 : apduOut.length);
+            if (workloadRecorder != null) {
+              workloadRecorder.recordApdu(
+                  workloadSession,
+                  startTime + i * latency,
+                  latency,
+                  apdusIn.get(i),
+                  apduOut == null ? 0 : StatusWord.of(apduOut, 0, apduOut.length));
+            }
+          }
+        }
+        csmNode.getCircuitBreaker().onSuccess();
+      } catch (HsmException e) {
+        isFailed = true;
+        // the failing command of the batch is unknown
+        throw onExchangeFailed(e, hsmChannel, null, startTime);
+      } finally {
+        concurrencyLimiter.release(
+            apdusIn.size() == 1 ? apdusIn.get(0) : null, System.nanoTime() - startTime, isFailed);
+      }
+    } finally {
+      giveBackExchangeChannel(exchangeChannel, isFailed);
+    }
+    if (logger.isTraceEnabled()) {
+      for (byte[] apduOut : apdusOut) {
+        logger.trace("APDU_RSP = {}", HexUtil.toHex(apduOut));
+      }
+    }
+    return apdusOut;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public Future<byte[]> transmitApduAsync(byte[] apduIn, ApduCallback callback) {
+    Assert.getInstance().notNull(apduIn, "apduIn");
+    AsyncApdu asyncApdu = new AsyncApdu(new AsyncExchange(apduIn), callback);
+    ApduDispatcher apduDispatcher = pooledChannel.getCsmNode().getApduDispatcher();
+    if (pendingApduCount.incrementAndGet() > apduDispatcher.getQueueCapacity()) {
+      pendingApduCount.decrementAndGet();
+      asyncApdu.fail(new ReaderIOException("Too many APDUs pending on reader " + name + "."));
+      return asyncApdu;
+    }
+    pendingApdus.offer(asyncApdu);
+    if (isDispatching.compareAndSet(false, true)) {
+      try {
+        apduDispatcher.execute(pendingApduDrainer);
+      } catch (RejectedExecutionException e) {
+        isDispatching.set(false);
+        failPendingApdus(
+            new ReaderIOException(
+                "Unable to dispatch the APDU on CSM "
+                    + pooledChannel.getCsmNode()
+                    + ": "
+                    + e.getMessage(),
+                e));
+      }
+    }
+    return asyncApdu;
+  }
+
+  /**
+   * Fails all the pending asynchronous APDUs.
+   *
+   * @param exception The cause.
+   */
+  private void failPendingApdus(Exception exception) {
+    AsyncApdu asyncApdu;
+    while ((asyncApdu = pendingApdus.poll()) != null) {
+      pendingApduCount.decrementAndGet();
+      asyncApdu.fail(exception);
     }
-    return apduOut == null ? null : apduOut.clone();
   }
 
   /**
@@ -254,13 +653,93 @@ public void onUnregister() {
   /**
    * {@inheritDoc}
    *
-   * <p>Note: being agnostic to the type of card extension used by the ticketing layer, it is here
-   * not possible to automatically select the card when allocating the reader.
+   * <p>Note: being agnostic to the type of card extension used by the ticketing layer, the plugin
+   * returns the SAM image built once per CSM by the {@link
+   * LegacyHsmPluginFactoryBuilder.SelectedSamFactory} if provided, the same instance being returned
+   * by all the readers of the CSM. Otherwise, it is here not possible to automatically select the
+   * card when allocating the reader.
    *
    * @since 1.0.1
    */
   @Override
   public Object getSelectedSmartCard() {
-    return null;
+    return csmDescriptor.getSelectedSam();
+  }
+
+  /** Exchanges an asynchronous APDU if the reader is still allocated. */
+  private final class AsyncExchange implements Callable<byte[]> {
+
+    private final byte[] apduIn;
+
+    private AsyncExchange(byte[] apduIn) {
+      this.apduIn = apduIn;
+    }
+
+    @Override
+    public byte[] call() throws ReaderIOException {
+      return transmitApdu(apduIn);
+    }
+  }
+
+  /** Exchanges the pending asynchronous APDUs in submission order, on a dispatcher thread. */
+  private final class PendingApduDrainer implements Runnable {
+
+    @Override
+    public void run() {
+      do {
+        AsyncApdu asyncApdu;
+        while ((asyncApdu = pendingApdus.poll()) != null) {
+          pendingApduCount.decrementAndGet();
+          asyncApdu.run();
+          // clears the interrupt left by the cancellation of the APDU, not to fail the next ones
+          Thread.interrupted();
+        }
+        isDispatching.set(false);
+        // an APDU may have been submitted after the last poll without scheduling a drain
+      } while (!pendingApdus.isEmpty() && isDispatching.compareAndSet(false, true));
+    }
+  }
+
+  /** Asynchronous APDU notifying its callback when completed. */
+  private static final class AsyncApdu extends FutureTask<byte[]> {
+
+    private final ApduCallback callback;
+
+    private AsyncApdu(Callable<byte[]> exchange, ApduCallback callback) {
+      super(exchange);
+      this.callback = callback;
+    }
+
+    private void fail(Exception exception) {
+      setException(exception);
+    }
+
+    @Override
+    protected void done() {
+      if (callback == null) {
+        return;
+      }
+      try {
+        byte[] apduOut;
+        try {
+          apduOut = get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          callback.onFailure(cause instanceof Exception ? (Exception) cause : e);
+          return;
+        } catch (CancellationException e) {
+          callback.onFailure(e);
+          return;
+        } catch (InterruptedException e) {
+          // not expected since the task is completed
+          Thread.currentThread().interrupt();
+          callback.onFailure(e);
+          return;
+        }
+        callback.onResponse(apduOut);
+      } catch (RuntimeException e) {
+        logger.error("Exception raised by an APDU callback.", e);
+      }
+    }
   }
 }
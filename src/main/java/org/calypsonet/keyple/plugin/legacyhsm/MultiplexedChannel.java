@@ -0,0 +1,328 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Channel shared by the readers allocated in shared mode on a CSM, multiplexing their exchanges
+ * over a small set of channels of the key group.
+ *
+ * <p>Each exchange borrows an idle channel of the set for its duration only ({@link #borrow()},
+ * {@link #giveBack(PooledChannel, boolean)}), so that the stateless commands of many readers are
+ * serialized over at most {@code maxChannels} channels. The set grows on demand up to this maximum
+ * as long as the {@link ChannelPool} allows it, and its channels go back to the pool when the last
+ * reader sharing it is released. A channel failing an exchange is closed and leaves the set.
+ *
+ * @since 1.1.0
+ */
+final class MultiplexedChannel implements HsmChannel {
+
+  private static final Logger logger = LoggerFactory.getLogger(MultiplexedChannel.class);
+
+  /** Identifier of the shared channels, distinct from the identifiers given by the HSM. */
+  static final int SHARED_CHANNEL_ID = 0;
+
+  /** Maximum time an exchange waits for a channel when the set has none and cannot grow. */
+  private static final long NO_CHANNEL_WAIT_MILLIS = 1000;
+
+  /** Period at which an exchange waiting for a channel retries to grow the set. */
+  private static final long RETRY_PERIOD_MILLIS = 100;
+
+  private static final String UNSUPPORTED_EXCHANGE =
+      "The exchanges of the shared readers are performed on borrowed channels.";
+
+  private final ChannelPool channelPool;
+  private final CsmNode csmNode;
+  private final int maxChannels;
+
+  /** Channels of the set not currently exchanging. */
+  private final LinkedBlockingDeque<PooledChannel> idleChannels =
+      new LinkedBlockingDeque<PooledChannel>();
+
+  /** Channels of the set, idle or exchanging. */
+  private final AtomicInteger channelCount = new AtomicInteger();
+
+  /** Readers sharing the set. */
+  private final AtomicInteger readerCount = new AtomicInteger();
+
+  /**
+   * Creates an empty set of shared channels.
+   *
+   * @param channelPool The pool of the key group providing the channels.
+   * @param csmNode The CSM of the channels.
+   * @param maxChannels The maximum number of channels of the set.
+   * @since 1.1.0
+   */
+  MultiplexedChannel(ChannelPool channelPool, CsmNode csmNode, int maxChannels) {
+    this.channelPool = channelPool;
+    this.csmNode = csmNode;
+    this.maxChannels = maxChannels;
+  }
+
+  /**
+   * Adds a reader sharing the set, if the set holds at least one channel.
+   *
+   * @return False if the set is empty.
+   * @since 1.1.0
+   */
+  boolean addReader() {
+    if (channelCount.get() == 0) {
+      return false;
+    }
+    readerCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Adds a reader sharing the set with the channel allocated for it.
+   *
+   * @param pooledChannel The channel, allocated from the pool on the CSM of the set.
+   * @since 1.1.0
+   */
+  void addReader(PooledChannel pooledChannel) {
+    readerCount.incrementAndGet();
+    channelCount.incrementAndGet();
+    giveBack(pooledChannel, true);
+  }
+
+  /**
+   * Removes a reader sharing the set; the channels go back to the pool with the last reader.
+   *
+   * @since 1.1.0
+   */
+  void removeReader() {
+    if (readerCount.decrementAndGet() == 0) {
+      close();
+    }
+  }
+
+  /**
+   * Returns the number of readers sharing the set.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getReaderCount() {
+    return readerCount.get();
+  }
+
+  /**
+   * Returns the number of channels of the set.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  int getChannelCount() {
+    return channelCount.get();
+  }
+
+  /**
+   * Takes an idle channel of the set for an exchange, or a new channel from the pool if the set can
+   * grow, waiting for a channel of the set to become idle otherwise.
+   *
+   * <p>The channel must be given back with {@link #giveBack(PooledChannel, boolean)} at the end of
+   * the exchange.
+   *
+   * @return Null if the set has no channel and none could be obtained from the pool.
+   * @throws HsmException If the HSM backend failed to open a new channel.
+   * @throws InterruptedException If the caller is interrupted while waiting.
+   * @since 1.1.0
+   */
+  PooledChannel borrow() throws HsmException, InterruptedException {
+    long deadline = 0;
+    while (true) {
+      PooledChannel pooledChannel = idleChannels.pollFirst();
+      if (pooledChannel != null) {
+        return pooledChannel;
+      }
+      if (reserveChannel()) {
+        try {
+          pooledChannel = channelPool.acquireSharedChannel(csmNode);
+        } finally {
+          if (pooledChannel == null) {
+            channelCount.decrementAndGet();
+          }
+        }
+        if (pooledChannel != null) {
+          return pooledChannel;
+        }
+      }
+      if (channelCount.get() == 0) {
+        long now = System.currentTimeMillis();
+        if (deadline == 0) {
+          deadline = now + NO_CHANNEL_WAIT_MILLIS;
+        } else if (now >= deadline) {
+          return null;
+        }
+      }
+      pooledChannel = idleChannels.pollFirst(RETRY_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+      if (pooledChannel != null) {
+        return pooledChannel;
+      }
+    }
+  }
+
+  /**
+   * Increments the number of channels of the set if the maximum is not reached.
+   *
+   * @return False if the set is full.
+   */
+  private boolean reserveChannel() {
+    while (true) {
+      int current = channelCount.get();
+      if (current >= maxChannels) {
+        return false;
+      }
+      if (channelCount.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Puts back a borrowed channel in the set, or gives it back to the pool if it failed, if no
+   * reader shares the set anymore or if the set exceeds its maximum.
+   *
+   * @param pooledChannel The channel.
+   * @param isReusable False if an error occurred on the channel.
+   * @since 1.1.0
+   */
+  void giveBack(PooledChannel pooledChannel, boolean isReusable) {
+    if (isReusable && readerCount.get() != 0 && channelCount.get() <= maxChannels) {
+      idleChannels.offerFirst(pooledChannel);
+      // the last reader may have been removed meanwhile
+      if (readerCount.get() != 0 || !idleChannels.remove(pooledChannel)) {
+        return;
+      }
+    }
+    channelCount.decrementAndGet();
+    release(pooledChannel, isReusable);
+  }
+
+  /**
+   * Gives back a channel of the set to the pool, catching and logging the possible errors.
+   *
+   * @param pooledChannel The channel.
+   * @param isReusable False if an error occurred on the channel.
+   */
+  private void release(PooledChannel pooledChannel, boolean isReusable) {
+    try {
+      channelPool.releaseChannel(pooledChannel, isReusable);
+    } catch (HsmException e) {
+      logger.error(
+          "Unable to close the channel #{} of key group {}. result={} ({})",
+          pooledChannel.getChannel().getId(),
+          channelPool.getKeyGroupReference(),
+          e.getCode(),
+          e.getMessage());
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int getId() {
+    return SHARED_CHANNEL_ID;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Not supported: the exchanges are performed on the channels borrowed with {@link #borrow()}.
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public byte[] exchangeApdu(byte[] apduIn) {
+    throw new UnsupportedOperationException(UNSUPPORTED_EXCHANGE);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Not supported: the exchanges are performed on the channels borrowed with {@link #borrow()}.
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public int exchangeApdu(byte[] apduIn, byte[] apduOut, int offset) {
+    throw new UnsupportedOperationException(UNSUPPORTED_EXCHANGE);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Not supported: the exchanges are performed on the channels borrowed with {@link #borrow()}.
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public List<byte[]> exchangeApdus(List<byte[]> apdusIn, boolean stopOnUnsuccessfulStatusWord) {
+    throw new UnsupportedOperationException(UNSUPPORTED_EXCHANGE);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Does nothing: the borrowed channels are reset by the pool when they leave the set.
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public void reset() {
+    // nothing to reset, see ChannelPool#recycle
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Gives back the idle channels of the set to the pool, the channels exchanging being given
+   * back at the end of their exchange if no reader shares the set anymore.
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public void close() {
+    PooledChannel pooledChannel;
+    while (readerCount.get() == 0 && (pooledChannel = idleChannels.pollFirst()) != null) {
+      channelCount.decrementAndGet();
+      release(pooledChannel, true);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String describe() {
+    return "Shared channel of key group "
+        + channelPool.getKeyGroupReference()
+        + " on CSM "
+        + csmNode
+        + ": "
+        + channelCount.get()
+        + " channel(s), "
+        + readerCount.get()
+        + " reader(s)";
+  }
+}
@@ -0,0 +1,203 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Snapshot of the metrics of the plugin.
+ *
+ * @since 1.1.0
+ */
+final class PluginMetricsAdapter implements LegacyHsmPluginMetrics {
+
+  private final long timestamp;
+  private final List<CsmMetrics> csmMetrics;
+  private final SortedMap<Integer, KeyGroupMetrics> keyGroupMetrics;
+  private final long allocationCount;
+  private final long releaseCount;
+  private final long unavailableAllocationCount;
+  private final Map<Integer, Long> failedAllocationCounts;
+  private final LatencyHistogramAdapter allocationWaitTimes = new LatencyHistogramAdapter();
+  private final LatencyHistogramAdapter apduExchangeLatencies = new LatencyHistogramAdapter();
+  private long failedApduExchangeCount;
+
+  /**
+   * Takes a snapshot of the provided CSMs, key group pools and plugin statistics.
+   *
+   * @param csmNodes The CSMs.
+   * @param channelPools The pools of the key groups.
+   * @param statistics The allocation statistics of all the key groups, including the removed ones.
+   * @since 1.1.0
+   */
+  PluginMetricsAdapter(
+      Collection<CsmNode> csmNodes,
+      Collection<ChannelPool> channelPools,
+      KeyGroupStatistics statistics) {
+    timestamp = System.currentTimeMillis();
+    List<CsmMetrics> csms = new ArrayList<CsmMetrics>(csmNodes.size());
+    for (CsmNode csmNode : csmNodes) {
+      CsmMetricsAdapter csm = new CsmMetricsAdapter(csmNode);
+      csms.add(csm);
+      apduExchangeLatencies.add(csm.getApduExchangeLatencies());
+      failedApduExchangeCount += csm.getFailedApduExchangeCount();
+    }
+    SortedMap<Integer, KeyGroupMetrics> keyGroups = new TreeMap<Integer, KeyGroupMetrics>();
+    for (ChannelPool channelPool : channelPools) {
+      KeyGroupMetricsAdapter keyGroup = new KeyGroupMetricsAdapter(channelPool);
+      keyGroups.put(keyGroup.getKeyGroupReference(), keyGroup);
+    }
+    allocationCount = statistics.getAllocationCount();
+    releaseCount = statistics.getReleaseCount();
+    unavailableAllocationCount = statistics.getUnavailableAllocationCount();
+    failedAllocationCounts = Collections.unmodifiableMap(statistics.getFailedAllocationCounts());
+    statistics.getAllocationWaitTimes().addTo(allocationWaitTimes);
+    csmMetrics = Collections.unmodifiableList(csms);
+    keyGroupMetrics = Collections.unmodifiableSortedMap(keyGroups);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getAllocationCount() {
+    return allocationCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getReleaseCount() {
+    return releaseCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getUnavailableAllocationCount() {
+    return unavailableAllocationCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public Map<Integer, Long> getFailedAllocationCounts() {
+    return failedAllocationCounts;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public LatencyHistogram getAllocationWaitTimes() {
+    return allocationWaitTimes;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public LatencyHistogram getApduExchangeLatencies() {
+    return apduExchangeLatencies;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public long getFailedApduExchangeCount() {
+    return failedApduExchangeCount;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public List<CsmMetrics> getCsmMetrics() {
+    return csmMetrics;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public SortedMap<Integer, KeyGroupMetrics> getKeyGroupMetrics() {
+    return keyGroupMetrics;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public String toString() {
+    return "LegacyHsmPluginMetrics{timestamp="
+        + timestamp
+        + ", allocationCount="
+        + allocationCount
+        + ", releaseCount="
+        + releaseCount
+        + ", unavailableAllocationCount="
+        + unavailableAllocationCount
+        + ", failedAllocationCounts="
+        + failedAllocationCounts
+        + ", allocationWaitTimes="
+        + allocationWaitTimes
+        + ", apduExchangeLatencies="
+        + apduExchangeLatencies
+        + ", failedApduExchangeCount="
+        + failedApduExchangeCount
+        + ", csmMetrics="
+        + csmMetrics
+        + ", keyGroupMetrics="
+        + keyGroupMetrics
+        + '}';
+  }
+}
@@ -0,0 +1,178 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the Legacy HSM plugin, filled by {@link LegacyHsmPluginFactoryBuilder} and frozen
+ * when the factory is built.
+ *
+ * @since 1.1.0
+ */
+final class PluginSettings {
+
+  /** Number of idle channels kept open for each key group (0 disables the pre-opening). */
+  int channelPoolMinIdle;
+
+  /** Maximum number of channels held by each key group (0 means no pooling). */
+  int channelPoolMaxSize;
+
+  /** Strategy for choosing the CSM of each allocation. */
+  LegacyHsmPlugin.RoutingStrategy routingStrategy =
+      LegacyHsmPlugin.RoutingStrategy.LEAST_OUTSTANDING_CHANNELS;
+
+  /** Consecutive failures opening the circuit breaker of a CSM (0 disables the breaker). */
+  int circuitBreakerFailureThreshold = 3;
+
+  /** Base duration during which a CSM with an open circuit breaker is skipped. */
+  long circuitBreakerOpenDurationMillis = 5000;
+
+  /** Maximum time an allocation waits for a channel (0 for an immediate failure). */
+  long allocationTimeoutMillis;
+
+  /** Maximum time given to each CSM to give its information and key groups at startup. */
+  long discoveryTimeoutMillis = 30000;
+
+  /** Discovery of the CSMs performed in the background instead of at the plugin creation. */
+  boolean isBackgroundInventoryEnabled;
+
+  /** File of the key inventory snapshot, null to scan the keys of all the CSMs at each startup. */
+  File keyInventorySnapshotFile;
+
+  /** Period of the refresh of the key groups (0 disables the periodic refresh). */
+  long keyGroupRefreshPeriodMillis;
+
+  /** Time a channel released by an identified caller stays parked for it (0 disables it). */
+  long callerAffinityHoldMillis;
+
+  /** Period of the liveness probe of the idle channels (0 disables the probing). */
+  long channelProbePeriodMillis;
+
+  /** Threads of the asynchronous APDU dispatcher of each CSM. */
+  int asyncDispatchThreads = 4;
+
+  /** Readers waiting for a thread of the asynchronous APDU dispatcher of each CSM. */
+  int asyncDispatchQueueCapacity = 1024;
+
+  /** APDU exchanges kept by the flight recorder of each CSM (0 disables the recording). */
+  int apduFlightRecorderCapacity = 1024;
+
+  /** Maximum of the adaptive limit of the exchanges in progress per CSM (0 disables the limit). */
+  int maxConcurrentExchangesPerCsm;
+
+  /** File capturing the workload of the plugin, null to disable the capture. */
+  File workloadCaptureFile;
+
+  /** Maximum size of the workload capture file in bytes. */
+  int workloadCaptureMaxSize;
+
+  /** Maximum number of channels shared by the readers allocated in shared mode on each CSM. */
+  int sharedChannelsPerCsm;
+
+  /** Factory of the selected SAM image returned by the readers, null if none. */
+  LegacyHsmPluginFactoryBuilder.SelectedSamFactory selectedSamFactory;
+
+  /** Classes of the allocations, indexed by {@link AllocationClass#getIndex()}. */
+  final List<AllocationClass> allocationClasses = new ArrayList<AllocationClass>();
+
+  /** Simulated CSMs replacing the HSM library when not empty. */
+  final List<SimulatedHsmBackend.Spec> simulatedCsmSpecs =
+      new ArrayList<SimulatedHsmBackend.Spec>();
+
+  /**
+   * Creates default settings: no channel pooling, least outstanding channels routing, circuit
+   * breaker opening for 5 s after 3 consecutive failures, 30 s discovery timeout performed at the
+   * plugin creation, 4 asynchronous APDU dispatch threads per CSM, last 1024 APDU exchanges
+   * recorded per CSM, no workload capture, a single allocation class, HSM library backend.
+   *
+   * @since 1.1.0
+   */
+  PluginSettings() {
+    allocationClasses.add(new AllocationClass(0, AllocationClass.DEFAULT_NAME, 0, 1, 0));
+  }
+
+  /**
+   * Creates a copy of the provided settings.
+   *
+   * @param source The settings to copy.
+   * @since 1.1.0
+   */
+  PluginSettings(PluginSettings source) {
+    this.channelPoolMinIdle = source.channelPoolMinIdle;
+    this.channelPoolMaxSize = source.channelPoolMaxSize;
+    this.routingStrategy = source.routingStrategy;
+    this.circuitBreakerFailureThreshold = source.circuitBreakerFailureThreshold;
+    this.circuitBreakerOpenDurationMillis = source.circuitBreakerOpenDurationMillis;
+    this.allocationTimeoutMillis = source.allocationTimeoutMillis;
+    this.discoveryTimeoutMillis = source.discoveryTimeoutMillis;
+    this.isBackgroundInventoryEnabled = source.isBackgroundInventoryEnabled;
+    this.keyInventorySnapshotFile = source.keyInventorySnapshotFile;
+    this.keyGroupRefreshPeriodMillis = source.keyGroupRefreshPeriodMillis;
+    this.channelProbePeriodMillis = source.channelProbePeriodMillis;
+    this.callerAffinityHoldMillis = source.callerAffinityHoldMillis;
+    this.asyncDispatchThreads = source.asyncDispatchThreads;
+    this.asyncDispatchQueueCapacity = source.asyncDispatchQueueCapacity;
+    this.apduFlightRecorderCapacity = source.apduFlightRecorderCapacity;
+    this.maxConcurrentExchangesPerCsm = source.maxConcurrentExchangesPerCsm;
+    this.workloadCaptureFile = source.workloadCaptureFile;
+    this.workloadCaptureMaxSize = source.workloadCaptureMaxSize;
+    this.sharedChannelsPerCsm = source.sharedChannelsPerCsm;
+    this.selectedSamFactory = source.selectedSamFactory;
+    this.allocationClasses.addAll(source.allocationClasses);
+    this.simulatedCsmSpecs.addAll(source.simulatedCsmSpecs);
+  }
+
+  /**
+   * Indicates if the released channels are kept open for later allocations.
+   *
+   * @return True if the channel pooling is enabled.
+   * @since 1.1.0
+   */
+  boolean isChannelPoolingEnabled() {
+    return channelPoolMaxSize > 0;
+  }
+
+  /**
+   * Returns the allocation class of the provided name.
+   *
+   * @param name The name of the class, null for the default class.
+   * @return Null if the class is unknown.
+   * @since 1.1.0
+   */
+  AllocationClass getAllocationClass(String name) {
+    if (name == null) {
+      return allocationClasses.get(0);
+    }
+    for (AllocationClass allocationClass : allocationClasses) {
+      if (allocationClass.getName().equals(name)) {
+        return allocationClass;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Creates the HSM backend to be used by a new plugin.
+   *
+   * @return A new instance.
+   * @since 1.1.0
+   */
+  HsmBackend createBackend() {
+    if (simulatedCsmSpecs.isEmpty()) {
+      return SharedHsmBackend.getCsmSystemBackend();
+    }
+    return new SimulatedHsmBackend(simulatedCsmSpecs);
+  }
+}
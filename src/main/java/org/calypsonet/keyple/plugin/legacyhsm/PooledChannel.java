@@ -0,0 +1,147 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * An {@link HsmChannel} managed by a {@link ChannelPool}, with the CSM it is opened on.
+ *
+ * @since 1.1.0
+ */
+final class PooledChannel {
+
+  private final HsmChannel channel;
+  private final CsmNode csmNode;
+
+  /** Date of the last release, used for the eviction of idle channels. */
+  private volatile long idleSince;
+
+  /** Date of the last successful liveness probe, 0 if never probed. */
+  private volatile long probedAt;
+
+  /** Class of the allocation holding the channel. */
+  private volatile AllocationClass allocationClass;
+
+  /** Identifier of the caller of the allocation holding the channel, null if none. */
+  private volatile String callerId;
+
+  /**
+   * Creates a pooled channel.
+   *
+   * @param channel The opened channel.
+   * @param csmNode The CSM the channel is opened on.
+   * @since 1.1.0
+   */
+  PooledChannel(HsmChannel channel, CsmNode csmNode) {
+    this.channel = channel;
+    this.csmNode = csmNode;
+  }
+
+  /**
+   * Returns the channel.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  HsmChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * Returns the CSM the channel is opened on.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  CsmNode getCsmNode() {
+    return csmNode;
+  }
+
+  /**
+   * Returns the class of the allocation holding the channel.
+   *
+   * @return Null if the channel has never been allocated.
+   * @since 1.1.0
+   */
+  AllocationClass getAllocationClass() {
+    return allocationClass;
+  }
+
+  /**
+   * Sets the class of the allocation holding the channel.
+   *
+   * @param allocationClass The class.
+   * @since 1.1.0
+   */
+  void setAllocationClass(AllocationClass allocationClass) {
+    this.allocationClass = allocationClass;
+  }
+
+  /**
+   * Returns the identifier of the caller of the allocation holding the channel.
+   *
+   * @return Null if the caller is not identified.
+   * @since 1.1.0
+   */
+  String getCallerId() {
+    return callerId;
+  }
+
+  /**
+   * Sets the identifier of the caller of the allocation holding the channel.
+   *
+   * @param callerId The identifier, null if none.
+   * @since 1.1.0
+   */
+  void setCallerId(String callerId) {
+    this.callerId = callerId;
+  }
+
+  /**
+   * Returns the date the channel became idle.
+   *
+   * @return A time in milliseconds.
+   * @since 1.1.0
+   */
+  long getIdleSince() {
+    return idleSince;
+  }
+
+  /**
+   * Sets the date the channel became idle.
+   *
+   * @param idleSince A time in milliseconds.
+   * @since 1.1.0
+   */
+  void setIdleSince(long idleSince) {
+    this.idleSince = idleSince;
+  }
+
+  /**
+   * Returns the date the channel was last known to be alive, by a release or a liveness probe.
+   *
+   * @return A time in milliseconds.
+   * @since 1.1.0
+   */
+  long getAliveSince() {
+    return Math.max(idleSince, probedAt);
+  }
+
+  /**
+   * Sets the date of the last successful liveness probe.
+   *
+   * @param probedAt A time in milliseconds.
+   * @since 1.1.0
+   */
+  void setProbedAt(long probedAt) {
+    this.probedAt = probedAt;
+  }
+}
@@ -0,0 +1,151 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reader group reference given to the allocations: a key group reference, optionally followed by
+ * parameters of the allocation.
+ *
+ * <p>Syntax: {@code <keyGroupReference>[;<name>=<value>]...}, for example {@code "12"} or {@code
+ * "12;class=gate;caller=T042"} or {@code "12;mode=shared"}. A null reference designates the key
+ * group 0.
+ *
+ * @since 1.1.0
+ */
+final class ReaderGroupReference {
+
+  /** Parameter naming the {@link AllocationClass} of the allocation. */
+  static final String CLASS_PARAMETER = "class";
+
+  /** Parameter identifying the caller of the allocation for the caller affinity. */
+  static final String CALLER_PARAMETER = "caller";
+
+  /**
+   * Parameter giving the mode of the allocation: {@link #EXCLUSIVE_MODE} or {@link #SHARED_MODE}.
+   */
+  static final String MODE_PARAMETER = "mode";
+
+  /** Allocation of a channel held by the reader until its release, used by default. */
+  static final String EXCLUSIVE_MODE = "exclusive";
+
+  /** Allocation of a reader sharing channels with other readers for its stateless commands. */
+  static final String SHARED_MODE = "shared";
+
+  /** Maximum number of parsed references kept by {@link #valueOf(String)}. */
+  static final int CACHE_CAPACITY = 1024;
+
+  /** Reference designated by null. */
+  private static final ReaderGroupReference DEFAULT =
+      new ReaderGroupReference(0, Collections.<String, String>emptyMap());
+
+  /** Parsed references by string, filled up to {@link #CACHE_CAPACITY}. */
+  private static final ConcurrentMap<String, ReaderGroupReference> cache =
+      new ConcurrentHashMap<String, ReaderGroupReference>();
+
+  private final int keyGroupReference;
+  private final Map<String, String> parameters;
+
+  /** Constructor. */
+  private ReaderGroupReference(int keyGroupReference, Map<String, String> parameters) {
+    this.keyGroupReference = keyGroupReference;
+    this.parameters = parameters;
+  }
+
+  /**
+   * Returns the parsed reader group reference, parsing it only the first time.
+   *
+   * <p>Once {@link #CACHE_CAPACITY} references are kept, for example with many caller identifiers,
+   * the other ones are parsed at each call.
+   *
+   * @param readerGroupReference The reader group reference (may be null).
+   * @return A not null reference.
+   * @throws IllegalArgumentException If the reference is malformed or has an unknown parameter.
+   * @since 1.1.0
+   */
+  static ReaderGroupReference valueOf(String readerGroupReference) {
+    if (readerGroupReference == null) {
+      return DEFAULT;
+    }
+    ReaderGroupReference groupReference = cache.get(readerGroupReference);
+    if (groupReference == null) {
+      groupReference = parse(readerGroupReference);
+      if (cache.size() < CACHE_CAPACITY) {
+        cache.putIfAbsent(readerGroupReference, groupReference);
+      }
+    }
+    return groupReference;
+  }
+
+  /**
+   * Parses a reader group reference.
+   *
+   * @param readerGroupReference The reader group reference (may be null).
+   * @return A not null reference.
+   * @throws IllegalArgumentException If the reference is malformed or has an unknown parameter.
+   * @since 1.1.0
+   */
+  static ReaderGroupReference parse(String readerGroupReference) {
+    if (readerGroupReference == null) {
+      return DEFAULT;
+    }
+    String[] fields = readerGroupReference.split(";", -1);
+    int keyGroupReference;
+    try {
+      keyGroupReference = Integer.parseInt(fields[0].trim());
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Bad group reference string: " + readerGroupReference);
+    }
+    if (fields.length == 1) {
+      return new ReaderGroupReference(keyGroupReference, Collections.<String, String>emptyMap());
+    }
+    Map<String, String> parameters = new HashMap<String, String>();
+    for (int i = 1; i < fields.length; i++) {
+      int separator = fields[i].indexOf('=');
+      String name = separator < 0 ? "" : fields[i].substring(0, separator).trim();
+      if (!CLASS_PARAMETER.equals(name)
+          && !CALLER_PARAMETER.equals(name)
+          && !MODE_PARAMETER.equals(name)) {
+        throw new IllegalArgumentException(
+            "Bad parameter '" + fields[i] + "' in group reference string: " + readerGroupReference);
+      }
+      parameters.put(name, fields[i].substring(separator + 1).trim());
+    }
+    return new ReaderGroupReference(keyGroupReference, parameters);
+  }
+
+  /**
+   * Returns the key group reference.
+   *
+   * @return The reference.
+   * @since 1.1.0
+   */
+  int getKeyGroupReference() {
+    return keyGroupReference;
+  }
+
+  /**
+   * Returns the value of a parameter.
+   *
+   * @param name The name of the parameter.
+   * @return Null if the parameter is not set.
+   * @since 1.1.0
+   */
+  String getParameter(String name) {
+    return parameters.get(name);
+  }
+}
@@ -0,0 +1,261 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Simulation of the Calypso SAM C1 commands needed by the secure session and signature flows.
+ *
+ * <p>Supported commands: Select Diversifier, Get Challenge, Give Random, Digest Init, Digest
+ * Update, Digest Close, Digest Authenticate, Unlock and PSO Compute/Verify Signature. Other
+ * instructions are answered with {@code 6D00}.
+ *
+ * <p>The cryptograms are derived from the CSM serial number, the key group, the diversifier and the
+ * digested data with a fast non-cryptographic hash: they are deterministic and have the expected
+ * lengths, but cannot be verified by a real card. Signature verifications always succeed.
+ *
+ * <p>An instance simulates the SAM of one channel and is not thread-safe.
+ *
+ * @since 1.1.0
+ */
+final class SamC1Simulator {
+
+  private static final byte CLA_ISO = (byte) 0x80;
+  private static final byte CLA_LEGACY = (byte) 0x94;
+
+  private static final byte INS_UNLOCK = (byte) 0x20;
+  private static final byte INS_PSO = (byte) 0x2A;
+  private static final byte INS_SELECT_DIVERSIFIER = (byte) 0x14;
+  private static final byte INS_DIGEST_AUTHENTICATE = (byte) 0x82;
+  private static final byte INS_GET_CHALLENGE = (byte) 0x84;
+  private static final byte INS_GIVE_RANDOM = (byte) 0x86;
+  private static final byte INS_DIGEST_INIT = (byte) 0x8A;
+  private static final byte INS_DIGEST_UPDATE = (byte) 0x8C;
+  private static final byte INS_DIGEST_CLOSE = (byte) 0x8E;
+
+  private static final int SW_SUCCESS = 0x9000;
+  private static final int SW_WRONG_LENGTH = 0x6700;
+  private static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+  private static final int SW_INCORRECT_P1_P2 = 0x6B00;
+  private static final int SW_INS_NOT_SUPPORTED = 0x6D00;
+  private static final int SW_CLA_NOT_SUPPORTED = 0x6E00;
+
+  private static final int DEFAULT_CRYPTOGRAM_LENGTH = 8;
+
+  private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  private final int keyGroupReference;
+  private final long keySeed;
+  private long randomState;
+  private long diversifierHash;
+  private long digestHash;
+  private boolean isDigestInProgress;
+
+  /**
+   * Creates the simulated SAM of a channel.
+   *
+   * @param serialNumber The serial number of the simulated CSM.
+   * @param keyGroupReference The key group of the channel.
+   * @since 1.1.0
+   */
+  SamC1Simulator(int serialNumber, int keyGroupReference) {
+    this.keyGroupReference = keyGroupReference;
+    this.keySeed = mix(((long) serialNumber << 32) | (keyGroupReference & 0xFFFFFFFFL));
+    this.randomState = keySeed;
+  }
+
+  /**
+   * Returns the key group of the channel.
+   *
+   * @return The key group reference.
+   * @since 1.1.0
+   */
+  int getKeyGroupReference() {
+    return keyGroupReference;
+  }
+
+  /**
+   * Resets the selected diversifier and aborts the digest in progress, if any.
+   *
+   * @since 1.1.0
+   */
+  void reset() {
+    diversifierHash = 0;
+    digestHash = 0;
+    isDigestInProgress = false;
+  }
+
+  /**
+   * Processes an APDU command.
+   *
+   * @param apdu The APDU command.
+   * @return The APDU response, ending with the status word.
+   * @since 1.1.0
+   */
+  byte[] processApdu(byte[] apdu) {
+    if (apdu == null || apdu.length < 4) {
+      return statusWord(SW_WRONG_LENGTH);
+    }
+    if (apdu[0] != CLA_ISO && apdu[0] != CLA_LEGACY) {
+      return statusWord(SW_CLA_NOT_SUPPORTED);
+    }
+    switch (apdu[1]) {
+      case INS_SELECT_DIVERSIFIER:
+        diversifierHash = hash(FNV_OFFSET_BASIS, apdu, 5, dataLength(apdu));
+        return statusWord(SW_SUCCESS);
+      case INS_GET_CHALLENGE:
+        return response(nextRandom(), expectedLength(apdu));
+      case INS_GIVE_RANDOM:
+      case INS_UNLOCK:
+      case INS_DIGEST_AUTHENTICATE:
+        return statusWord(SW_SUCCESS);
+      case INS_DIGEST_INIT:
+        if (dataLength(apdu) < 2) {
+          return statusWord(SW_WRONG_LENGTH);
+        }
+        digestHash = hash(keySeed ^ diversifierHash, apdu, 5, dataLength(apdu));
+        isDigestInProgress = true;
+        return statusWord(SW_SUCCESS);
+      case INS_DIGEST_UPDATE:
+        if (!isDigestInProgress) {
+          return statusWord(SW_CONDITIONS_NOT_SATISFIED);
+        }
+        digestHash = hash(digestHash, apdu, 5, dataLength(apdu));
+        return statusWord(SW_SUCCESS);
+      case INS_DIGEST_CLOSE:
+        if (!isDigestInProgress) {
+          return statusWord(SW_CONDITIONS_NOT_SATISFIED);
+        }
+        isDigestInProgress = false;
+        return response(mix(digestHash), expectedLength(apdu));
+      case INS_PSO:
+        return processPso(apdu);
+      default:
+        return statusWord(SW_INS_NOT_SUPPORTED);
+    }
+  }
+
+  /**
+   * Processes the PSO Compute Signature (P1P2 = 9E9A) and PSO Verify Signature (P1P2 = 00A8)
+   * commands.
+   *
+   * @param apdu The APDU command.
+   * @return The APDU response.
+   */
+  private byte[] processPso(byte[] apdu) {
+    int p1p2 = ((apdu[2] & 0xFF) << 8) | (apdu[3] & 0xFF);
+    if (p1p2 == 0x9E9A) {
+      long signatureSeed = hash(keySeed ^ diversifierHash, apdu, 5, dataLength(apdu));
+      return response(mix(signatureSeed), DEFAULT_CRYPTOGRAM_LENGTH);
+    }
+    if (p1p2 == 0x00A8) {
+      return statusWord(SW_SUCCESS);
+    }
+    return statusWord(SW_INCORRECT_P1_P2);
+  }
+
+  /**
+   * Returns the length of the data field of a case 3 or 4 command.
+   *
+   * @param apdu The APDU command.
+   * @return 0 if none.
+   */
+  private static int dataLength(byte[] apdu) {
+    if (apdu.length <= 5) {
+      return 0;
+    }
+    return Math.min(apdu[4] & 0xFF, apdu.length - 5);
+  }
+
+  /**
+   * Returns the expected length of the response of a case 2 command.
+   *
+   * @param apdu The APDU command.
+   * @return The Le value, or the default cryptogram length if absent or zero.
+   */
+  private static int expectedLength(byte[] apdu) {
+    int le = apdu.length == 5 ? apdu[4] & 0xFF : 0;
+    return le == 0 ? DEFAULT_CRYPTOGRAM_LENGTH : le;
+  }
+
+  /**
+   * Builds a response of the provided length filled from a seed, followed by 9000.
+   *
+   * @param seed The seed.
+   * @param length The data length.
+   * @return A new array.
+   */
+  private static byte[] response(long seed, int length) {
+    byte[] response = new byte[length + 2];
+    long value = seed;
+    for (int i = 0; i < length; i++) {
+      if ((i & 7) == 0 && i != 0) {
+        value = mix(value);
+      }
+      response[i] = (byte) (value >>> ((i & 7) << 3));
+    }
+    response[length] = (byte) (SW_SUCCESS >> 8);
+    response[length + 1] = (byte) SW_SUCCESS;
+    return response;
+  }
+
+  /**
+   * Builds a response made of a status word.
+   *
+   * @param statusWord The status word.
+   * @return A new array.
+   */
+  private static byte[] statusWord(int statusWord) {
+    return new byte[] {(byte) (statusWord >> 8), (byte) statusWord};
+  }
+
+  /**
+   * Returns the next pseudo-random value of the channel.
+   *
+   * @return A long.
+   */
+  private long nextRandom() {
+    randomState += 0x9E3779B97F4A7C15L;
+    return mix(randomState);
+  }
+
+  /**
+   * FNV-1a hash of a byte range, continuing from the provided state.
+   *
+   * @param state The initial state.
+   * @param data The data.
+   * @param offset The offset of the range.
+   * @param length The length of the range.
+   * @return The new state.
+   */
+  private static long hash(long state, byte[] data, int offset, int length) {
+    long h = state;
+    for (int i = offset; i < offset + length; i++) {
+      h ^= data[i] & 0xFF;
+      h *= FNV_PRIME;
+    }
+    return h;
+  }
+
+  /**
+   * SplitMix64 finalizer.
+   *
+   * @param value The value to mix.
+   * @return The mixed value.
+   */
+  private static long mix(long value) {
+    long z = value;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,138 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HsmBackend} shared by several plugin instances, initialized by its first user and freed
+ * when its last user leaves.
+ *
+ * <p>Each successful call to {@link #initialize()} must be balanced by exactly one call to {@link
+ * #free()}. The HSM library ({@link CsmHsmBackend}) being a process-wide singleton, all the plugins
+ * created by the factories share {@link #getCsmSystemBackend()}, so that a plugin registered again
+ * neither initializes the library twice nor frees it while another plugin is using it.
+ *
+ * @since 1.1.0
+ */
+final class SharedHsmBackend implements HsmBackend {
+
+  private static final Logger logger = LoggerFactory.getLogger(SharedHsmBackend.class);
+
+  private static SharedHsmBackend csmSystemBackend;
+
+  private final HsmBackend backend;
+
+  /** Number of users having initialized the backend and not freed it yet, guarded by this. */
+  private int userCount;
+
+  /**
+   * Creates a shared backend.
+   *
+   * @param backend The backend to share.
+   * @since 1.1.0
+   */
+  SharedHsmBackend(HsmBackend backend) {
+    this.backend = backend;
+  }
+
+  /**
+   * Returns the shared backend of the HSM library.
+   *
+   * @return A not null reference.
+   * @since 1.1.0
+   */
+  static synchronized SharedHsmBackend getCsmSystemBackend() {
+    if (csmSystemBackend == null) {
+      csmSystemBackend = new SharedHsmBackend(new CsmHsmBackend());
+    }
+    return csmSystemBackend;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Only the first user initializes the backend; a failed initialization is freed at once and
+   * does not count as a user.
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public synchronized void initialize() throws HsmException {
+    if (userCount == 0) {
+      try {
+        backend.initialize();
+      } catch (HsmException e) {
+        tryFree();
+        throw e;
+      }
+    }
+    userCount++;
+    if (logger.isDebugEnabled()) {
+      logger.debug("HSM backend acquired, {} user(s).", userCount);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public List<HsmDevice> getDevices() throws HsmException {
+    return backend.getDevices();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Only the last user frees the backend.
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public synchronized void free() throws HsmException {
+    if (userCount == 0) {
+      return;
+    }
+    userCount--;
+    if (logger.isDebugEnabled()) {
+      logger.debug("HSM backend released, {} user(s) left.", userCount);
+    }
+    if (userCount == 0) {
+      backend.free();
+    }
+  }
+
+  /**
+   * Returns the number of users of the backend.
+   *
+   * @return A positive int.
+   * @since 1.1.0
+   */
+  synchronized int getUserCount() {
+    return userCount;
+  }
+
+  /** Frees the backend after a failed initialization, logging the possible errors. */
+  private void tryFree() {
+    try {
+      backend.free();
+    } catch (HsmException e) {
+      logger.error(
+          String.format(
+              "HSM Error: Could not free: result=%02X (%s)", e.getCode(), e.getMessage()));
+    }
+  }
+}
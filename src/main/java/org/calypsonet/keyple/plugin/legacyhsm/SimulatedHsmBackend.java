@@ -0,0 +1,267 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process {@link HsmBackend} simulating CSMs whose channels behave as Calypso SAM C1 ({@link
+ * SamC1Simulator}).
+ *
+ * <p>The number of channels, the key groups and the latency of each simulated CSM are configurable,
+ * which allows reproducible load tests and benchmarks without HSM hardware nor HSM library.
+ *
+ * @since 1.1.0
+ */
+final class SimulatedHsmBackend implements HsmBackend {
+
+  /** Result code of the errors raised when the key group is not held by the simulated CSM. */
+  static final int ERROR_KEY_GROUP = 0x21;
+
+  /** Result code of the errors raised when the simulated channel is closed. */
+  static final int ERROR_CHANNEL_CLOSED = 0x30;
+
+  /** Base of the serial numbers of the simulated CSMs ("SIM" followed by the CSM index). */
+  private static final int SERIAL_NUMBER_BASE = 0x53494D00;
+
+  private static final int CSM_VERSION = 1;
+  private static final int STRUCTURE_VERSION = 1;
+
+  private final List<HsmDevice> devices;
+
+  /**
+   * Creates a backend simulating the provided CSMs.
+   *
+   * @param specs The specifications of the simulated CSMs.
+   * @since 1.1.0
+   */
+  SimulatedHsmBackend(List<Spec> specs) {
+    devices = new ArrayList<HsmDevice>(specs.size());
+    for (int i = 0; i < specs.size(); i++) {
+      devices.add(new Device(SERIAL_NUMBER_BASE + i, specs.get(i)));
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public void initialize() {
+    // NOP
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public List<HsmDevice> getDevices() {
+    return new ArrayList<HsmDevice>(devices);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @since 1.1.0
+   */
+  @Override
+  public void free() {
+    // NOP
+  }
+
+  /**
+   * Waits for the provided duration without releasing the CPU to other tasks of the caller.
+   *
+   * @param latencyNanos The duration in nanoseconds.
+   */
+  private static void simulateLatency(long latencyNanos) {
+    if (latencyNanos <= 0) {
+      return;
+    }
+    long deadline = System.nanoTime() + latencyNanos;
+    long remaining = latencyNanos;
+    while (remaining > 0) {
+      LockSupport.parkNanos(remaining);
+      remaining = deadline - System.nanoTime();
+    }
+  }
+
+  /**
+   * Specification of a simulated CSM.
+   *
+   * @since 1.1.0
+   */
+  static final class Spec {
+
+    private final int channelsTotal;
+    private final long latencyNanos;
+    private final int[] keyGroupReferences;
+
+    /**
+     * Creates the specification of a simulated CSM.
+     *
+     * @param channelsTotal The maximum number of channels.
+     * @param latencyMicros The latency added to each channel opening and APDU exchange.
+     * @param keyGroupReferences The key groups held by the CSM.
+     * @since 1.1.0
+     */
+    Spec(int channelsTotal, int latencyMicros, int[] keyGroupReferences) {
+      this.channelsTotal = channelsTotal;
+      this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+      this.keyGroupReferences = keyGroupReferences.clone();
+    }
+  }
+
+  /** A simulated CSM. */
+  private static final class Device implements HsmDevice {
+
+    private final HsmDeviceInfo info;
+    private final Spec spec;
+    private final AtomicInteger openChannels = new AtomicInteger();
+    private final AtomicInteger channelIdCounter = new AtomicInteger();
+
+    private Device(int serialNumber, Spec spec) {
+      this.info =
+          new HsmDeviceInfo(serialNumber, CSM_VERSION, STRUCTURE_VERSION, spec.channelsTotal);
+      this.spec = spec;
+    }
+
+    @Override
+    public HsmDeviceInfo getInfo() {
+      return info;
+    }
+
+    @Override
+    public int[] getKeyGroups() {
+      return spec.keyGroupReferences.clone();
+    }
+
+    @Override
+    public HsmChannel openChannel(int keyGroupReference) throws HsmException {
+      simulateLatency(spec.latencyNanos);
+      if (!holdsKeyGroup(keyGroupReference)) {
+        throw new HsmException(
+            ERROR_KEY_GROUP,
+            true,
+            "Key group " + keyGroupReference + " not available in " + this,
+            null);
+      }
+      while (true) {
+        int current = openChannels.get();
+        if (current >= spec.channelsTotal) {
+          return null;
+        }
+        if (openChannels.compareAndSet(current, current + 1)) {
+          return new Channel(this, channelIdCounter.incrementAndGet(), keyGroupReference);
+        }
+      }
+    }
+
+    private boolean holdsKeyGroup(int keyGroupReference) {
+      for (int keyGroup : spec.keyGroupReferences) {
+        if (keyGroup == keyGroupReference) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "SimulatedCsm[" + Integer.toHexString(info.getSerialNumber()).toUpperCase() + "]";
+    }
+  }
+
+  /** A channel of a simulated CSM. */
+  private static final class Channel implements HsmChannel {
+
+    private final Device device;
+    private final int id;
+    private final SamC1Simulator sam;
+    private volatile boolean isClosed;
+
+    private Channel(Device device, int id, int keyGroupReference) {
+      this.device = device;
+      this.id = id;
+      this.sam = new SamC1Simulator(device.info.getSerialNumber(), keyGroupReference);
+    }
+
+    @Override
+    public int getId() {
+      return id;
+    }
+
+    @Override
+    public byte[] exchangeApdu(byte[] apduIn) throws HsmException {
+      if (isClosed) {
+        throw new HsmException(ERROR_CHANNEL_CLOSED, false, "Channel #" + id + " is closed", null);
+      }
+      simulateLatency(device.spec.latencyNanos);
+      return sam.processApdu(apduIn);
+    }
+
+    @Override
+    public int exchangeApdu(byte[] apduIn, byte[] apduOut, int offset) throws HsmException {
+      byte[] response = exchangeApdu(apduIn);
+      System.arraycopy(response, 0, apduOut, offset, response.length);
+      return response.length;
+    }
+
+    @Override
+    public List<byte[]> exchangeApdus(List<byte[]> apdusIn, boolean stopOnUnsuccessfulStatusWord)
+        throws HsmException {
+      if (isClosed) {
+        throw new HsmException(ERROR_CHANNEL_CLOSED, false, "Channel #" + id + " is closed", null);
+      }
+      // a batch is a single submission to the simulated CSM
+      simulateLatency(device.spec.latencyNanos);
+      List<byte[]> apdusOut = new ArrayList<byte[]>(apdusIn.size());
+      for (byte[] apduIn : apdusIn) {
+        byte[] apduOut = sam.processApdu(apduIn);
+        apdusOut.add(apduOut);
+        if (stopOnUnsuccessfulStatusWord && !StatusWord.isSuccessful(apduOut)) {
+          break;
+        }
+      }
+      return apdusOut;
+    }
+
+    @Override
+    public void reset() throws HsmException {
+      if (isClosed) {
+        throw new HsmException(ERROR_CHANNEL_CLOSED, false, "Channel #" + id + " is closed", null);
+      }
+      sam.reset();
+    }
+
+    @Override
+    public void close() throws HsmException {
+      if (isClosed) {
+        throw new HsmException(ERROR_CHANNEL_CLOSED, false, "Channel #" + id + " is closed", null);
+      }
+      isClosed = true;
+      device.openChannels.decrementAndGet();
+    }
+
+    @Override
+    public String describe() {
+      return device + " Ch. #" + id + " KeyGroup " + sam.getKeyGroupReference();
+    }
+  }
+}
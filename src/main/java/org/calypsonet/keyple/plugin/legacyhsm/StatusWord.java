@@ -0,0 +1,53 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+/**
+ * Status word helpers.
+ *
+ * @since 1.1.0
+ */
+final class StatusWord {
+
+  /** Status word of a successful command. */
+  static final int SUCCESS = 0x9000;
+
+  /** Constructor. */
+  private StatusWord() {}
+
+  /**
+   * Indicates if the provided APDU response ends with the {@link #SUCCESS} status word.
+   *
+   * @param apduOut The APDU response (may be null).
+   * @return False if the response is null or too short.
+   * @since 1.1.0
+   */
+  static boolean isSuccessful(byte[] apduOut) {
+    return apduOut != null && of(apduOut, 0, apduOut.length) == SUCCESS;
+  }
+
+  /**
+   * Returns the status word ending the APDU response written in the provided buffer.
+   *
+   * @param apduOut The buffer.
+   * @param offset The offset of the response in the buffer.
+   * @param length The length of the response.
+   * @return 0 if the response is too short.
+   * @since 1.1.0
+   */
+  static int of(byte[] apduOut, int offset, int length) {
+    if (length < 2) {
+      return 0;
+    }
+    return ((apduOut[offset + length - 2] & 0xFF) << 8) | (apduOut[offset + length - 1] & 0xFF);
+  }
+}
@@ -0,0 +1,232 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only capture of the workload of the plugin into a memory-mapped file, to be replayed later
+ * against simulated or real CSMs.
+ *
+ * <p>A session spans the allocation of a reader to its release. The file starts with a {@link
+ * #HEADER_SIZE} bytes header ({@link #MAGIC}, {@link #FORMAT_VERSION}, capture start time in
+ * milliseconds since the epoch, end of the records written at the closing, 0 until then), followed
+ * by big-endian records made of a type, a session number and a time in nanoseconds since the
+ * capture start:
+ *
+ * <ul>
+ *   <li>{@link #SESSION_START}: key group (int).
+ *   <li>{@link #APDU}: exchange latency in nanoseconds (int), status word (short, 0 when the
+ *       exchange failed with an HSM error), command length (short), command.
+ *   <li>{@link #SESSION_END}: nothing more.
+ * </ul>
+ *
+ * <p>The space of each record is reserved atomically and filled without lock, its type being
+ * written last: the records may therefore be written out of time order by concurrent readers. The
+ * closing waits for the records being written before writing the end of the records in the header
+ * and forcing the file to the storage. In a capture not closed, for example after a crash, a type 0
+ * marks the end of the readable records. The file is mapped once with its maximum size; the capture
+ * stops when it is full, a type 0 then marking the unused end of the file. The mapping is never
+ * explicitly released, which Java does not allow: it is released with the recorder by the garbage
+ * collector.
+ *
+ * @since 1.1.0
+ */
+final class WorkloadRecorder {
+
+  private static final Logger logger = LoggerFactory.getLogger(WorkloadRecorder.class);
+
+  /** "LHWL" */
+  static final int MAGIC = 0x4C48574C;
+
+  static final int FORMAT_VERSION = 1;
+  static final int HEADER_SIZE = 24;
+
+  /** Position in the header of the end of the records, written at the closing. */
+  static final int END_POSITION_OFFSET = 16;
+
+  static final byte SESSION_START = 1;
+  static final byte APDU = 2;
+  static final byte SESSION_END = 3;
+
+  /** Size of the type, session number and time common to all the records. */
+  static final int RECORD_HEADER_SIZE = 13;
+
+  private static final int SESSION_START_SIZE = RECORD_HEADER_SIZE + 4;
+  private static final int APDU_SIZE = RECORD_HEADER_SIZE + 8;
+
+  private final File file;
+  private final MappedByteBuffer buffer;
+  private final long originNanos;
+  private final AtomicLong position = new AtomicLong(HEADER_SIZE);
+  private final AtomicInteger sessionCounter = new AtomicInteger();
+  private final AtomicBoolean isFull = new AtomicBoolean();
+
+  /** Records reserved and not yet completed. */
+  private final AtomicInteger writerCount = new AtomicInteger();
+
+  private volatile boolean isClosed;
+
+  /**
+   * Creates the capture file, replacing any existing one.
+   *
+   * @param file The file.
+   * @param maxSize The maximum size of the file in bytes.
+   * @throws IOException If the file cannot be created or mapped.
+   * @since 1.1.0
+   */
+  WorkloadRecorder(File file, int maxSize) throws IOException {
+    this.file = file;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      // the previous content is cleared, the new one being sparse on most file systems
+      randomAccessFile.setLength(0);
+      randomAccessFile.setLength(maxSize);
+      buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, maxSize);
+    } finally {
+      // the mapping stays valid after the closing of the file
+      randomAccessFile.close();
+    }
+    originNanos = System.nanoTime();
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, FORMAT_VERSION);
+    buffer.putLong(8, System.currentTimeMillis());
+  }
+
+  /**
+   * Records the allocation of a reader.
+   *
+   * @param keyGroup The key group of the reader.
+   * @return The number of the new session.
+   * @since 1.1.0
+   */
+  int startSession(int keyGroup) {
+    int session = sessionCounter.incrementAndGet();
+    int index = reserve(SESSION_START_SIZE);
+    if (index >= 0) {
+      putRecordHeader(index, session, System.nanoTime());
+      buffer.putInt(index + RECORD_HEADER_SIZE, keyGroup);
+      complete(index, SESSION_START);
+    }
+    return session;
+  }
+
+  /**
+   * Records an APDU exchange.
+   *
+   * @param session The session number.
+   * @param startTime The {@link System#nanoTime()} at the beginning of the exchange.
+   * @param latencyNanos The duration of the exchange.
+   * @param apduIn The command.
+   * @param statusWord The status word of the response, 0 if the exchange failed.
+   * @since 1.1.0
+   */
+  void recordApdu(int session, long startTime, long latencyNanos, byte[] apduIn, int statusWord) {
+    int index = reserve(APDU_SIZE + apduIn.length);
+    if (index < 0) {
+      return;
+    }
+    putRecordHeader(index, session, startTime);
+    int offset = index + RECORD_HEADER_SIZE;
+    buffer.putInt(offset, (int) Math.min(latencyNanos, Integer.MAX_VALUE));
+    buffer.putShort(offset + 4, (short) statusWord);
+    buffer.putShort(offset + 6, (short) apduIn.length);
+    offset += 8;
+    for (int i = 0; i < apduIn.length; i++) {
+      buffer.put(offset + i, apduIn[i]);
+    }
+    complete(index, APDU);
+  }
+
+  /**
+   * Records the release of a reader.
+   *
+   * @param session The session number.
+   * @since 1.1.0
+   */
+  void endSession(int session) {
+    int index = reserve(RECORD_HEADER_SIZE);
+    if (index >= 0) {
+      putRecordHeader(index, session, System.nanoTime());
+      complete(index, SESSION_END);
+    }
+  }
+
+  /**
+   * Stops the capture, waits for the records being written, writes the end of the records and
+   * flushes the file.
+   *
+   * @since 1.1.0
+   */
+  void close() {
+    isClosed = true;
+    // a record is filled without blocking, its writer completes it shortly
+    while (writerCount.get() != 0) {
+      Thread.yield();
+    }
+    buffer.putLong(END_POSITION_OFFSET, Math.min(position.get(), buffer.capacity()));
+    buffer.force();
+    if (logger.isInfoEnabled()) {
+      logger.info(
+          "Workload capture {} closed: {} sessions, {} bytes.",
+          file,
+          sessionCounter.get(),
+          Math.min(position.get(), buffer.capacity()));
+    }
+  }
+
+  /**
+   * Reserves the space of a record.
+   *
+   * @param size The size of the record.
+   * @return The index of the record, to be completed with {@link #complete(int, byte)}, -1 if the
+   *     capture is closed or full.
+   */
+  private int reserve(int size) {
+    // counted before checking the closing, so that the closing waits for this writer or is seen
+    writerCount.incrementAndGet();
+    if (isClosed) {
+      writerCount.decrementAndGet();
+      return -1;
+    }
+    long index = position.getAndAdd(size);
+    if (index + size > buffer.capacity()) {
+      writerCount.decrementAndGet();
+      if (isFull.compareAndSet(false, true)) {
+        logger.warn("Workload capture {} full, the next exchanges are not recorded.", file);
+      }
+      return -1;
+    }
+    return (int) index;
+  }
+
+  /** Writes the type of a filled record, making it readable. */
+  private void complete(int index, byte type) {
+    buffer.put(index, type);
+    writerCount.decrementAndGet();
+  }
+
+  /** Writes the session number and the time of a record, its type being written last. */
+  private void putRecordHeader(int index, int session, long time) {
+    buffer.putInt(index + 1, session);
+    buffer.putLong(index + 5, time - originNanos);
+  }
+}
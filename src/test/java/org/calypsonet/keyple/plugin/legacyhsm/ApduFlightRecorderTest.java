@@ -0,0 +1,87 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ApduFlightRecorderTest {
+
+  private static final byte[] SW_9000 = {(byte) 0x90, 0x00};
+
+  private static byte[] command(int ins) {
+    return new byte[] {(byte) 0x80, (byte) ins, 0x00, 0x00, 0x08};
+  }
+
+  private static String[] dump(ApduFlightRecorder flightRecorder, int channelId, int maxRecords) {
+    StringBuilder sb = new StringBuilder();
+    flightRecorder.dump(sb, channelId, maxRecords);
+    return sb.length() == 0 ? new String[0] : sb.toString().split("\n");
+  }
+
+  @Test
+  public void getCapacity_shouldBeRoundedUpToPowerOfTwo() {
+    assertThat(new ApduFlightRecorder(100).getCapacity()).isEqualTo(128);
+    assertThat(new ApduFlightRecorder(1).getCapacity()).isEqualTo(1);
+    assertThat(ApduFlightRecorder.DISABLED.getCapacity()).isZero();
+  }
+
+  @Test
+  public void dump_whenDisabled_shouldAppendNothing() {
+    ApduFlightRecorder.DISABLED.record(System.nanoTime(), 1000, 1, command(0x84), SW_9000, 0, 2);
+
+    assertThat(dump(ApduFlightRecorder.DISABLED, ApduFlightRecorder.ALL_CHANNELS, 10)).isEmpty();
+  }
+
+  @Test
+  public void dump_whenBufferWrapped_shouldKeepLastRecordsOldestFirst() {
+    ApduFlightRecorder flightRecorder = new ApduFlightRecorder(4);
+    for (int ins = 1; ins <= 6; ins++) {
+      flightRecorder.record(System.nanoTime(), 2000, 1, command(ins), SW_9000, 0, 2);
+    }
+
+    String[] lines = dump(flightRecorder, ApduFlightRecorder.ALL_CHANNELS, 10);
+
+    assertThat(lines).hasSize(4);
+    for (int i = 0; i < 4; i++) {
+      assertThat(lines[i])
+          .contains(" #" + (i + 3) + " ch=1 ")
+          .contains(String.format("80%02X0000 -> 9000 2 us", i + 3));
+    }
+  }
+
+  @Test
+  public void dump_whenChannelFiltered_shouldDumpItsLastRecordsOnly() {
+    ApduFlightRecorder flightRecorder = new ApduFlightRecorder(16);
+    for (int ins = 1; ins <= 6; ins++) {
+      flightRecorder.record(System.nanoTime(), 1000, ins % 2, command(ins), SW_9000, 0, 2);
+    }
+
+    String[] lines = dump(flightRecorder, 1, 2);
+
+    assertThat(lines).hasSize(2);
+    assertThat(lines[0]).contains(" #3 ch=1 80030000");
+    assertThat(lines[1]).contains(" #5 ch=1 80050000");
+  }
+
+  @Test
+  public void dump_whenExchangeFailed_shouldShowErrorCode() {
+    ApduFlightRecorder flightRecorder = new ApduFlightRecorder(4);
+
+    flightRecorder.recordError(System.nanoTime(), 5000, 2, null, 0x1F);
+
+    String[] lines = dump(flightRecorder, ApduFlightRecorder.ALL_CHANNELS, 10);
+    assertThat(lines).hasSize(1);
+    assertThat(lines[0]).contains(" #1 ch=2 00000000 -> error 1F 5 us");
+  }
+}
@@ -0,0 +1,471 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelPoolTest {
+
+  private static final int KEY_GROUP = 1;
+  private static final long LONG_TIMEOUT_MILLIS = 10000;
+  private static final int BREAKER_OPEN_MILLIS = 20;
+
+  private static final AllocationClass DEFAULT_CLASS = new AllocationClass(0, "default", 0, 1, 0);
+  private static final AllocationClass GATE_CLASS = new AllocationClass(1, "gate", 0, 1, 1);
+  private static final AllocationClass URGENT_CLASS = new AllocationClass(1, "urgent", 1, 1, 0);
+
+  private ControlledDevice device;
+  private CsmNode csmNode;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    device =
+        new ControlledDevice(
+            new SimulatedHsmBackend(
+                    Collections.singletonList(
+                        new SimulatedHsmBackend.Spec(8, 0, new int[] {KEY_GROUP})))
+                .getDevices()
+                .get(0));
+    csmNode =
+        new CsmNode(
+            device,
+            new CsmDescriptor(device.toString(), device.getInfo(), null),
+            new CircuitBreaker(1, BREAKER_OPEN_MILLIS),
+            new ApduDispatcher(device.toString(), 1, 1),
+            ApduFlightRecorder.DISABLED,
+            ConcurrencyLimiter.DISABLED);
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private ChannelPool newPool(int maxSize, AllocationClass... allocationClasses) {
+    return new ChannelPool(
+        KEY_GROUP,
+        Collections.singletonList(csmNode),
+        CsmRouter.create(LegacyHsmPlugin.RoutingStrategy.ROUND_ROBIN),
+        0,
+        maxSize,
+        allocationClasses,
+        0,
+        0,
+        new KeyGroupStatistics());
+  }
+
+  private ChannelPool newPool(
+      LegacyHsmPlugin.RoutingStrategy routingStrategy, int minIdle, CsmNode... csmNodes) {
+    return new ChannelPool(
+        KEY_GROUP,
+        Arrays.asList(csmNodes),
+        CsmRouter.create(routingStrategy),
+        minIdle,
+        8,
+        new AllocationClass[] {DEFAULT_CLASS},
+        0,
+        0,
+        new KeyGroupStatistics());
+  }
+
+  private ChannelPool newAffinityPool(int maxSize, long affinityHoldMillis) {
+    return new ChannelPool(
+        KEY_GROUP,
+        Collections.singletonList(csmNode),
+        CsmRouter.create(LegacyHsmPlugin.RoutingStrategy.ROUND_ROBIN),
+        0,
+        maxSize,
+        new AllocationClass[] {DEFAULT_CLASS},
+        affinityHoldMillis,
+        0,
+        new KeyGroupStatistics());
+  }
+
+  private static CsmNode newSimulatedCsmNode() throws Exception {
+    HsmDevice simulatedDevice =
+        new SimulatedHsmBackend(
+                Collections.singletonList(
+                    new SimulatedHsmBackend.Spec(8, 0, new int[] {KEY_GROUP})))
+            .getDevices()
+            .get(0);
+    return new CsmNode(
+        simulatedDevice,
+        new CsmDescriptor(simulatedDevice.toString(), simulatedDevice.getInfo(), null),
+        new CircuitBreaker(1, BREAKER_OPEN_MILLIS),
+        new ApduDispatcher(simulatedDevice.toString(), 1, 1),
+        ApduFlightRecorder.DISABLED,
+        ConcurrencyLimiter.DISABLED);
+  }
+
+  private Future<PooledChannel> acquireAsync(
+      final ChannelPool channelPool,
+      final AllocationClass allocationClass,
+      final long timeoutMillis) {
+    return executor.submit(
+        new Callable<PooledChannel>() {
+          @Override
+          public PooledChannel call() throws Exception {
+            return channelPool.acquire(allocationClass, null, timeoutMillis);
+          }
+        });
+  }
+
+  private static void awaitWaiters(ChannelPool channelPool, int waiterCount)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + LONG_TIMEOUT_MILLIS;
+    while (channelPool.getWaiterCount() != waiterCount) {
+      assertThat(System.currentTimeMillis()).isLessThan(deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void acquire_whenPoolExhausted_shouldReturnNullAfterTimeout() throws Exception {
+    ChannelPool channelPool = newPool(1, DEFAULT_CLASS);
+    PooledChannel pooledChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+
+    long startTime = System.nanoTime();
+    PooledChannel secondChannel = channelPool.acquire(DEFAULT_CLASS, null, 100);
+
+    assertThat(pooledChannel).isNotNull();
+    assertThat(secondChannel).isNull();
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime))
+        .isGreaterThanOrEqualTo(100);
+    assertThat(channelPool.getWaiterCount()).isZero();
+    assertThat(channelPool.getSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void release_whenCallerWaiting_shouldHandChannelOver() throws Exception {
+    ChannelPool channelPool = newPool(1, DEFAULT_CLASS);
+    PooledChannel pooledChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    Future<PooledChannel> waitingAllocation =
+        acquireAsync(channelPool, DEFAULT_CLASS, LONG_TIMEOUT_MILLIS);
+    awaitWaiters(channelPool, 1);
+
+    channelPool.release(pooledChannel, true);
+
+    PooledChannel handedChannel = waitingAllocation.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    assertThat(handedChannel).isSameAs(pooledChannel);
+    assertThat(channelPool.getIdleCount()).isZero();
+    assertThat(channelPool.getSize()).isEqualTo(1);
+    assertThat(csmNode.getInUseChannels()).isEqualTo(1);
+  }
+
+  @Test
+  public void release_whenClassesWaiting_shouldServeHighestPriorityFirst() throws Exception {
+    ChannelPool channelPool = newPool(1, DEFAULT_CLASS, URGENT_CLASS);
+    PooledChannel pooledChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    Future<PooledChannel> defaultAllocation =
+        acquireAsync(channelPool, DEFAULT_CLASS, LONG_TIMEOUT_MILLIS);
+    awaitWaiters(channelPool, 1);
+    Future<PooledChannel> urgentAllocation =
+        acquireAsync(channelPool, URGENT_CLASS, LONG_TIMEOUT_MILLIS);
+    awaitWaiters(channelPool, 2);
+
+    channelPool.release(pooledChannel, true);
+
+    PooledChannel urgentChannel = urgentAllocation.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    assertThat(urgentChannel.getAllocationClass()).isSameAs(URGENT_CLASS);
+    assertThat(defaultAllocation.isDone()).isFalse();
+    channelPool.release(urgentChannel, true);
+    assertThat(defaultAllocation.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isNotNull();
+  }
+
+  @Test
+  public void leave_whenChannelHandedToWaiterHavingOpenedOne_shouldGiveItBackUnreleased()
+      throws Exception {
+    ChannelPool channelPool = newPool(2, DEFAULT_CLASS);
+    PooledChannel firstChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    PooledChannel secondChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    Future<PooledChannel> waitingAllocation =
+        acquireAsync(channelPool, DEFAULT_CLASS, LONG_TIMEOUT_MILLIS);
+    awaitWaiters(channelPool, 1);
+    // the waiter is woken up by the closing of a channel and opens a new one, held meanwhile
+    device.holdNextOpening();
+    channelPool.release(secondChannel, false);
+    assertThat(device.awaitOpeningHeld()).isTrue();
+    channelPool.release(firstChannel, true);
+    device.resumeOpening();
+
+    PooledChannel openedChannel = waitingAllocation.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    assertThat(openedChannel).isNotSameAs(firstChannel);
+    assertThat(channelPool.getStatistics().getReleaseCount()).isEqualTo(2);
+    assertThat(channelPool.getIdleCount()).isEqualTo(1);
+    assertThat(channelPool.getSize()).isEqualTo(2);
+    assertThat(csmNode.getInUseChannels()).isEqualTo(1);
+    // the handed channel is no longer accounted to the default class
+    assertThat(channelPool.acquire(DEFAULT_CLASS, null, 0)).isSameAs(firstChannel);
+  }
+
+  @Test
+  public void close_whenCallersWaiting_shouldWakeThemUpWithoutChannel() throws Exception {
+    ChannelPool channelPool = newPool(1, DEFAULT_CLASS);
+    PooledChannel pooledChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    List<Future<PooledChannel>> waitingAllocations = new ArrayList<Future<PooledChannel>>();
+    for (int i = 0; i < 3; i++) {
+      waitingAllocations.add(acquireAsync(channelPool, DEFAULT_CLASS, LONG_TIMEOUT_MILLIS));
+    }
+    awaitWaiters(channelPool, 3);
+
+    long startTime = System.nanoTime();
+    channelPool.close();
+
+    for (Future<PooledChannel> waitingAllocation : waitingAllocations) {
+      assertThat(waitingAllocation.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isNull();
+    }
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime))
+        .isLessThan(LONG_TIMEOUT_MILLIS / 2);
+    assertThat(channelPool.getWaiterCount()).isZero();
+    channelPool.release(pooledChannel, true);
+    assertThat(channelPool.getSize()).isZero();
+    assertThat(csmNode.getOpenChannels()).isZero();
+  }
+
+  @Test
+  public void acquire_whenPoolClosed_shouldNotOpenChannel() throws Exception {
+    ChannelPool channelPool = newPool(1, DEFAULT_CLASS);
+    channelPool.close();
+
+    assertThat(channelPool.acquire(DEFAULT_CLASS, null, 100)).isNull();
+    assertThat(channelPool.getSize()).isZero();
+    assertThat(csmNode.getOpenChannels()).isZero();
+  }
+
+  @Test
+  public void acquire_whenOnlyReservedChannelsLeft_shouldServeOnlyTheirClass() throws Exception {
+    ChannelPool channelPool = newPool(2, DEFAULT_CLASS, GATE_CLASS);
+
+    PooledChannel defaultChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    PooledChannel secondDefaultChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    PooledChannel gateChannel = channelPool.acquire(GATE_CLASS, null, 0);
+
+    assertThat(defaultChannel).isNotNull();
+    assertThat(secondDefaultChannel).isNull();
+    assertThat(gateChannel).isNotNull();
+    assertThat(gateChannel.getAllocationClass()).isSameAs(GATE_CLASS);
+  }
+
+  @Test
+  public void release_whenReservedChannelReleased_shouldNotHandItToOtherClass() throws Exception {
+    ChannelPool channelPool = newPool(2, DEFAULT_CLASS, GATE_CLASS);
+    PooledChannel defaultChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    PooledChannel gateChannel = channelPool.acquire(GATE_CLASS, null, 0);
+    Future<PooledChannel> defaultAllocation = acquireAsync(channelPool, DEFAULT_CLASS, 200);
+    awaitWaiters(channelPool, 1);
+
+    channelPool.release(gateChannel, true);
+
+    assertThat(defaultAllocation.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isNull();
+    assertThat(channelPool.getIdleCount()).isEqualTo(1);
+    channelPool.release(defaultChannel, true);
+  }
+
+  @Test
+  public void acquire_whenTrialDueOnCsmFullOfIdleChannels_shouldCloseOneToOpenTrialChannel()
+      throws Exception {
+    ChannelPool channelPool = newPool(2, DEFAULT_CLASS);
+    PooledChannel firstChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    PooledChannel secondChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    channelPool.release(firstChannel, true);
+    channelPool.release(secondChannel, true);
+    csmNode.getCircuitBreaker().onFailure();
+    Thread.sleep(BREAKER_OPEN_MILLIS * 2);
+
+    PooledChannel trialChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+
+    assertThat(trialChannel).isNotNull().isNotSameAs(firstChannel).isNotSameAs(secondChannel);
+    assertThat(csmNode.getCircuitBreaker().isClosed()).isTrue();
+    assertThat(channelPool.getSize()).isEqualTo(2);
+    assertThat(channelPool.getIdleCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void acquire_whenTrialOpeningThrowsRuntimeException_shouldReopenBreaker()
+      throws Exception {
+    ChannelPool channelPool = newPool(2, DEFAULT_CLASS);
+    CircuitBreaker circuitBreaker = csmNode.getCircuitBreaker();
+    circuitBreaker.onFailure();
+    Thread.sleep(BREAKER_OPEN_MILLIS * 2);
+    IllegalStateException failure = new IllegalStateException("unexpected");
+    device.failNextOpening(failure);
+
+    try {
+      channelPool.acquire(DEFAULT_CLASS, null, 0);
+      fail("Exception expected");
+    } catch (IllegalStateException e) {
+      assertThat(e).isSameAs(failure);
+    }
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(channelPool.getSize()).isZero();
+    // the backoff doubles the open duration after a failed trial
+    Thread.sleep(BREAKER_OPEN_MILLIS * 4);
+    assertThat(channelPool.acquire(DEFAULT_CLASS, null, 0)).isNotNull();
+    assertThat(circuitBreaker.isClosed()).isTrue();
+  }
+
+  @Test
+  public void maintain_whenSeveralCsms_shouldSpreadIdleChannels() throws Exception {
+    CsmNode otherCsmNode = newSimulatedCsmNode();
+    ChannelPool channelPool =
+        newPool(
+            LegacyHsmPlugin.RoutingStrategy.LEAST_OUTSTANDING_CHANNELS, 4, csmNode, otherCsmNode);
+
+    channelPool.maintain();
+
+    assertThat(channelPool.getIdleCount()).isEqualTo(4);
+    assertThat(csmNode.getOpenChannels()).isEqualTo(2);
+    assertThat(otherCsmNode.getOpenChannels()).isEqualTo(2);
+  }
+
+  @Test
+  public void acquire_whenPreferredCsmCanOpen_shouldNotTakeIdleChannelOfOtherCsm()
+      throws Exception {
+    CsmNode otherCsmNode = newSimulatedCsmNode();
+    ChannelPool channelPool =
+        newPool(LegacyHsmPlugin.RoutingStrategy.ROUND_ROBIN, 0, csmNode, otherCsmNode);
+    PooledChannel pooledChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+    assertThat(pooledChannel.getCsmNode()).isSameAs(csmNode);
+    channelPool.release(pooledChannel, true);
+
+    // the round robin router now prefers the other CSM
+    PooledChannel otherChannel = channelPool.acquire(DEFAULT_CLASS, null, 0);
+
+    assertThat(otherChannel.getCsmNode()).isSameAs(otherCsmNode);
+    assertThat(channelPool.getIdleCount()).isEqualTo(1);
+    assertThat(channelPool.getSize()).isEqualTo(2);
+  }
+
+  @Test
+  public void acquire_whenChannelParkedForCaller_shouldReturnIt() throws Exception {
+    ChannelPool channelPool = newAffinityPool(2, LONG_TIMEOUT_MILLIS);
+    PooledChannel pooledChannel = channelPool.acquire(DEFAULT_CLASS, "T042", 0);
+    channelPool.release(pooledChannel, true);
+    assertThat(channelPool.getParkedCount()).isEqualTo(1);
+    assertThat(channelPool.getIdleCount()).isZero();
+
+    PooledChannel parkedChannel = channelPool.acquire(DEFAULT_CLASS, "T042", 0);
+
+    assertThat(parkedChannel).isSameAs(pooledChannel);
+    assertThat(channelPool.getParkedCount()).isZero();
+    assertThat(channelPool.getStatistics().getAffinityReuseCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void acquire_whenOnlyChannelParkedForOtherCaller_shouldTakeIt() throws Exception {
+    ChannelPool channelPool = newAffinityPool(1, LONG_TIMEOUT_MILLIS);
+    PooledChannel pooledChannel = channelPool.acquire(DEFAULT_CLASS, "T042", 0);
+    channelPool.release(pooledChannel, true);
+
+    PooledChannel takenChannel = channelPool.acquire(DEFAULT_CLASS, "T043", 0);
+
+    assertThat(takenChannel).isSameAs(pooledChannel);
+    assertThat(channelPool.getParkedCount()).isZero();
+    assertThat(channelPool.getSize()).isEqualTo(1);
+    assertThat(channelPool.getStatistics().getAffinityReuseCount()).isZero();
+  }
+
+  @Test
+  public void maintain_whenAffinityHoldExpired_shouldGiveParkedChannelBackToPool()
+      throws Exception {
+    ChannelPool channelPool = newAffinityPool(2, 20);
+    channelPool.release(channelPool.acquire(DEFAULT_CLASS, "T042", 0), true);
+    assertThat(channelPool.getParkedCount()).isEqualTo(1);
+    Thread.sleep(50);
+
+    channelPool.maintain();
+
+    assertThat(channelPool.getParkedCount()).isZero();
+    assertThat(channelPool.getIdleCount()).isEqualTo(1);
+  }
+
+  /** Simulated CSM whose next channel opening can be held until resumed, or made to fail. */
+  private static final class ControlledDevice implements HsmDevice {
+
+    private final HsmDevice device;
+    private volatile CountDownLatch openingHeld;
+    private volatile CountDownLatch openingResumed;
+    private volatile RuntimeException openingFailure;
+
+    private ControlledDevice(HsmDevice device) {
+      this.device = device;
+    }
+
+    void holdNextOpening() {
+      openingHeld = new CountDownLatch(1);
+      openingResumed = new CountDownLatch(1);
+    }
+
+    boolean awaitOpeningHeld() throws InterruptedException {
+      return openingHeld.await(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    void resumeOpening() {
+      openingResumed.countDown();
+    }
+
+    void failNextOpening(RuntimeException failure) {
+      openingFailure = failure;
+    }
+
+    @Override
+    public HsmDeviceInfo getInfo() throws HsmException {
+      return device.getInfo();
+    }
+
+    @Override
+    public int[] getKeyGroups() throws HsmException {
+      return device.getKeyGroups();
+    }
+
+    @Override
+    public HsmChannel openChannel(int keyGroupReference) throws HsmException {
+      CountDownLatch held = openingHeld;
+      if (held != null && held.getCount() != 0) {
+        held.countDown();
+        try {
+          openingResumed.await(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      RuntimeException failure = openingFailure;
+      if (failure != null) {
+        openingFailure = null;
+        throw failure;
+      }
+      return device.openChannel(keyGroupReference);
+    }
+
+    @Override
+    public String toString() {
+      return device.toString();
+    }
+  }
+}
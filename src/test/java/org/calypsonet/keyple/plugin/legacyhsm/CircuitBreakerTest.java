@@ -0,0 +1,184 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+  private static final int OPEN_DURATION_MILLIS = 100;
+
+  private CircuitBreaker circuitBreaker;
+  private ExecutorService otherThread;
+
+  @Before
+  public void setUp() {
+    circuitBreaker = new CircuitBreaker(2, OPEN_DURATION_MILLIS);
+    otherThread = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    otherThread.shutdownNow();
+  }
+
+  private void open() {
+    circuitBreaker.onFailure();
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  private <T> T onOtherThread(Callable<T> task) throws Exception {
+    return otherThread.submit(task).get();
+  }
+
+  @Test
+  public void onFailure_whenThresholdReached_shouldOpen() {
+    circuitBreaker.onFailure();
+    assertThat(circuitBreaker.isClosed()).isTrue();
+
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+  }
+
+  @Test
+  public void onSuccess_whenClosed_shouldResetConsecutiveFailures() {
+    circuitBreaker.onFailure();
+    circuitBreaker.onSuccess();
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.isClosed()).isTrue();
+  }
+
+  @Test
+  public void onSuccess_whenOpen_shouldBeIgnored() throws Exception {
+    open();
+
+    circuitBreaker.onSuccess();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void allowRequest_whenOpenDurationElapsed_shouldGrantSingleTrial() throws Exception {
+    open();
+    Thread.sleep(OPEN_DURATION_MILLIS * 2);
+
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    assertThat(circuitBreaker.isTrialHolder()).isTrue();
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+    assertThat(
+            onOtherThread(
+                new Callable<Boolean>() {
+                  @Override
+                  public Boolean call() {
+                    return circuitBreaker.allowRequest();
+                  }
+                }))
+        .isFalse();
+  }
+
+  @Test
+  public void onSuccess_whenReportedByTrial_shouldClose() throws Exception {
+    open();
+    Thread.sleep(OPEN_DURATION_MILLIS * 2);
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.onSuccess();
+
+    assertThat(circuitBreaker.isClosed()).isTrue();
+    assertThat(circuitBreaker.isTrialHolder()).isFalse();
+  }
+
+  @Test
+  public void onSuccess_whenReportedByOtherThreadThanTrial_shouldStayHalfOpen() throws Exception {
+    open();
+    Thread.sleep(OPEN_DURATION_MILLIS * 2);
+    circuitBreaker.allowRequest();
+
+    onOtherThread(
+        new Callable<Void>() {
+          @Override
+          public Void call() {
+            circuitBreaker.onSuccess();
+            return null;
+          }
+        });
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+  }
+
+  @Test
+  public void onFailure_whenReportedByTrial_shouldReopenForTwiceTheDuration() throws Exception {
+    open();
+    Thread.sleep(OPEN_DURATION_MILLIS * 2);
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.onFailure();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    Thread.sleep(OPEN_DURATION_MILLIS + OPEN_DURATION_MILLIS / 2);
+    assertThat(circuitBreaker.allowRequest()).isFalse();
+    Thread.sleep(OPEN_DURATION_MILLIS);
+    assertThat(circuitBreaker.allowRequest()).isTrue();
+  }
+
+  @Test
+  public void onTrialAbandoned_shouldGrantTrialToNextCaller() throws Exception {
+    open();
+    Thread.sleep(OPEN_DURATION_MILLIS * 2);
+    circuitBreaker.allowRequest();
+
+    circuitBreaker.onTrialAbandoned();
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(
+            onOtherThread(
+                new Callable<Boolean>() {
+                  @Override
+                  public Boolean call() {
+                    return circuitBreaker.allowRequest() && circuitBreaker.isTrialHolder();
+                  }
+                }))
+        .isTrue();
+  }
+
+  @Test
+  public void onTrialAbandoned_whenNotTrialHolder_shouldDoNothing() throws Exception {
+    open();
+    Thread.sleep(OPEN_DURATION_MILLIS * 2);
+    circuitBreaker.allowRequest();
+
+    onOtherThread(
+        new Callable<Void>() {
+          @Override
+          public Void call() {
+            circuitBreaker.onTrialAbandoned();
+            return null;
+          }
+        });
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    assertThat(circuitBreaker.isTrialHolder()).isTrue();
+  }
+}
@@ -0,0 +1,134 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+  private static final long LONG_TIMEOUT_MILLIS = 10000;
+  private static final byte[] GET_CHALLENGE = {(byte) 0x80, (byte) 0x84, 0x00, 0x00, 0x08};
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void acquire_whenDisabled_shouldNeverWait() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      assertThat(ConcurrencyLimiter.DISABLED.acquire()).isTrue();
+    }
+    assertThat(ConcurrencyLimiter.DISABLED.getLimit()).isZero();
+  }
+
+  @Test
+  public void acquire_whenLimitReached_shouldReturnFalseAfterMaxWait() throws Exception {
+    ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(2, 50);
+    assertThat(concurrencyLimiter.acquire()).isTrue();
+    assertThat(concurrencyLimiter.acquire()).isTrue();
+
+    long startTime = System.nanoTime();
+
+    assertThat(concurrencyLimiter.acquire()).isFalse();
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime))
+        .isGreaterThanOrEqualTo(50);
+    assertThat(concurrencyLimiter.getInFlight()).isEqualTo(2);
+  }
+
+  @Test
+  public void release_whenExchangeWaiting_shouldLetItStart() throws Exception {
+    final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(1, LONG_TIMEOUT_MILLIS);
+    assertThat(concurrencyLimiter.acquire()).isTrue();
+    Future<Boolean> waitingAcquisition =
+        executor.submit(
+            new Callable<Boolean>() {
+              @Override
+              public Boolean call() throws Exception {
+                return concurrencyLimiter.acquire();
+              }
+            });
+    Thread.sleep(50);
+    assertThat(waitingAcquisition.isDone()).isFalse();
+
+    concurrencyLimiter.release(null, 0, false);
+
+    assertThat(waitingAcquisition.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(concurrencyLimiter.getInFlight()).isEqualTo(1);
+  }
+
+  @Test
+  public void release_whenExchangesFail_shouldCutLimitOncePerLimitWorthOfExchanges()
+      throws Exception {
+    ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(20, 0);
+
+    concurrencyLimiter.acquire();
+    concurrencyLimiter.release(null, 0, true);
+    assertThat(concurrencyLimiter.getLimit()).isEqualTo(18);
+    concurrencyLimiter.acquire();
+    concurrencyLimiter.release(null, 0, true);
+
+    assertThat(concurrencyLimiter.getLimit()).isEqualTo(18);
+  }
+
+  @Test
+  public void release_whenLatencyExceedsToleranceOverBaseline_shouldCutLimit() throws Exception {
+    ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(10, 0);
+    for (int i = 0; i < 10; i++) {
+      concurrencyLimiter.acquire();
+      concurrencyLimiter.release(GET_CHALLENGE, 1000, false);
+    }
+    assertThat(concurrencyLimiter.getLimit()).isEqualTo(10);
+
+    concurrencyLimiter.acquire();
+    concurrencyLimiter.release(GET_CHALLENGE, 10000, false);
+
+    assertThat(concurrencyLimiter.getLimit()).isEqualTo(9);
+  }
+
+  @Test
+  public void release_whenHalfOfLimitInUse_shouldRaiseLimitAfterLimitWorthOfExchanges()
+      throws Exception {
+    ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(10, 0);
+    concurrencyLimiter.acquire();
+    concurrencyLimiter.release(null, 0, true);
+    assertThat(concurrencyLimiter.getLimit()).isEqualTo(9);
+    for (int i = 0; i < 5; i++) {
+      concurrencyLimiter.acquire();
+    }
+
+    for (int i = 0; i < 8; i++) {
+      concurrencyLimiter.release(null, 0, false);
+      concurrencyLimiter.acquire();
+    }
+    assertThat(concurrencyLimiter.getLimit()).isEqualTo(9);
+    concurrencyLimiter.release(null, 0, false);
+
+    assertThat(concurrencyLimiter.getLimit()).isEqualTo(10);
+  }
+}
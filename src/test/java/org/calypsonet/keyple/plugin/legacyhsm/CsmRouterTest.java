@@ -0,0 +1,98 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CsmRouterTest {
+
+  private static final int KEY_GROUP = 1;
+
+  private CsmNode csmNode1;
+  private CsmNode csmNode2;
+  private CsmNode csmNode3;
+
+  @Before
+  public void setUp() throws Exception {
+    List<SimulatedHsmBackend.Spec> specs = new ArrayList<SimulatedHsmBackend.Spec>();
+    for (int i = 0; i < 3; i++) {
+      specs.add(new SimulatedHsmBackend.Spec(4, 0, new int[] {KEY_GROUP}));
+    }
+    List<HsmDevice> devices = new SimulatedHsmBackend(specs).getDevices();
+    csmNode1 = newCsmNode(devices.get(0));
+    csmNode2 = newCsmNode(devices.get(1));
+    csmNode3 = newCsmNode(devices.get(2));
+  }
+
+  private static CsmNode newCsmNode(HsmDevice device) throws Exception {
+    return new CsmNode(
+        device,
+        new CsmDescriptor(device.toString(), device.getInfo(), null),
+        new CircuitBreaker(1, 1000),
+        new ApduDispatcher(device.toString(), 1, 1),
+        ApduFlightRecorder.DISABLED,
+        ConcurrencyLimiter.DISABLED);
+  }
+
+  private static void allocate(CsmNode csmNode, int channelCount) {
+    for (int i = 0; i < channelCount; i++) {
+      assertThat(csmNode.reserveChannel()).isTrue();
+      csmNode.onChannelAllocated();
+    }
+  }
+
+  @Test
+  public void route_whenRoundRobin_shouldRotateStartingCsm() {
+    CsmRouter csmRouter = CsmRouter.create(LegacyHsmPlugin.RoutingStrategy.ROUND_ROBIN);
+    CsmNode[] csmNodes = {csmNode1, csmNode2, csmNode3};
+
+    assertThat(csmRouter.route(csmNodes)).containsExactly(csmNode1, csmNode2, csmNode3);
+    assertThat(csmRouter.route(csmNodes)).containsExactly(csmNode2, csmNode3, csmNode1);
+    assertThat(csmRouter.route(csmNodes)).containsExactly(csmNode3, csmNode1, csmNode2);
+    assertThat(csmRouter.route(csmNodes)).containsExactly(csmNode1, csmNode2, csmNode3);
+  }
+
+  @Test
+  public void route_whenNoCsm_shouldReturnEmptyArray() {
+    for (LegacyHsmPlugin.RoutingStrategy routingStrategy :
+        LegacyHsmPlugin.RoutingStrategy.values()) {
+      assertThat(CsmRouter.create(routingStrategy).route(new CsmNode[0])).isEmpty();
+    }
+  }
+
+  @Test
+  public void route_whenLeastOutstandingChannels_shouldPreferLeastLoadedCsm() {
+    CsmRouter csmRouter =
+        CsmRouter.create(LegacyHsmPlugin.RoutingStrategy.LEAST_OUTSTANDING_CHANNELS);
+    allocate(csmNode1, 2);
+    allocate(csmNode3, 1);
+
+    assertThat(csmRouter.route(new CsmNode[] {csmNode1, csmNode2, csmNode3}))
+        .containsExactly(csmNode2, csmNode3, csmNode1);
+  }
+
+  @Test
+  public void route_whenScoresEqual_shouldKeepDiscoveryOrder() {
+    CsmRouter csmRouter =
+        CsmRouter.create(LegacyHsmPlugin.RoutingStrategy.LEAST_OUTSTANDING_CHANNELS);
+    CsmNode[] csmNodes = {csmNode1, csmNode2, csmNode3};
+
+    CsmNode[] routed = csmRouter.route(csmNodes);
+
+    assertThat(routed).containsExactly(csmNode1, csmNode2, csmNode3).isNotSameAs(csmNodes);
+  }
+}
@@ -0,0 +1,84 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class KeyGroupIndexTest {
+
+  private static ChannelPool newPool(int keyGroupReference) {
+    return new ChannelPool(
+        keyGroupReference,
+        Collections.<CsmNode>emptyList(),
+        CsmRouter.create(LegacyHsmPlugin.RoutingStrategy.ROUND_ROBIN),
+        0,
+        1,
+        new AllocationClass[] {new AllocationClass(0, "default", 0, 1, 0)},
+        0,
+        0,
+        new KeyGroupStatistics());
+  }
+
+  @Test
+  public void get_whenKeyGroupIndexed_shouldReturnItsPool() {
+    ChannelPool pool12 = newPool(12);
+    ChannelPool pool3 = newPool(3);
+    ChannelPool pool250 = newPool(250);
+
+    KeyGroupIndex keyGroupIndex = KeyGroupIndex.EMPTY.with(Arrays.asList(pool12, pool3, pool250));
+
+    assertThat(keyGroupIndex.get(3)).isSameAs(pool3);
+    assertThat(keyGroupIndex.get(12)).isSameAs(pool12);
+    assertThat(keyGroupIndex.get(250)).isSameAs(pool250);
+    assertThat(keyGroupIndex.get(4)).isNull();
+    assertThat(keyGroupIndex.getChannelPools()).containsExactly(pool3, pool12, pool250);
+    assertThat(keyGroupIndex.getReaderGroupReferences()).containsOnly("3", "12", "250");
+  }
+
+  @Test
+  public void with_whenKeyGroupAlreadyIndexed_shouldReplaceItsPool() {
+    ChannelPool pool = newPool(12);
+    ChannelPool newPool = newPool(12);
+    KeyGroupIndex keyGroupIndex = KeyGroupIndex.EMPTY.with(Collections.singletonList(pool));
+
+    KeyGroupIndex newIndex = keyGroupIndex.with(Collections.singletonList(newPool));
+
+    assertThat(newIndex.get(12)).isSameAs(newPool);
+    assertThat(keyGroupIndex.get(12)).isSameAs(pool);
+  }
+
+  @Test
+  public void without_whenPoolRemoved_shouldKeepTheOtherOnes() {
+    ChannelPool pool3 = newPool(3);
+    ChannelPool pool12 = newPool(12);
+    KeyGroupIndex keyGroupIndex = KeyGroupIndex.EMPTY.with(Arrays.asList(pool3, pool12));
+
+    KeyGroupIndex newIndex = keyGroupIndex.without(Collections.singletonList(pool3));
+
+    assertThat(newIndex.get(3)).isNull();
+    assertThat(newIndex.get(12)).isSameAs(pool12);
+    assertThat(newIndex.getReaderGroupReferences()).containsExactly("12");
+    assertThat(keyGroupIndex.get(3)).isSameAs(pool3);
+  }
+
+  @Test
+  public void withAndWithout_whenNothingChanges_shouldReturnSameIndex() {
+    KeyGroupIndex keyGroupIndex = KeyGroupIndex.EMPTY.with(Collections.singletonList(newPool(12)));
+
+    assertThat(keyGroupIndex.with(Collections.<ChannelPool>emptyList())).isSameAs(keyGroupIndex);
+    assertThat(keyGroupIndex.without(Collections.<ChannelPool>emptyList())).isSameAs(keyGroupIndex);
+  }
+}
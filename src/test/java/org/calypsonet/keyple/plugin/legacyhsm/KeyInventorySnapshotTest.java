@@ -0,0 +1,179 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KeyInventorySnapshotTest {
+
+  private static final long DISCOVERY_TIMEOUT_MILLIS = 10000;
+
+  private static final CsmDiscovery.Listener NO_LISTENER =
+      new CsmDiscovery.Listener() {
+        @Override
+        public void onDiscovered(CsmDiscovery.DiscoveredCsm discoveredCsm) {
+          // NOP
+        }
+      };
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicInteger keyScanCount = new AtomicInteger();
+  private List<HsmDevice> devices;
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    List<SimulatedHsmBackend.Spec> specs = new ArrayList<SimulatedHsmBackend.Spec>();
+    specs.add(new SimulatedHsmBackend.Spec(4, 0, new int[] {3, 1, 2}));
+    specs.add(new SimulatedHsmBackend.Spec(4, 0, new int[] {5}));
+    devices = new ArrayList<HsmDevice>();
+    for (HsmDevice device : new SimulatedHsmBackend(specs).getDevices()) {
+      devices.add(new KeyScanCountingDevice(device, keyScanCount));
+    }
+    file = new File(temporaryFolder.getRoot(), "keys.snapshot");
+  }
+
+  private List<CsmDiscovery.DiscoveredCsm> discover(KeyInventorySnapshot snapshot) {
+    return new CsmDiscovery(DISCOVERY_TIMEOUT_MILLIS, snapshot).discover(devices, NO_LISTENER);
+  }
+
+  private void writeSnapshot() throws Exception {
+    KeyInventorySnapshot.EMPTY.update(discover(KeyInventorySnapshot.EMPTY)).write(file);
+    keyScanCount.set(0);
+  }
+
+  private static void assertKeyGroups(List<CsmDiscovery.DiscoveredCsm> discoveredCsms) {
+    assertThat(discoveredCsms).hasSize(2);
+    int[] firstKeyGroups = discoveredCsms.get(0).getKeyGroups().clone();
+    Arrays.sort(firstKeyGroups);
+    assertThat(firstKeyGroups).containsExactly(1, 2, 3);
+    assertThat(discoveredCsms.get(1).getKeyGroups()).containsExactly(5);
+  }
+
+  @Test
+  public void read_whenFileWritten_shouldRestoreKeyGroups() throws Exception {
+    writeSnapshot();
+
+    KeyInventorySnapshot snapshot = KeyInventorySnapshot.read(file);
+
+    assertThat(snapshot.getKeyGroups(devices.get(0).getInfo())).containsExactly(1, 2, 3);
+    assertThat(snapshot.getKeyGroups(devices.get(1).getInfo())).containsExactly(5);
+  }
+
+  @Test
+  public void discover_whenSnapshotValid_shouldSkipKeyScan() throws Exception {
+    writeSnapshot();
+
+    List<CsmDiscovery.DiscoveredCsm> discoveredCsms = discover(KeyInventorySnapshot.read(file));
+
+    assertKeyGroups(discoveredCsms);
+    assertThat(keyScanCount.get()).isZero();
+  }
+
+  @Test
+  public void update_whenKeyGroupsUnchanged_shouldReturnSameSnapshot() throws Exception {
+    writeSnapshot();
+    KeyInventorySnapshot snapshot = KeyInventorySnapshot.read(file);
+
+    assertThat(snapshot.update(discover(snapshot))).isSameAs(snapshot);
+  }
+
+  @Test
+  public void read_whenFileCorrupted_shouldFallBackToFullInventory() throws Exception {
+    writeSnapshot();
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      // a bit of the CSM records, detected by the CRC
+      randomAccessFile.seek(randomAccessFile.length() / 2);
+      int value = randomAccessFile.read();
+      randomAccessFile.seek(randomAccessFile.length() / 2);
+      randomAccessFile.write(value ^ 0x01);
+    } finally {
+      randomAccessFile.close();
+    }
+
+    KeyInventorySnapshot snapshot = KeyInventorySnapshot.read(file);
+    List<CsmDiscovery.DiscoveredCsm> discoveredCsms = discover(snapshot);
+
+    assertThat(snapshot).isSameAs(KeyInventorySnapshot.EMPTY);
+    assertKeyGroups(discoveredCsms);
+    assertThat(keyScanCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void read_whenFileTruncated_shouldFallBackToFullInventory() throws Exception {
+    writeSnapshot();
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(randomAccessFile.length() - 1);
+    } finally {
+      randomAccessFile.close();
+    }
+
+    KeyInventorySnapshot snapshot = KeyInventorySnapshot.read(file);
+    List<CsmDiscovery.DiscoveredCsm> discoveredCsms = discover(snapshot);
+
+    assertThat(snapshot).isSameAs(KeyInventorySnapshot.EMPTY);
+    assertKeyGroups(discoveredCsms);
+    assertThat(keyScanCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void read_whenFileMissing_shouldReturnEmptySnapshot() {
+    assertThat(KeyInventorySnapshot.read(file)).isSameAs(KeyInventorySnapshot.EMPTY);
+  }
+
+  /** Simulated CSM counting the scans of its keys. */
+  private static final class KeyScanCountingDevice implements HsmDevice {
+
+    private final HsmDevice device;
+    private final AtomicInteger keyScanCount;
+
+    private KeyScanCountingDevice(HsmDevice device, AtomicInteger keyScanCount) {
+      this.device = device;
+      this.keyScanCount = keyScanCount;
+    }
+
+    @Override
+    public HsmDeviceInfo getInfo() throws HsmException {
+      return device.getInfo();
+    }
+
+    @Override
+    public int[] getKeyGroups() throws HsmException {
+      keyScanCount.incrementAndGet();
+      return device.getKeyGroups();
+    }
+
+    @Override
+    public HsmChannel openChannel(int keyGroupReference) throws HsmException {
+      return device.openChannel(keyGroupReference);
+    }
+
+    @Override
+    public String toString() {
+      return device.toString();
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import org.eclipse.keyple.core.plugin.ReaderIOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LegacyHsmReaderAdapterTest {
+
+  private static final String KEY_GROUP_REFERENCE = "1";
+  private static final byte[] GET_CHALLENGE = {(byte) 0x80, (byte) 0x84, 0x00, 0x00, 0x08};
+
+  private LegacyHsmPluginAdapter plugin;
+
+  @Before
+  public void setUp() {
+    plugin =
+        (LegacyHsmPluginAdapter)
+            ((LegacyHsmPluginFactoryAdapter)
+                    LegacyHsmPluginFactoryBuilder.builder()
+                        .useSimulatedCsm(1, 0, 1)
+                        .useChannelPool(0, 1)
+                        .build())
+                .getPoolPlugin();
+  }
+
+  @After
+  public void tearDown() {
+    plugin.onUnregister();
+  }
+
+  /** Allocates a reader, releases it and allocates the next one on the same channel. */
+  private LegacyHsmReaderAdapter allocateStaleReader() throws Exception {
+    LegacyHsmReaderAdapter staleReader =
+        (LegacyHsmReaderAdapter) plugin.allocateReader(KEY_GROUP_REFERENCE);
+    plugin.releaseReader(staleReader);
+    LegacyHsmReaderAdapter nextReader =
+        (LegacyHsmReaderAdapter) plugin.allocateReader(KEY_GROUP_REFERENCE);
+    assertThat(nextReader.transmitApdu(GET_CHALLENGE)).isNotNull();
+    return staleReader;
+  }
+
+  @Test
+  public void transmitApdu_whenReaderReleased_shouldThrowReaderIOException() throws Exception {
+    LegacyHsmReaderAdapter staleReader = allocateStaleReader();
+    try {
+      staleReader.transmitApdu(GET_CHALLENGE);
+      fail("ReaderIOException expected");
+    } catch (ReaderIOException e) {
+      assertThat(e).hasMessageContaining("released");
+    }
+  }
+
+  @Test
+  public void transmitApduIntoBuffer_whenReaderReleased_shouldThrowReaderIOException()
+      throws Exception {
+    LegacyHsmReaderAdapter staleReader = allocateStaleReader();
+    try {
+      staleReader.transmitApdu(GET_CHALLENGE, new byte[261], 0);
+      fail("ReaderIOException expected");
+    } catch (ReaderIOException e) {
+      assertThat(e).hasMessageContaining("released");
+    }
+  }
+
+  @Test
+  public void transmitApdus_whenReaderReleased_shouldThrowReaderIOException() throws Exception {
+    LegacyHsmReaderAdapter staleReader = allocateStaleReader();
+    try {
+      staleReader.transmitApdus(Collections.singletonList(GET_CHALLENGE), false);
+      fail("ReaderIOException expected");
+    } catch (ReaderIOException e) {
+      assertThat(e).hasMessageContaining("released");
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiplexedChannelTest {
+
+  private static final int KEY_GROUP = 1;
+  private static final int SHARED_CHANNELS = 2;
+  private static final long LONG_TIMEOUT_MILLIS = 10000;
+
+  private ChannelPool channelPool;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    HsmDevice device =
+        new SimulatedHsmBackend(
+                Collections.singletonList(
+                    new SimulatedHsmBackend.Spec(8, 0, new int[] {KEY_GROUP})))
+            .getDevices()
+            .get(0);
+    CsmNode csmNode =
+        new CsmNode(
+            device,
+            new CsmDescriptor(device.toString(), device.getInfo(), null),
+            new CircuitBreaker(1, 1000),
+            new ApduDispatcher(device.toString(), 1, 1),
+            ApduFlightRecorder.DISABLED,
+            ConcurrencyLimiter.DISABLED);
+    channelPool =
+        new ChannelPool(
+            KEY_GROUP,
+            Collections.singletonList(csmNode),
+            CsmRouter.create(LegacyHsmPlugin.RoutingStrategy.ROUND_ROBIN),
+            0,
+            4,
+            new AllocationClass[] {new AllocationClass(0, "default", 0, 1, 0)},
+            0,
+            SHARED_CHANNELS,
+            new KeyGroupStatistics());
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    channelPool.close();
+  }
+
+  private static MultiplexedChannel multiplexedChannelOf(PooledChannel sharedChannel) {
+    return (MultiplexedChannel) sharedChannel.getChannel();
+  }
+
+  @Test
+  public void borrow_whenChannelIdleInSet_shouldLendIt() throws Exception {
+    MultiplexedChannel multiplexedChannel = multiplexedChannelOf(channelPool.acquireShared(0));
+
+    PooledChannel pooledChannel = multiplexedChannel.borrow();
+    multiplexedChannel.giveBack(pooledChannel, true);
+    PooledChannel nextChannel = multiplexedChannel.borrow();
+
+    assertThat(nextChannel).isSameAs(pooledChannel);
+    assertThat(multiplexedChannel.getChannelCount()).isEqualTo(1);
+    assertThat(channelPool.getSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void borrow_whenAllChannelsExchanging_shouldGrowUpToMaximumThenWait() throws Exception {
+    final MultiplexedChannel multiplexedChannel =
+        multiplexedChannelOf(channelPool.acquireShared(0));
+    PooledChannel firstChannel = multiplexedChannel.borrow();
+    PooledChannel secondChannel = multiplexedChannel.borrow();
+
+    Future<PooledChannel> waitingBorrow =
+        executor.submit(
+            new Callable<PooledChannel>() {
+              @Override
+              public PooledChannel call() throws Exception {
+                return multiplexedChannel.borrow();
+              }
+            });
+    Thread.sleep(50);
+    assertThat(waitingBorrow.isDone()).isFalse();
+    multiplexedChannel.giveBack(firstChannel, true);
+
+    assertThat(secondChannel).isNotSameAs(firstChannel);
+    assertThat(waitingBorrow.get(LONG_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+        .isSameAs(firstChannel);
+    assertThat(multiplexedChannel.getChannelCount()).isEqualTo(SHARED_CHANNELS);
+    assertThat(channelPool.getSize()).isEqualTo(SHARED_CHANNELS);
+  }
+
+  @Test
+  public void giveBack_whenNotReusable_shouldCloseChannelAndShrinkSet() throws Exception {
+    MultiplexedChannel multiplexedChannel = multiplexedChannelOf(channelPool.acquireShared(0));
+
+    multiplexedChannel.giveBack(multiplexedChannel.borrow(), false);
+
+    assertThat(multiplexedChannel.getChannelCount()).isZero();
+    assertThat(channelPool.getSize()).isZero();
+  }
+
+  @Test
+  public void release_whenLastSharedReaderReleased_shouldGiveChannelsBackToPool() throws Exception {
+    PooledChannel firstReader = channelPool.acquireShared(0);
+    PooledChannel secondReader = channelPool.acquireShared(0);
+    MultiplexedChannel multiplexedChannel = multiplexedChannelOf(firstReader);
+    assertThat(multiplexedChannelOf(secondReader)).isSameAs(multiplexedChannel);
+    PooledChannel firstChannel = multiplexedChannel.borrow();
+    PooledChannel secondChannel = multiplexedChannel.borrow();
+    multiplexedChannel.giveBack(firstChannel, true);
+    multiplexedChannel.giveBack(secondChannel, true);
+
+    channelPool.release(firstReader, true);
+    assertThat(multiplexedChannel.getChannelCount()).isEqualTo(SHARED_CHANNELS);
+    channelPool.release(secondReader, true);
+
+    assertThat(multiplexedChannel.getReaderCount()).isZero();
+    assertThat(multiplexedChannel.getChannelCount()).isZero();
+    assertThat(channelPool.getIdleCount()).isEqualTo(SHARED_CHANNELS);
+  }
+
+  @Test
+  public void giveBack_whenLastReaderReleasedDuringExchange_shouldGiveChannelBackToPool()
+      throws Exception {
+    PooledChannel sharedReader = channelPool.acquireShared(0);
+    MultiplexedChannel multiplexedChannel = multiplexedChannelOf(sharedReader);
+    PooledChannel pooledChannel = multiplexedChannel.borrow();
+
+    channelPool.release(sharedReader, true);
+    assertThat(multiplexedChannel.getChannelCount()).isEqualTo(1);
+    multiplexedChannel.giveBack(pooledChannel, true);
+
+    assertThat(multiplexedChannel.getChannelCount()).isZero();
+    assertThat(channelPool.getIdleCount()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,65 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import org.junit.Test;
+
+public class PluginMetricsAdapterTest {
+
+  private static final int HSM_ERROR_CODE = 0x12;
+
+  @Test
+  public void getAllocationCount_whenKeyGroupRemoved_shouldKeepItsAllocations() {
+    KeyGroupStatistics pluginStatistics = new KeyGroupStatistics();
+    KeyGroupStatistics keyGroupStatistics = new KeyGroupStatistics(pluginStatistics);
+    keyGroupStatistics.onAllocated(1000);
+    keyGroupStatistics.onAllocated(3000);
+    keyGroupStatistics.onReleased();
+    keyGroupStatistics.onUnavailable();
+    keyGroupStatistics.onFailed(HSM_ERROR_CODE);
+
+    PluginMetricsAdapter metrics =
+        new PluginMetricsAdapter(
+            Collections.<CsmNode>emptyList(),
+            Collections.<ChannelPool>emptyList(),
+            pluginStatistics);
+
+    assertThat(metrics.getKeyGroupMetrics()).isEmpty();
+    assertThat(metrics.getAllocationCount()).isEqualTo(2);
+    assertThat(metrics.getReleaseCount()).isEqualTo(1);
+    assertThat(metrics.getUnavailableAllocationCount()).isEqualTo(1);
+    assertThat(metrics.getFailedAllocationCounts()).containsEntry(HSM_ERROR_CODE, 1L).hasSize(1);
+    assertThat(metrics.getAllocationWaitTimes().getCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void getFailedAllocationCounts_shouldReturnUnmodifiableMap() {
+    KeyGroupStatistics pluginStatistics = new KeyGroupStatistics();
+    new KeyGroupStatistics(pluginStatistics).onFailed(HSM_ERROR_CODE);
+    PluginMetricsAdapter metrics =
+        new PluginMetricsAdapter(
+            Collections.<CsmNode>emptyList(),
+            Collections.<ChannelPool>emptyList(),
+            pluginStatistics);
+
+    try {
+      metrics.getFailedAllocationCounts().clear();
+      fail("UnsupportedOperationException expected");
+    } catch (UnsupportedOperationException e) {
+      assertThat(metrics.getFailedAllocationCounts()).hasSize(1);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/* **************************************************************************************
+ * Copyright (c) 2026 Calypso Networks Association https://calypsonet.org/
+ *
+ * See the NOTICE file(s) distributed with this work for additional information
+ * regarding copyright ownership.
+ *
+ * This program and the accompanying materials are made available under the terms of the
+ * Eclipse Public License 2.0 which is available at http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ ************************************************************************************** */
+package org.calypsonet.keyple.plugin.legacyhsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ReaderGroupReferenceTest {
+
+  @Test
+  public void parse_whenKeyGroupOnly_shouldHaveNoParameter() {
+    ReaderGroupReference groupReference = ReaderGroupReference.parse(" 12 ");
+
+    assertThat(groupReference.getKeyGroupReference()).isEqualTo(12);
+    assertThat(groupReference.getParameter(ReaderGroupReference.CLASS_PARAMETER)).isNull();
+  }
+
+  @Test
+  public void parse_whenNull_shouldDesignateKeyGroup0() {
+    assertThat(ReaderGroupReference.parse(null).getKeyGroupReference()).isZero();
+  }
+
+  @Test
+  public void parse_whenParameters_shouldTrimTheirValues() {
+    ReaderGroupReference groupReference =
+        ReaderGroupReference.parse("12;class = gate ;caller=T042;mode=shared");
+
+    assertThat(groupReference.getKeyGroupReference()).isEqualTo(12);
+    assertThat(groupReference.getParameter(ReaderGroupReference.CLASS_PARAMETER)).isEqualTo("gate");
+    assertThat(groupReference.getParameter(ReaderGroupReference.CALLER_PARAMETER))
+        .isEqualTo("T042");
+    assertThat(groupReference.getParameter(ReaderGroupReference.MODE_PARAMETER))
+        .isEqualTo(ReaderGroupReference.SHARED_MODE);
+  }
+
+  @Test
+  public void parse_whenKeyGroupNotNumeric_shouldThrowIAE() {
+    assertParseFails("gate;class=gate");
+  }
+
+  @Test
+  public void parse_whenUnknownParameter_shouldThrowIAE() {
+    assertParseFails("12;priority=1");
+  }
+
+  @Test
+  public void parse_whenParameterWithoutValue_shouldThrowIAE() {
+    assertParseFails("12;class");
+  }
+
+  @Test
+  public void valueOf_whenCalledTwice_shouldReturnCachedReference() {
+    assertThat(ReaderGroupReference.valueOf("7;class=gate"))
+        .isSameAs(ReaderGroupReference.valueOf("7;class=gate"));
+  }
+
+  @Test
+  public void valueOf_whenMalformed_shouldThrowIAEAtEachCall() {
+    for (int i = 0; i < 2; i++) {
+      try {
+        ReaderGroupReference.valueOf("7;bad");
+        fail("IllegalArgumentException expected");
+      } catch (IllegalArgumentException e) {
+        assertThat(e).hasMessageContaining("7;bad");
+      }
+    }
+  }
+
+  private static void assertParseFails(String readerGroupReference) {
+    try {
+      ReaderGroupReference.parse(readerGroupReference);
+      fail("IllegalArgumentException expected");
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageContaining(readerGroupReference);
+    }
+  }
+}